@@ -14,9 +14,11 @@ import org.junit.rules.Timeout;
 
 import static org.junit.Assert.*;
 
+/** runs the client against FakeScapyServer, which serves responses recorded from scapy_server */
 public class TestScapyClient {
     private static Injector injector = Guice.createInjector(new GuiceModule());
     
+    private FakeScapyServer server;
     private ScapyServerClient scapy;
 
     @Rule
@@ -25,13 +27,15 @@ public class TestScapyClient {
 
     @Before
     public void init() {
+        server = new FakeScapyServer().start();
         scapy = injector.getInstance(ScapyServerClient.class);
-        scapy.connect();
+        scapy.connect(server.getUrl(), 2000);
     }
 
     @After
     public void cleanup() {
         scapy.closeConnection();
+        server.close();
     }
 
     @Test
@@ -0,0 +1,62 @@
+package com.xored.javafx.packeteditor.benchmarks;
+
+import com.google.gson.JsonElement;
+import com.xored.javafx.packeteditor.data.combined.CombinedProtocolModel;
+import com.xored.javafx.packeteditor.data.user.Document;
+import com.xored.javafx.packeteditor.data.user.DocumentFile;
+import com.xored.javafx.packeteditor.scapy.PacketData;
+import com.xored.javafx.packeteditor.scapy.ReconstructProtocol;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** user model operations, which are run on each edit */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DocumentBenchmark {
+    @Param({"5", "20", "50"})
+    int layers;
+
+    RecordedMetadataService metadataService;
+    PacketData pkt;
+    Document document;
+    DocumentFile documentFile;
+
+    @Setup
+    public void setup() {
+        pkt = RecordedPackets.stack(layers, 64);
+        metadataService = new RecordedMetadataService(pkt);
+        document = RecordedPackets.document(pkt, metadataService);
+        documentFile = DocumentFile.toPOJO(document);
+    }
+
+    @Benchmark
+    public List<ReconstructProtocol> buildScapyModel() {
+        return document.buildScapyModel();
+    }
+
+    @Benchmark
+    public JsonElement getVmInstructionsModel() {
+        return document.getVmInstructionsModel();
+    }
+
+    @Benchmark
+    public DocumentFile toPOJO() {
+        return DocumentFile.toPOJO(document);
+    }
+
+    @Benchmark
+    public Document fromPOJO() {
+        return DocumentFile.fromPOJO(documentFile, metadataService);
+    }
+
+    @Benchmark
+    public CombinedProtocolModel combinedModelFromUserModel() {
+        return CombinedProtocolModel.fromUserModel(metadataService, document, pkt.getProtocols());
+    }
+}
@@ -0,0 +1,43 @@
+package com.xored.javafx.packeteditor.benchmarks;
+
+import com.google.gson.JsonParser;
+import com.xored.javafx.packeteditor.scapy.FieldEngineSimulator;
+import com.xored.javafx.packeteditor.scapy.PacketData;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/** local field engine simulation: packets per second of a typical src ip/port range program */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FieldEngineBenchmark {
+    static final int VARIANTS = 10000;
+
+    @Param({"64", "1500"})
+    int payloadLength;
+
+    FieldEngineSimulator simulator;
+
+    @Setup
+    public void setup() {
+        PacketData pkt = RecordedPackets.stack(4, payloadLength);
+        simulator = new FieldEngineSimulator(pkt.getPacketBytes(), new JsonParser().parse("{\"instructions\":["
+                + "{\"type\":\"flow_var\",\"name\":\"ip_src\",\"size\":4,\"op\":\"inc\",\"min_value\":268435457,\"max_value\":268500000,\"step\":1},"
+                + "{\"type\":\"write_flow_var\",\"name\":\"ip_src\",\"pkt_offset\":26,\"add_value\":0,\"is_big_endian\":true},"
+                + "{\"type\":\"flow_var\",\"name\":\"sport\",\"size\":2,\"op\":\"random\",\"min_value\":1025,\"max_value\":65000},"
+                + "{\"type\":\"write_flow_var\",\"name\":\"sport\",\"pkt_offset\":34,\"add_value\":0,\"is_big_endian\":true},"
+                + "{\"type\":\"fix_checksum_ipv4\",\"pkt_offset\":14}"
+                + "],\"split_by_var\":\"\"}"), 0);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(VARIANTS)
+    public void generate(Blackhole blackhole) {
+        simulator.generate(VARIANTS, (index, packet, length) -> blackhole.consume(packet[length - 1]));
+    }
+}
@@ -0,0 +1,47 @@
+package com.xored.javafx.packeteditor.benchmarks;
+
+import com.google.gson.Gson;
+import com.xored.javafx.packeteditor.scapy.PacketData;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/** scapy_server responses handling */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PacketDataBenchmark {
+    @Param({"5", "50"})
+    int layers;
+
+    @Param({"64", "9000"})
+    int payloadLength;
+
+    Gson gson = new Gson();
+    PacketData pkt;
+    String json;
+
+    @Setup
+    public void setup() {
+        pkt = RecordedPackets.stack(layers, payloadLength);
+        json = gson.toJson(pkt);
+    }
+
+    @Benchmark
+    public String toJson() {
+        return gson.toJson(pkt);
+    }
+
+    @Benchmark
+    public PacketData fromJson() {
+        return gson.fromJson(json, PacketData.class);
+    }
+
+    @Benchmark
+    public byte[] getPacketBytes() {
+        return pkt.getPacketBytes();
+    }
+}
@@ -0,0 +1,49 @@
+package com.xored.javafx.packeteditor.benchmarks;
+
+import com.xored.javafx.packeteditor.metatdata.*;
+import com.xored.javafx.packeteditor.scapy.FieldData;
+import com.xored.javafx.packeteditor.scapy.PacketData;
+import com.xored.javafx.packeteditor.scapy.ProtocolData;
+import com.xored.javafx.packeteditor.service.IMetadataService;
+import com.xored.javafx.packeteditor.service.InstructionsTemplate;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Metadata service, which does not need scapy_server.
+ * Protocol definitions are built from fields of recorded packets, like MetadataService does without get_definitions
+ */
+public class RecordedMetadataService implements IMetadataService {
+    private final Map<String, ProtocolMetadata> protocols = new HashMap<>();
+    private final Map<String, FeParameterMeta> feParameters = new HashMap<>();
+
+    public RecordedMetadataService(PacketData... packets) {
+        for (PacketData pkt : packets) {
+            for (ProtocolData protocol : pkt.getProtocols()) {
+                protocols.computeIfAbsent(protocol.id, id -> new ProtocolMetadata(
+                        id,
+                        id,
+                        protocol.fields.stream().map(RecordedMetadataService::fieldMetadata).collect(Collectors.toList()),
+                        Collections.<String, FEInstructionParameterMeta>emptyMap(),
+                        new ArrayList<>()));
+            }
+        }
+        feParameters.put("cache_size", new FeParameterMeta("cache_size", "Cache size", "NUMBER", "1000"));
+        feParameters.put("split_by_var", new FeParameterMeta("split_by_var", "Split by variable", "STRING", ""));
+    }
+
+    private static FieldMetadata fieldMetadata(FieldData field) {
+        return new FieldMetadata(field.id, field.id, FieldMetadata.FieldType.STRING, null, null, false);
+    }
+
+    @Override public Map<String, ProtocolMetadata> getProtocols() { return protocols; }
+    @Override public Map<String, FeParameterMeta> getFeParameters() { return feParameters; }
+    @Override public Map<String, InstructionExpressionMeta> getFeInstructions() { return Collections.emptyMap(); }
+    @Override public ProtocolMetadata getProtocolMetadata(ProtocolData protocol) { return protocols.get(protocol.getId()); }
+    @Override public ProtocolMetadata getProtocolMetadataById(String protocolId) { return protocols.get(protocolId); }
+    @Override public List<String> getAllowedPayloadForProtocol(String protocolId) { return Collections.emptyList(); }
+    @Override public boolean isAllowedPayload(String protocolId, String payloadId) { return true; }
+    @Override public Map<String, FEInstructionParameterMeta> getFeInstructionParameters() { return Collections.emptyMap(); }
+    @Override public List<InstructionsTemplate> getFeInstructionsTemplates() { return Collections.emptyList(); }
+}
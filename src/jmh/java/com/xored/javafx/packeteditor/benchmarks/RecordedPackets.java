@@ -0,0 +1,55 @@
+package com.xored.javafx.packeteditor.benchmarks;
+
+import com.xored.javafx.packeteditor.data.user.Document;
+import com.xored.javafx.packeteditor.scapy.LocalDissector;
+import com.xored.javafx.packeteditor.scapy.PacketData;
+import com.xored.javafx.packeteditor.service.IMetadataService;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * Packets in reconstruct_pkt format for benchmarks. Responses are produced by LocalDissector,
+ * so benchmarks run without scapy_server and do not depend on its performance
+ */
+public class RecordedPackets {
+    /** Ether/Dot1Q.../IP/TCP/Raw stack with the given number of layers, at least 4 */
+    public static PacketData stack(int layers, int payloadLength) {
+        int vlans = Math.max(0, layers - 4);
+        ByteBuffer buf = ByteBuffer.allocate(14 + vlans * 4 + 20 + 20 + payloadLength);
+        buf.put(new byte[]{0, 0x11, 0x22, 0x33, 0x44, 0x55, 0, 0x66, 0x77, (byte) 0x88, (byte) 0x99, (byte) 0xaa});
+        for (int i = 0; i < vlans; i++) {
+            buf.putShort((short) 0x8100).putShort((short) (i + 1));
+        }
+        buf.putShort((short) 0x0800);
+        // IP
+        buf.put((byte) 0x45).put((byte) 0).putShort((short) (40 + payloadLength)).putShort((short) 1).putShort((short) 0)
+                .put((byte) 64).put((byte) 6).putShort((short) 0).putInt(0x10000001).putInt(0x30000001);
+        // TCP
+        buf.putShort((short) 1025).putShort((short) 1026).putInt(0).putInt(0).put((byte) 0x50).put((byte) 0x02)
+                .putShort((short) 8192).putShort((short) 0).putShort((short) 0);
+        byte[] payload = new byte[payloadLength];
+        new Random(0).nextBytes(payload);
+        buf.put(payload);
+        PacketData pkt = new LocalDissector().dissect(buf.array());
+        if (pkt == null) {
+            throw new IllegalStateException("Unable to dissect a packet with " + layers + " layers");
+        }
+        return pkt;
+    }
+
+    /** user model of the packet as it is created when pcap is loaded */
+    public static Document document(PacketData pkt, IMetadataService metadataService) {
+        Document doc = new Document();
+        pkt.getProtocols().forEach(protocolData -> {
+            doc.addProtocol(metadataService.getProtocolMetadataById(protocolData.id));
+            protocolData.getFields().forEach(fieldData -> {
+                if (fieldData.isPrimitive()) {
+                    doc.getProtocolStack().peek().addField(fieldData.id, fieldData.hvalue);
+                }
+            });
+        });
+        metadataService.getFeParameters().values().forEach(meta -> doc.createFePrarameter(meta, meta.getDefault()));
+        return doc;
+    }
+}
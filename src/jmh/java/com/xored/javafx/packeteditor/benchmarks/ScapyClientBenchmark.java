@@ -0,0 +1,63 @@
+package com.xored.javafx.packeteditor.benchmarks;
+
+import com.google.inject.Guice;
+import com.xored.javafx.packeteditor.guice.GuiceModule;
+import com.xored.javafx.packeteditor.scapy.FakeScapyServer;
+import com.xored.javafx.packeteditor.scapy.PacketData;
+import com.xored.javafx.packeteditor.scapy.ScapyServerClient;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/** round trip latency and pipelined throughput of ScapyServerClient against FakeScapyServer */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScapyClientBenchmark {
+    static final int PIPELINE_DEPTH = 32;
+
+    /** server latency, ms */
+    @Param({"0", "1"})
+    long latency;
+
+    FakeScapyServer server;
+    ScapyServerClient scapy;
+    byte[] bytes;
+
+    @Setup
+    public void setup() {
+        server = new FakeScapyServer().setLatency(latency, 0).start();
+        scapy = Guice.createInjector(new GuiceModule()).getInstance(ScapyServerClient.class);
+        scapy.connect(server.getUrl(), 5000);
+        bytes = RecordedPackets.stack(5, 64).getPacketBytes();
+    }
+
+    @TearDown
+    public void tearDown() {
+        scapy.closeConnection();
+        server.close();
+    }
+
+    @Benchmark
+    public PacketData reconstructSync() {
+        return scapy.reconstruct_pkt(bytes);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PIPELINE_DEPTH)
+    public List<PacketData> reconstructPipelined() {
+        List<CompletableFuture<PacketData>> requests = new ArrayList<>();
+        for (int i = 0; i < PIPELINE_DEPTH; i++) {
+            requests.add(scapy.reconstruct_pkt_async(bytes));
+        }
+        List<PacketData> res = new ArrayList<>();
+        requests.forEach(request -> res.add(request.join()));
+        return res;
+    }
+}
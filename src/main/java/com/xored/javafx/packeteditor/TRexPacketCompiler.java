@@ -0,0 +1,87 @@
+package com.xored.javafx.packeteditor;
+
+import com.xored.javafx.packeteditor.scapy.ConnectionException;
+import com.xored.javafx.packeteditor.service.DocumentCompiler;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Command line entry point, which compiles .trp documents to pcap and TRex stream JSON without JavaFX.
+ * usage: TRexPacketCompiler [-o out_dir] [-j connections] [-s host:port] (dir | file.trp)...
+ */
+public class TRexPacketCompiler {
+    static final int DEFAULT_CONNECTIONS = 4;
+
+    static final String USAGE = "usage: TRexPacketCompiler [-o out_dir] [-j connections] [-s host:port] (dir | file.trp)...\n"
+            + "  -o  output directory, results are written next to documents by default\n"
+            + "  -j  number of concurrent scapy_server connections, " + DEFAULT_CONNECTIONS + " by default\n"
+            + "  -s  scapy_server address, SCAPY_SERVER environment variable or localhost:4507 by default";
+
+    public static void main(String[] args) throws InterruptedException {
+        System.exit(run(args));
+    }
+
+    /** returns process exit code: 0 on success, 1 if some documents failed, 2 on usage or connection error */
+    static int run(String[] args) throws InterruptedException {
+        File outDir = null;
+        int connections = DEFAULT_CONNECTIONS;
+        String serverAddress = null;
+        List<File> paths = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "-o":
+                        outDir = new File(args[++i]);
+                        break;
+                    case "-j":
+                        connections = Integer.parseInt(args[++i]);
+                        break;
+                    case "-s":
+                        serverAddress = args[++i];
+                        if (!serverAddress.contains(":")) {
+                            throw new IllegalArgumentException("host:port expected");
+                        }
+                        break;
+                    default:
+                        paths.add(new File(args[i]));
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | IllegalArgumentException e) {
+            System.err.println(USAGE);
+            return 2;
+        }
+        List<File> documents = DocumentCompiler.collectDocuments(paths);
+        if (documents.isEmpty() || connections < 1) {
+            System.err.println(USAGE);
+            return 2;
+        }
+        if (outDir != null && !outDir.isDirectory() && !outDir.mkdirs()) {
+            System.err.println("Unable to create " + outDir);
+            return 2;
+        }
+
+        long start = System.currentTimeMillis();
+        List<DocumentCompiler.Result> results;
+        try (DocumentCompiler compiler = DocumentCompiler.connect(Math.min(connections, documents.size()), serverAddress)) {
+            results = compiler.compileAll(documents, outDir);
+        } catch (ConnectionException e) {
+            System.err.println(e.getMessage());
+            return 2;
+        }
+
+        int failed = 0;
+        for (DocumentCompiler.Result result : results) {
+            if (result.isSuccess()) {
+                System.out.println(result.document + " -> " + result.pcap + ", " + result.stream);
+            } else {
+                failed++;
+                System.err.println(result.document + ": " + result.error);
+            }
+        }
+        System.out.println(String.format("compiled %d of %d documents in %d ms",
+                results.size() - failed, results.size(), System.currentTimeMillis() - start));
+        return failed > 0 ? 1 : 0;
+    }
+}
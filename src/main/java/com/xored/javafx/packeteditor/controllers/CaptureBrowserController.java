@@ -0,0 +1,195 @@
+package com.xored.javafx.packeteditor.controllers;
+
+import com.google.inject.Inject;
+import com.xored.javafx.packeteditor.data.PacketEditorModel;
+import com.xored.javafx.packeteditor.data.PcapPacketList;
+import com.xored.javafx.packeteditor.scapy.PacketData;
+import com.xored.javafx.packeteditor.scapy.PcapReader;
+import com.xored.javafx.packeteditor.service.PacketDataService;
+import com.xored.javafx.packeteditor.service.PacketSummaryCache;
+import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyObjectWrapper;
+import javafx.fxml.FXML;
+import javafx.fxml.Initializable;
+import javafx.scene.Node;
+import javafx.scene.control.Label;
+import javafx.scene.control.TabPane;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
+import javafx.scene.input.MouseEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.ResourceBundle;
+
+/**
+ * Capture browser. Shows packets of a multi-packet pcap and loads the selected one into the editor.
+ * Only visible rows are dissected, see PacketSummaryCache
+ */
+public class CaptureBrowserController implements Initializable {
+    static Logger logger = LoggerFactory.getLogger(CaptureBrowserController.class);
+
+    /** packets indexed between list updates */
+    static final int INDEX_CHUNK = 50000;
+
+    /** packets indexed under the reader lock at once, so reads of the table rows are not blocked for long */
+    static final int INDEX_STEP = 1000;
+
+    @FXML private TableView<PcapReader.PacketRecord> captureTable;
+    @FXML private TableColumn<PcapReader.PacketRecord, Number> captureIndexColumn;
+    @FXML private TableColumn<PcapReader.PacketRecord, String> captureTimeColumn;
+    @FXML private TableColumn<PcapReader.PacketRecord, Number> captureLengthColumn;
+    @FXML private TableColumn<PcapReader.PacketRecord, String> captureProtocolColumn;
+    @FXML private Label captureStatus;
+
+    @Inject
+    PacketEditorModel model;
+
+    @Inject
+    PacketDataService packetDataService;
+
+    private PcapReader reader;
+    private PcapPacketList packets;
+    private PacketSummaryCache summaries;
+    private Thread indexer;
+    private long firstTimestamp;
+    private boolean refreshScheduled = false;
+
+    @Override
+    public void initialize(URL location, ResourceBundle resources) {
+        captureIndexColumn.setCellValueFactory(c -> new ReadOnlyObjectWrapper<>(c.getValue().index + 1));
+        captureTimeColumn.setCellValueFactory(c -> new ReadOnlyObjectWrapper<>(
+                String.format("%.6f", (c.getValue().timestampNanos - firstTimestamp) / 1e9)));
+        captureLengthColumn.setCellValueFactory(c -> new ReadOnlyObjectWrapper<>(c.getValue().capturedLength));
+        captureProtocolColumn.setCellValueFactory(c -> {
+            String protocol = summaries != null ? summaries.getTopProtocol(c.getValue().index) : null;
+            return new ReadOnlyObjectWrapper<>(protocol != null ? protocol : "...");
+        });
+
+        captureTable.getSelectionModel().selectedItemProperty().addListener((o, oldVal, newVal) -> {
+            if (newVal != null) {
+                loadPacket(newVal);
+            }
+        });
+        captureTable.setOnMouseClicked((MouseEvent e) -> {
+            if (e.getClickCount() == 2 && captureTable.getSelectionModel().getSelectedItem() != null) {
+                showEditor();
+            }
+        });
+    }
+
+    /** false if the browser is not a part of the UI (embedded mode) */
+    public boolean isAvailable() {
+        return captureTable != null;
+    }
+
+    /** shows capture. the browser owns the reader and closes it when another capture is set */
+    public void setCapture(PcapReader newReader) throws IOException {
+        closeCapture();
+        reader = newReader;
+        PcapReader.PacketRecord first = reader.getPacket(0);
+        firstTimestamp = first != null ? first.timestampNanos : 0;
+        packets = new PcapPacketList(reader);
+        summaries = new PacketSummaryCache(reader, packetDataService, Platform::runLater, index -> scheduleRefresh());
+        if (first != null) {
+            summaries.put(0, model.getPkt());
+        }
+        captureTable.setItems(packets);
+        startIndexer(reader, packets);
+    }
+
+    /** file of the shown capture or null */
+    public File getCaptureFile() {
+        return reader != null ? reader.getFile() : null;
+    }
+
+    /**
+     * stops indexing and closes the capture. mapped segments of the file are released by GC only,
+     * so the file may stay locked on Windows for a while. PcapWriter replaces it by a move and fails cleanly then
+     */
+    public void closeCapture() {
+        if (indexer != null) {
+            indexer.interrupt();
+            try {
+                indexer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            indexer = null;
+        }
+        if (summaries != null) {
+            summaries.close();
+            summaries = null;
+        }
+        captureTable.setItems(null);
+        captureStatus.setText("");
+        if (reader != null) {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                logger.warn("Unable to close capture: {}", e);
+            }
+            reader = null;
+        }
+    }
+
+    private void startIndexer(PcapReader capture, PcapPacketList list) {
+        indexer = new Thread(() -> {
+            try {
+                while (!Thread.currentThread().isInterrupted() && !capture.isIndexComplete()) {
+                    int target = capture.getIndexedCount() + INDEX_CHUNK;
+                    while (!Thread.currentThread().isInterrupted() && !capture.isIndexComplete() && capture.getIndexedCount() < target) {
+                        capture.getPacket(capture.getIndexedCount() + INDEX_STEP);
+                    }
+                    int count = capture.getIndexedCount();
+                    boolean complete = capture.isIndexComplete();
+                    Platform.runLater(() -> {
+                        list.updateSize(count);
+                        if (list == packets) {
+                            captureStatus.setText(String.format(complete ? "%d packets" : "%d packets, indexing...", count));
+                        }
+                    });
+                }
+            } catch (IOException e) {
+                if (!Thread.currentThread().isInterrupted()) {
+                    logger.error("Unable to index capture: {}", e);
+                }
+            }
+        }, "pcap-indexer");
+        indexer.setDaemon(true);
+        indexer.start();
+    }
+
+    private void loadPacket(PcapReader.PacketRecord record) {
+        try {
+            PacketData pkt = packetDataService.reconstructPacketFromBinary(reader.readPacketData(record));
+            summaries.put(record.index, pkt);
+            model.loadDocumentFromPcapData(pkt);
+        } catch (Exception e) {
+            logger.error("Unable to load packet {}: {}", record.index + 1, e);
+        }
+    }
+
+    /** table is refreshed once per pulse, however many summaries were loaded */
+    private void scheduleRefresh() {
+        if (!refreshScheduled) {
+            refreshScheduled = true;
+            Platform.runLater(() -> {
+                refreshScheduled = false;
+                captureTable.refresh();
+            });
+        }
+    }
+
+    private void showEditor() {
+        for (Node node = captureTable; node != null; node = node.getParent()) {
+            if (node instanceof TabPane) {
+                ((TabPane) node).getSelectionModel().selectFirst();
+                return;
+            }
+        }
+    }
+}
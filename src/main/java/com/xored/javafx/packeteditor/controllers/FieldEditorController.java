@@ -2,7 +2,6 @@ package com.xored.javafx.packeteditor.controllers;
 
 import com.google.common.eventbus.EventBus;
 import com.google.common.eventbus.Subscribe;
-import com.google.common.io.Files;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonPrimitive;
 import com.google.inject.Inject;
@@ -11,8 +10,13 @@ import com.xored.javafx.packeteditor.data.PacketEditorModel;
 import com.xored.javafx.packeteditor.data.combined.CombinedField;
 import com.xored.javafx.packeteditor.data.user.DocumentFile;
 import com.xored.javafx.packeteditor.events.*;
+import com.xored.javafx.packeteditor.scapy.ConnectionException;
+import com.xored.javafx.packeteditor.scapy.FieldEngineSimulator;
 import com.xored.javafx.packeteditor.scapy.MethodNotFoundException;
 import com.xored.javafx.packeteditor.scapy.PacketData;
+import com.xored.javafx.packeteditor.scapy.PcapReader;
+import com.xored.javafx.packeteditor.scapy.PcapWriter;
+import com.xored.javafx.packeteditor.scapy.ScapyException;
 import com.xored.javafx.packeteditor.scapy.ScapyServerClient;
 import com.xored.javafx.packeteditor.service.ConfigurationService;
 import com.xored.javafx.packeteditor.service.IMetadataService;
@@ -42,7 +46,11 @@ import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URL;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -51,7 +59,6 @@ import java.util.stream.Collectors;
 
 public class FieldEditorController implements Initializable {
 
-    public static final int PCAP_MAX_FILESIZE = 1048576;
     static Logger logger = LoggerFactory.getLogger(FieldEditorController.class);
 
     @FXML private BorderPane fieldEditorBorderPane;
@@ -87,8 +94,17 @@ public class FieldEditorController implements Initializable {
     @Inject
     EventBus eventBus;
 
+    @Inject
+    CaptureBrowserController captureBrowserController;
+
     FileChooser fileChooser = new FileChooser();
 
+    static final int DEFAULT_EXPORT_VARIANTS = 1000;
+    static final int MAX_EXPORT_VARIANTS = 1000000;
+
+    /** contents of Scapy templates by id, loaded in one batch with the template list */
+    private Map<String, String> templateContents = Collections.emptyMap();
+
     @Inject
     @Named("resources")
     private ResourceBundle resourceBundle;
@@ -208,6 +224,14 @@ public class FieldEditorController implements Initializable {
             return;
         }
 
+        // update only changed rows, so no need to preserve scroll position
+        if (packetController.isInitialized() && fieldEditorView.patch(event.getChanges())) {
+            if (event.isFieldEngineChanged()) {
+                fieldEngineView.rebuild();
+            }
+            return;
+        }
+
         double val = fieldEditorScrollPane.getVvalue();
 
         // Workaround for flickering and saving Vscroll:
@@ -275,11 +299,7 @@ public class FieldEditorController implements Initializable {
 
         try {
             if (openFile != null) {
-                if (openFile.getName().endsWith(".pcap")
-                    && openFile.length() > PCAP_MAX_FILESIZE) {
-                    showError("Pcap file size should be less than 1MB");
-                    return;
-                } else if (openFile.getName().endsWith(DocumentFile.FILE_EXTENSION)) {
+                if (openFile.getName().endsWith(DocumentFile.FILE_EXTENSION)) {
                     model.loadDocumentFromFile(openFile);
                 } else {
                     loadPcapFile(openFile);
@@ -291,11 +311,32 @@ public class FieldEditorController implements Initializable {
         }
     }
 
+    /**
+     * loads the first packet. the file is read locally, only the packet bytes are sent to scapy_server.
+     * captures with several packets are shown in the capture browser
+     */
     public void loadPcapFile(File pcapfile) throws IOException {
-        byte[] bytes = Files.toByteArray(pcapfile);
-        model.setCurrentFile(pcapfile);
-        refreshTitle();
-        model.loadDocumentFromPcapData(packetController.read_pcap_packet(bytes));
+        PcapReader reader = PcapReader.open(pcapfile);
+        boolean browse = false;
+        try {
+            byte[] bytes = reader.readPacketData(0);
+            if (bytes == null) {
+                throw new IOException("No packets in " + pcapfile.getName());
+            }
+            model.setCurrentFile(pcapfile);
+            refreshTitle();
+            model.loadDocumentFromPcapData(packetController.reconstructPacketFromBinary(bytes));
+            browse = captureBrowserController.isAvailable() && reader.getPacket(1) != null;
+            if (browse) {
+                captureBrowserController.setCapture(reader);
+            } else if (captureBrowserController.isAvailable()) {
+                captureBrowserController.closeCapture();
+            }
+        } finally {
+            if (!browse) {
+                reader.close();
+            }
+        }
         // Set window width to scene width
         fitSizeToScene();
     }
@@ -319,10 +360,10 @@ public class FieldEditorController implements Initializable {
         writeToPcapFile(file, model.getPkt(), wantexception);
     }
 
+    /** writes the packet locally */
     public void writeToPcapFile(File file, PacketData pkt, boolean wantexception) throws Exception {
-        try {
-            byte[] pcap_bin = packetController.write_pcap_packet(pkt.getPacketBytes());
-            Files.write(pcap_bin, file);
+        try (PcapWriter writer = PcapWriter.create(file)) {
+            writer.writePacket(pkt.getPacketBytes());
         } catch (Exception e) {
             if (wantexception) {
                 throw e;
@@ -351,9 +392,9 @@ public class FieldEditorController implements Initializable {
     public void initFileChooser() {
         String docExt = "*"+DocumentFile.FILE_EXTENSION;
         fileChooser.getExtensionFilters().addAll(
-                new FileChooser.ExtensionFilter("TRex Packet editor Files", docExt, "*.pcap", "*.cap"),
+                new FileChooser.ExtensionFilter("TRex Packet editor Files", docExt, "*.pcap", "*.pcapng", "*.cap"),
                 new FileChooser.ExtensionFilter("Packet Editor Files", docExt),
-                new FileChooser.ExtensionFilter("Pcap Files", "*.pcap", "*.cap"),
+                new FileChooser.ExtensionFilter("Pcap Files", "*.pcap", "*.pcapng", "*.cap"),
                 new FileChooser.ExtensionFilter("All Files", "*.*"));
 
         File file = model.getCurrentFile();
@@ -367,7 +408,7 @@ public class FieldEditorController implements Initializable {
         initFileChooser();
         fileChooser.setTitle(resourceBundle.getString("SAVE_DIALOG_TITLE"));
         java.io.File outFile = fileChooser.showSaveDialog(fieldEditorCenterPane.getScene().getWindow());
-        if (outFile != null) {
+        if (outFile != null && releaseCaptureFile(outFile)) {
             try {
                 if (outFile.getName().endsWith(DocumentFile.FILE_EXTENSION)) {
                     model.saveDocumentToFile(outFile);
@@ -380,6 +421,105 @@ public class FieldEditorController implements Initializable {
         }
     }
 
+    /** asks for the number of packets and exports the packets generated by the field engine to pcap */
+    public void showExportVariantsDialog() {
+        TextInputDialog dialog = new TextInputDialog(String.valueOf(DEFAULT_EXPORT_VARIANTS));
+        dialog.setTitle(resourceBundle.getString("EXPORT_VARIANTS_TITLE"));
+        dialog.setHeaderText(resourceBundle.getString("EXPORT_VARIANTS_COUNT"));
+        dialog.initOwner(fieldEditorCenterPane.getScene().getWindow());
+        Optional<String> result = dialog.showAndWait();
+        if (!result.isPresent()) {
+            return;
+        }
+        int count;
+        try {
+            count = Integer.parseInt(result.get().trim());
+        } catch (NumberFormatException e) {
+            showError(resourceBundle.getString("EXPORT_VARIANTS_ERROR"), e);
+            return;
+        }
+        if (count <= 0 || count > MAX_EXPORT_VARIANTS) {
+            showError(resourceBundle.getString("EXPORT_VARIANTS_ERROR"),
+                    new IllegalArgumentException("Number of packets should be from 1 to " + MAX_EXPORT_VARIANTS + ": " + count));
+            return;
+        }
+        FieldEngineSimulator simulator;
+        try {
+            simulator = FieldEngineSimulator.create(model.getPkt(), 0);
+        } catch (IllegalArgumentException e) {
+            showError(resourceBundle.getString("EXPORT_VARIANTS_ERROR"), e);
+            return;
+        }
+
+        FileChooser exportChooser = new FileChooser();
+        exportChooser.setTitle(resourceBundle.getString("EXPORT_VARIANTS_TITLE"));
+        exportChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("Pcap Files", "*.pcap"));
+        File currentFile = model.getCurrentFile();
+        if (currentFile != null) {
+            exportChooser.setInitialDirectory(currentFile.getParentFile());
+        }
+        File outFile = exportChooser.showSaveDialog(fieldEditorCenterPane.getScene().getWindow());
+        if (outFile == null || !releaseCaptureFile(outFile)) {
+            return;
+        }
+        Thread export = new Thread(() -> {
+            try {
+                writeVariantsToPcapFile(outFile, simulator, count);
+                logger.info("{} field engine packets are exported to {}", count, outFile);
+            } catch (Exception e) {
+                Platform.runLater(() -> showError(resourceBundle.getString("EXPORT_VARIANTS_ERROR"), e));
+            }
+        }, "variants-export");
+        export.setDaemon(true);
+        export.start();
+    }
+
+    /** writes the first count packets of the field engine program, streaming them from the reused simulator buffer */
+    public static void writeVariantsToPcapFile(File file, FieldEngineSimulator simulator, int count) throws IOException {
+        try (PcapWriter writer = PcapWriter.create(file)) {
+            long timestamp = System.currentTimeMillis() * 1000000L;
+            simulator.generate(count, (index, packet, length) -> {
+                try {
+                    writer.writePacket(packet, 0, length, timestamp + index);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * the capture shown in the browser is memory-mapped and is closed before its file is overwritten.
+     * returns false if the user keeps the capture
+     */
+    boolean releaseCaptureFile(File outFile) {
+        File captureFile = captureBrowserController.isAvailable() ? captureBrowserController.getCaptureFile() : null;
+        if (captureFile == null || !isSameFile(captureFile, outFile)) {
+            return true;
+        }
+        Alert alert = new Alert(Alert.AlertType.CONFIRMATION);
+        alert.setTitle(resourceBundle.getString("SAVE_DIALOG_TITLE"));
+        alert.setHeaderText("File " + outFile.getName() + " is open in the capture browser");
+        alert.setContentText("Do you want to close the capture and overwrite the file ?");
+        alert.initOwner(fieldEditorCenterPane.getScene().getWindow());
+        Optional<ButtonType> result = alert.showAndWait();
+        if (!result.isPresent() || result.get() != ButtonType.OK) {
+            return false;
+        }
+        captureBrowserController.closeCapture();
+        return true;
+    }
+
+    private static boolean isSameFile(File a, File b) {
+        try {
+            return b.exists() && Files.isSameFile(a.toPath(), b.toPath());
+        } catch (IOException e) {
+            return a.getAbsoluteFile().equals(b.getAbsoluteFile());
+        }
+    }
+
     public void selectField(CombinedField field) {
         model.setSelected(field);
     }
@@ -489,17 +629,43 @@ public class FieldEditorController implements Initializable {
     }
 
     public List<JsonObject> getTemplates() {
+        templateContents = Collections.emptyMap();
         if (!scapy.isConnected()) {
             return null;
         }
         try {
-            return scapy.getTemplates();
+            List<JsonObject> templates = scapy.getTemplates();
+            if (templates != null && !templates.isEmpty()) {
+                loadTemplateContents(templates);
+            }
+            return templates;
         } catch (MethodNotFoundException e) {
             return null;
         }
     }
 
+    /** gets all template contents in one round trip instead of a get_template request per menu click */
+    private void loadTemplateContents(List<JsonObject> templates) {
+        try {
+            List<String> contents = scapy.getTemplates(templates);
+            Map<String, String> res = new HashMap<>();
+            for (int i = 0; i < templates.size(); i++) {
+                if (contents.get(i) != null) {
+                    res.put(templates.get(i).get("id").getAsString(), contents.get(i));
+                }
+            }
+            templateContents = res;
+        } catch (ScapyException | ConnectionException e) {
+            // contents are requested on click then
+            logger.warn("Failed to load template contents: {}", e.getMessage());
+        }
+    }
+
     public String getTemplate(JsonObject t) {
+        String content = templateContents.get(t.get("id").getAsString());
+        if (content != null) {
+            return content;
+        }
         if (!scapy.isConnected()) {
             return null;
         }
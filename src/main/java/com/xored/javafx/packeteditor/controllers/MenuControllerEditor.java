@@ -185,6 +185,11 @@ public class MenuControllerEditor implements Initializable {
         controller.showSaveDialog();
     }
 
+    @FXML
+    public void handleExportVariantsAction(ActionEvent event) {
+        controller.showExportVariantsDialog();
+    }
+
     @FXML
     public void handleRecalculateValues(ActionEvent actionEvent) {
         getModel().clearAutoFields();
@@ -0,0 +1,288 @@
+package com.xored.javafx.packeteditor.controls;
+
+import com.xored.javafx.packeteditor.data.IBinaryData;
+import com.xored.javafx.packeteditor.scapy.ScapyUtils;
+import javafx.geometry.Orientation;
+import javafx.geometry.VPos;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.control.ScrollBar;
+import javafx.scene.input.ScrollEvent;
+import javafx.scene.layout.Region;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+import javafx.scene.text.Text;
+
+/**
+ * Virtualized hex dump of IBinaryData.
+ * Only visible rows are painted to a single canvas, so memory and paint time do not depend on the data length.
+ */
+public class HexView extends Region {
+    public static final int BYTES_PER_ROW = 16;
+
+    static final Color BACKGROUND_COLOR = Color.WHITE;
+    static final Color ADDRESS_BACKGROUND_COLOR = Color.WHITESMOKE;
+    static final Color ADDRESS_COLOR = Color.GREY;
+    static final Color TEXT_COLOR = Color.web("#3b3b3b");
+    static final Color SELECTION_COLOR = Color.web("#b7e1ff");
+    static final Color EDITING_COLOR = Color.BLACK;
+
+    final double xPadding = 5;
+    final double rowPadding = 6;
+
+    private final Canvas canvas = new Canvas();
+    private final ScrollBar scrollBar = new ScrollBar();
+    /** hidden node to get font from css */
+    private final Text fontProbe = new Text("0000000000");
+
+    private IBinaryData data;
+    private int editingIdx = -1;
+
+    private Font font;
+    private double charWidth = 8;
+    private double rowHeight = 20;
+
+    public HexView() {
+        getStyleClass().add("hexview");
+        fontProbe.getStyleClass().add("begrouptext");
+        fontProbe.setManaged(false);
+        fontProbe.setVisible(false);
+
+        scrollBar.setOrientation(Orientation.VERTICAL);
+        scrollBar.setMin(0);
+        scrollBar.valueProperty().addListener((o, oldVal, newVal) -> {
+            if (oldVal.intValue() != newVal.intValue()) {
+                redraw();
+            }
+        });
+
+        setOnScroll((ScrollEvent e) -> {
+            int rows = (int) Math.signum(-e.getDeltaY()) * Math.max(1, (int) Math.round(Math.abs(e.getDeltaY()) / rowHeight));
+            setFirstVisibleRow(getFirstVisibleRow() + rows);
+            e.consume();
+        });
+
+        setFocusTraversable(true);
+        getChildren().addAll(canvas, scrollBar, fontProbe);
+    }
+
+    public void setData(IBinaryData data) {
+        this.data = data;
+        reload();
+    }
+
+    /** should be called when data length is changed */
+    public void reload() {
+        editingIdx = -1;
+        updateScrollBar();
+        redraw();
+    }
+
+    public int getEditingIndex() {
+        return editingIdx;
+    }
+
+    /** marks byte as being edited, -1 to stop editing */
+    public void setEditingIndex(int idx) {
+        int prevIdx = editingIdx;
+        editingIdx = idx;
+        if (prevIdx != -1) {
+            redrawRange(prevIdx, 1);
+        }
+        if (idx != -1) {
+            scrollTo(idx);
+            redrawRange(idx, 1);
+        }
+    }
+
+    public int getRowCount() {
+        int len = getDataLength();
+        return len / BYTES_PER_ROW + (len % BYTES_PER_ROW > 0 ? 1 : 0);
+    }
+
+    public int getFirstVisibleRow() {
+        return (int) scrollBar.getValue();
+    }
+
+    public void setFirstVisibleRow(int row) {
+        scrollBar.setValue(Math.max(0, Math.min(row, (int) scrollBar.getMax())));
+    }
+
+    /** number of rows which fit into the view, including partially visible last row */
+    public int getVisibleRowCount() {
+        return (int) Math.ceil(canvas.getHeight() / rowHeight);
+    }
+
+    /** scrolls the view to make byte visible */
+    public void scrollTo(int idx) {
+        int row = idx / BYTES_PER_ROW;
+        int first = getFirstVisibleRow();
+        int fullyVisible = Math.max(1, (int) (canvas.getHeight() / rowHeight));
+        if (row < first) {
+            setFirstVisibleRow(row);
+        } else if (row >= first + fullyVisible) {
+            setFirstVisibleRow(row - fullyVisible + 1);
+        }
+    }
+
+    /** returns byte index in hex or text column or -1 */
+    public int getByteIndexAt(double x, double y) {
+        if (y < 0 || y >= canvas.getHeight()) {
+            return -1;
+        }
+        int row = getFirstVisibleRow() + (int) (y / rowHeight);
+        int column = -1;
+        for (int i = 0; i < BYTES_PER_ROW && column == -1; i++) {
+            double bx = getByteX(i);
+            if (x >= bx - charWidth / 2 && x < bx + 2.5 * charWidth) {
+                column = i;
+            }
+            double tx = getTextX() + i * charWidth;
+            if (x >= tx && x < tx + charWidth) {
+                column = i;
+            }
+        }
+        int idx = row * BYTES_PER_ROW + column;
+        return column != -1 && idx < getDataLength() ? idx : -1;
+    }
+
+    /** repaints visible part of the view */
+    public void redraw() {
+        GraphicsContext g = canvas.getGraphicsContext2D();
+        g.setFill(BACKGROUND_COLOR);
+        g.fillRect(0, 0, canvas.getWidth(), canvas.getHeight());
+        int first = getFirstVisibleRow();
+        int last = Math.min(first + getVisibleRowCount(), getRowCount());
+        for (int row = first; row < last; row++) {
+            drawRow(g, row);
+        }
+        g.setFill(ADDRESS_BACKGROUND_COLOR);
+        g.fillRect(0, (last - first) * rowHeight, getAddressWidth(), canvas.getHeight());
+    }
+
+    /** repaints visible rows, which contain the bytes range */
+    public void redrawRange(int offset, int length) {
+        int first = Math.max(getFirstVisibleRow(), offset / BYTES_PER_ROW);
+        int last = Math.min(
+                Math.min(getFirstVisibleRow() + getVisibleRowCount(), getRowCount()),
+                (offset + Math.max(length, 1) - 1) / BYTES_PER_ROW + 1);
+        GraphicsContext g = canvas.getGraphicsContext2D();
+        for (int row = first; row < last; row++) {
+            drawRow(g, row);
+        }
+    }
+
+    private void drawRow(GraphicsContext g, int row) {
+        double y = (row - getFirstVisibleRow()) * rowHeight;
+        int rowOffset = row * BYTES_PER_ROW;
+        int rowLength = Math.min(BYTES_PER_ROW, getDataLength() - rowOffset);
+        double addressWidth = getAddressWidth();
+
+        g.setFill(BACKGROUND_COLOR);
+        g.fillRect(addressWidth, y, canvas.getWidth() - addressWidth, rowHeight);
+        g.setFill(ADDRESS_BACKGROUND_COLOR);
+        g.fillRect(0, y, addressWidth, rowHeight);
+
+        int selStart = data.getSelOffset();
+        int selEnd = selStart + data.getSelLength();
+        g.setFill(SELECTION_COLOR);
+        for (int i = 0; i < rowLength; i++) {
+            int idx = rowOffset + i;
+            if (idx >= selStart && idx < selEnd) {
+                // extend selection over the gap to the next selected byte in the row
+                boolean joined = i + 1 < rowLength && idx + 1 < selEnd;
+                double bx = getByteX(i) - charWidth / 2;
+                double bw = joined ? getByteX(i + 1) - getByteX(i) : 3 * charWidth;
+                g.fillRect(bx, y, bw, rowHeight);
+                g.fillRect(getTextX() + i * charWidth, y, charWidth, rowHeight);
+            }
+        }
+
+        g.setFont(font);
+        g.setTextBaseline(VPos.CENTER);
+        double textY = y + rowHeight / 2;
+        g.setFill(ADDRESS_COLOR);
+        g.fillText(String.format(getDataLength() > 0x10000 ? "%08x" : "%04x", rowOffset), xPadding, textY);
+
+        char[] hex = new char[2];
+        char[] text = new char[rowLength];
+        g.setFill(TEXT_COLOR);
+        for (int i = 0; i < rowLength; i++) {
+            byte b = data.getByte(rowOffset + i);
+            hex[0] = Character.toUpperCase(Character.forDigit((b >> 4) & 0xF, 16));
+            hex[1] = Character.toUpperCase(Character.forDigit(b & 0xF, 16));
+            g.fillText(new String(hex), getByteX(i), textY);
+            text[i] = ScapyUtils.isPrintableChar(b) ? (char) b : '.';
+        }
+        g.fillText(new String(text), getTextX(), textY);
+
+        if (editingIdx >= rowOffset && editingIdx < rowOffset + rowLength) {
+            g.setStroke(EDITING_COLOR);
+            g.strokeRect(getByteX(editingIdx - rowOffset) - charWidth / 2 + 0.5, y + 0.5, 3 * charWidth - 1, rowHeight - 1);
+        }
+    }
+
+    private int getDataLength() {
+        return data != null ? data.getLength() : 0;
+    }
+
+    private double getAddressWidth() {
+        int digits = getDataLength() > 0x10000 ? 8 : 4;
+        return xPadding * 2 + digits * charWidth;
+    }
+
+    private double getByteX(int column) {
+        return getAddressWidth() + 2 * charWidth + column * 3 * charWidth + (column / 4) * charWidth;
+    }
+
+    private double getTextX() {
+        return getByteX(BYTES_PER_ROW) + 2 * charWidth;
+    }
+
+    private void updateScrollBar() {
+        int maxFirstRow = Math.max(0, getRowCount() - (int) (canvas.getHeight() / rowHeight));
+        scrollBar.setMax(maxFirstRow);
+        scrollBar.setVisibleAmount(Math.max(1, getVisibleRowCount()));
+        scrollBar.setBlockIncrement(Math.max(1, getVisibleRowCount() - 1));
+        scrollBar.setUnitIncrement(1);
+        scrollBar.setDisable(maxFirstRow == 0);
+        if (scrollBar.getValue() > maxFirstRow) {
+            scrollBar.setValue(maxFirstRow);
+        }
+    }
+
+    private void updateFont() {
+        Font cssFont = fontProbe.getFont();
+        if (cssFont != font) {
+            font = cssFont;
+            charWidth = fontProbe.getLayoutBounds().getWidth() / fontProbe.getText().length();
+            rowHeight = Math.ceil(fontProbe.getLayoutBounds().getHeight() + rowPadding);
+        }
+    }
+
+    @Override
+    protected void layoutChildren() {
+        updateFont();
+        double w = getWidth() - snappedLeftInset() - snappedRightInset();
+        double h = getHeight() - snappedTopInset() - snappedBottomInset();
+        double sbWidth = scrollBar.prefWidth(-1);
+        scrollBar.resizeRelocate(snappedLeftInset() + w - sbWidth, snappedTopInset(), sbWidth, h);
+        canvas.relocate(snappedLeftInset(), snappedTopInset());
+        if (canvas.getWidth() != w - sbWidth || canvas.getHeight() != h) {
+            canvas.setWidth(Math.max(0, w - sbWidth));
+            canvas.setHeight(Math.max(0, h));
+            updateScrollBar();
+        }
+        redraw();
+    }
+
+    @Override
+    protected double computePrefWidth(double height) {
+        return snappedLeftInset() + getTextX() + (BYTES_PER_ROW + 1) * charWidth + scrollBar.prefWidth(-1) + snappedRightInset();
+    }
+
+    @Override
+    protected double computePrefHeight(double width) {
+        return snappedTopInset() + rowHeight * Math.min(getRowCount(), 16) + snappedBottomInset();
+    }
+}
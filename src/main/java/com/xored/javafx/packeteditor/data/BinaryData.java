@@ -4,15 +4,16 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Arrays;
-import java.util.Observable;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
-public class BinaryData extends Observable implements IBinaryData {
+import static com.xored.javafx.packeteditor.data.BinaryDataEvent.Type.*;
+
+public class BinaryData implements IBinaryData {
 
     private Logger logger= LoggerFactory.getLogger(BinaryData.class);
-    
-    public enum OP {
-        SET_BYTE, SET_BYTES, SELECTION, RELOAD
-    }
+
+    private final List<BinaryDataListener> listeners = new CopyOnWriteArrayList<>();
 
     private byte[] bytes;
     private int selOffset;
@@ -23,13 +24,34 @@ public class BinaryData extends Observable implements IBinaryData {
         setBytes(new byte[0]);
     }
     
+    /** replaces data. if length is the same, only changed bytes and the reset selection are repainted */
     @Override
     public void setBytes(byte[] payload) {
+        byte[] prev = bytes;
+        int prevSelOffset = selOffset;
+        int prevSelLength = selLength;
         selOffset = 0;
         selLength = 0;
         bytes = payload;
-        setChanged();
-        notifyObservers(OP.RELOAD);
+
+        if (prev == null || payload == null || prev.length != payload.length) {
+            fireChange(RELOAD, 0, getLength());
+            return;
+        }
+
+        int first = 0;
+        while (first < payload.length && prev[first] == payload[first]) {
+            first++;
+        }
+        int last = payload.length - 1;
+        while (last >= first && prev[last] == payload[last]) {
+            last--;
+        }
+        // reported even if nothing is changed, so listeners drop their pending edits
+        fireChange(REPLACE, first, first <= last ? last - first + 1 : 0);
+        if (prevSelLength > 0) {
+            fireChange(SELECTION, prevSelOffset, prevSelLength);
+        }
     }
 
     @Override
@@ -45,9 +67,8 @@ public class BinaryData extends Observable implements IBinaryData {
     @Override
     public void setByte(int idx, byte value) {
         bytes[idx] = value;
-        logger.info("Set bytes[{}] = {}", idx, (int) value);
-        setChanged();
-        notifyObservers(OP.SET_BYTE);
+        logger.debug("Set bytes[{}] = {}", idx, (int) value);
+        fireChange(SET_BYTES, idx, 1);
     }
 
     public byte[] getBytes(int offset, int length) {
@@ -57,22 +78,31 @@ public class BinaryData extends Observable implements IBinaryData {
     @Override
     public void setBytes(int offset, int length, byte[] bytes) {
         System.arraycopy(bytes, 0, this.bytes, offset, length);
-        setChanged();
-        notifyObservers(OP.SET_BYTES);
+        fireChange(SET_BYTES, offset, length);
     }
 
     @Override
-    public Observable getObservable() {
-        return this;
+    public void addListener(BinaryDataListener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void removeListener(BinaryDataListener listener) {
+        listeners.remove(listener);
     }
 
     @Override
     public void setSelected(int offset, int length) {
+        int start = offset;
+        int end = offset + length;
+        if (selLength > 0) {
+            start = Math.min(start, selOffset);
+            end = Math.max(end, selOffset + selLength);
+        }
         selOffset = offset;
         selLength = length;
 
-        setChanged();
-        notifyObservers(OP.SELECTION);
+        fireChange(SELECTION, start, end - start);
     }
 
     public int getSelOffset() {
@@ -82,4 +112,11 @@ public class BinaryData extends Observable implements IBinaryData {
     public int getSelLength() {
         return selLength;
     }
+
+    private void fireChange(BinaryDataEvent.Type type, int offset, int length) {
+        BinaryDataEvent event = new BinaryDataEvent(type, offset, length);
+        for (BinaryDataListener listener : listeners) {
+            listener.onChange(event);
+        }
+    }
 }
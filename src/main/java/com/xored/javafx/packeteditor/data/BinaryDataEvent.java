@@ -0,0 +1,38 @@
+package com.xored.javafx.packeteditor.data;
+
+/**
+ * Change of IBinaryData. Carries the range of bytes, which should be repainted.
+ */
+public class BinaryDataEvent {
+    public enum Type {
+        /** bytes in the range were changed, length of the data is the same */
+        SET_BYTES,
+        /** selection was changed, range covers both old and new selection */
+        SELECTION,
+        /** whole data was replaced with data of the same length, range covers changed bytes and may be empty */
+        REPLACE,
+        /** whole data was replaced */
+        RELOAD
+    }
+
+    private final Type type;
+    private final int offset;
+    private final int length;
+
+    public BinaryDataEvent(Type type, int offset, int length) {
+        this.type = type;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    public Type getType() { return type; }
+
+    public int getOffset() { return offset; }
+
+    public int getLength() { return length; }
+
+    @Override
+    public String toString() {
+        return String.format("%s[%d, %d]", type, offset, length);
+    }
+}
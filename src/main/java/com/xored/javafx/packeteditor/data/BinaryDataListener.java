@@ -0,0 +1,6 @@
+package com.xored.javafx.packeteditor.data;
+
+@FunctionalInterface
+public interface BinaryDataListener {
+    void onChange(BinaryDataEvent event);
+}
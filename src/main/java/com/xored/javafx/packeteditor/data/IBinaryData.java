@@ -1,7 +1,5 @@
 package com.xored.javafx.packeteditor.data;
 
-import java.util.Observable;
-
 public interface IBinaryData {
     byte getByte(int idx);
     int getLength();
@@ -11,7 +9,8 @@ public interface IBinaryData {
     void setBytes(byte[] payload);
     void setBytes(int offset, int length, byte[] bytes);
 
-    Observable getObservable();
+    void addListener(BinaryDataListener listener);
+    void removeListener(BinaryDataListener listener);
     void setSelected(int offset, int length);
     int getSelOffset();
     int getSelLength();
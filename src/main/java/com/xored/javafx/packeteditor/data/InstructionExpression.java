@@ -6,6 +6,7 @@ import com.xored.javafx.packeteditor.metatdata.InstructionExpressionMeta;
 
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
 
 public class InstructionExpression {
     private InstructionExpressionMeta meta;
@@ -16,6 +17,12 @@ public class InstructionExpression {
         this.parameters = parameters;
     }
     
+    public InstructionExpression copy() {
+        return new InstructionExpression(meta, parameters.stream()
+                .map(parameter -> new FEInstructionParameter2(parameter.getMeta(), parameter.getValue()))
+                .collect(Collectors.toList()));
+    }
+
     public String getId() {
         return meta.getId();
     }
@@ -9,9 +9,11 @@ import com.google.gson.JsonPrimitive;
 import com.google.gson.reflect.TypeToken;
 import com.google.inject.Inject;
 import com.xored.javafx.packeteditor.data.combined.CombinedField;
+import com.xored.javafx.packeteditor.data.combined.CombinedModelChanges;
 import com.xored.javafx.packeteditor.data.combined.CombinedProtocolModel;
 import com.xored.javafx.packeteditor.data.user.Document;
 import com.xored.javafx.packeteditor.data.user.DocumentFile;
+import com.xored.javafx.packeteditor.data.user.UserField;
 import com.xored.javafx.packeteditor.data.user.UserProtocol;
 import com.xored.javafx.packeteditor.events.InitPacketEditorEvent;
 import com.xored.javafx.packeteditor.events.RebuildViewEvent;
@@ -22,11 +24,13 @@ import com.xored.javafx.packeteditor.metatdata.ProtocolMetadata;
 import com.xored.javafx.packeteditor.scapy.FieldData;
 import com.xored.javafx.packeteditor.scapy.InstructionExpressionData;
 import com.xored.javafx.packeteditor.scapy.PacketData;
+import com.xored.javafx.packeteditor.scapy.ProtocolData;
 import com.xored.javafx.packeteditor.scapy.ReconstructField;
 import com.xored.javafx.packeteditor.service.IMetadataService;
 import com.xored.javafx.packeteditor.service.InstructionsTemplate;
 import com.xored.javafx.packeteditor.service.PacketDataService;
 import com.xored.javafx.packeteditor.service.PacketUndoController;
+import javafx.application.Platform;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -34,6 +38,8 @@ import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.Type;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.IntPredicate;
 import java.util.stream.Collectors;
 
 import static com.xored.javafx.packeteditor.data.user.DocumentFile.toPOJO;
@@ -66,6 +72,15 @@ public class PacketEditorModel {
     /** model, produced using userModel and information from Scapy. user for building UI structure */
     CombinedProtocolModel model = new CombinedProtocolModel();
 
+    /** view update is scheduled, but not done yet */
+    private boolean viewUpdatePending = false;
+
+    /** model changes, which are not posted to the view yet. null if there are none */
+    private CombinedModelChanges pendingChanges;
+
+    /** used to skip field engine view rebuild, if an edit did not touch it */
+    private String lastFieldEngineState;
+
     public CombinedProtocolModel getCombinedProtocolModel() {
         return model;
     }
@@ -112,6 +127,8 @@ public class PacketEditorModel {
         
         userModel.addInstruction(instruction);
 
+        // loaded concurrently with the packet build
+        prefetchParameterValues(Collections.singletonList(instruction));
         setPktAndReload(packetDataService.buildPacket(userModel.buildScapyModel(), userModel.getVmInstructionsModel()));
     }
     public void addInstructions(List<InstructionExpression> instructions) {
@@ -119,9 +136,23 @@ public class PacketEditorModel {
         
         instructions.stream().forEach(userModel::addInstruction);
         
+        prefetchParameterValues(instructions);
         setPktAndReload(packetDataService.buildPacket(userModel.buildScapyModel(), userModel.getVmInstructionsModel()));
     }
 
+    /** value lists are loaded only for enum parameters, other ones are edited as text */
+    private void prefetchParameterValues(List<InstructionExpression> instructions) {
+        List<String> parameterIds = instructions.stream()
+                .flatMap(instruction -> instruction.getParameters().stream())
+                .filter(parameter -> parameter.getMeta().isEnum())
+                .map(FEInstructionParameter2::getId)
+                .distinct()
+                .collect(Collectors.toList());
+        if (!parameterIds.isEmpty()) {
+            packetDataService.prefetchInstructionParameterValues(userModel.buildScapyModel(), userModel.getVmInstructionsModel(), parameterIds);
+        }
+    }
+
     public void removeInstructionLayer(InstructionExpression instruction) {
         beforeContentReplace();
 
@@ -230,12 +261,19 @@ public class PacketEditorModel {
         addInstructions(instructions);
     }
 
-    public class DocState {
+    private final Gson gson = new Gson();
+
+    public static class DocState {
         public DocumentFile userModel;
         public PacketData packet;
+        /** copy of the user model, available for recent undo records only */
+        public transient Document document;
     }
 
-    PacketUndoController<DocState> undoController = new PacketUndoController<>(this::loadUndoState);
+    PacketUndoController<DocState> undoController = new PacketUndoController<>(
+            this::loadUndoState,
+            docState -> gson.toJsonTree(docState),
+            json -> gson.fromJson(json, DocState.class));
 
     /** compatibility flag. to be removed later */
     boolean binaryMode = false;
@@ -306,18 +344,18 @@ public class PacketEditorModel {
             return Collections.singletonList(metadataService.getProtocolMetadataById("Ether"));
         }
 
-        Set<String> suggested_extensions = metadataService.getAllowedPayloadForProtocol(model.getLastProtocolId()).stream().collect(Collectors.toSet());
+        String lastProtocolId = model.getLastProtocolId();
         List<ProtocolMetadata> res = new ArrayList<>();
         if (getUnsupported) {
             Map<Boolean, List<ProtocolMetadata>> suggested_proto = protocolsMetaMap.values().stream()
                     .sorted((p1, p2) -> p1.getId().compareTo(p2.getId()))
-                    .collect(Collectors.partitioningBy(m -> suggested_extensions.contains(m.getId())));
+                    .collect(Collectors.partitioningBy(m -> metadataService.isAllowedPayload(lastProtocolId, m.getId())));
             // stable sort
             res.addAll(suggested_proto.getOrDefault(true, Collections.emptyList()));
             //res.addAll(suggested_proto.getOrDefault(false, Arrays.asList()));
         } else {
             res = protocolsMetaMap.values().stream()
-                    .filter(m -> suggested_extensions.contains(m.getId()))
+                    .filter(m -> metadataService.isAllowedPayload(lastProtocolId, m.getId()))
                     .sorted((p1, p2) -> p1.getId().compareTo(p2.getId()))
                     .collect(Collectors.toList());
         }
@@ -337,14 +375,33 @@ public class PacketEditorModel {
     }
 
     private void fireUpdateViewEvent() {
+        updateModel();
+        postRebuildViewEvent();
+    }
+
+    /** updates binary and combined model from the packet. changes are collected until they are posted to the view */
+    private void updateModel() {
         binary.setBytes(packet.getPacketBytes());
-        if (isBinaryMode()) {
-            model = CombinedProtocolModel.fromScapyData(metadataService, userModel, packet.getProtocols());
-        } else {
-            model = CombinedProtocolModel.fromUserModel(metadataService, userModel, packet.getProtocols());
-        }
-        logger.debug("Rebuilding UI model");
-        eventBus.post(new RebuildViewEvent());
+        model = CombinedProtocolModel.update(model, metadataService, userModel, packet.getProtocols(), isBinaryMode());
+        pendingChanges = pendingChanges != null ? CombinedModelChanges.merge(pendingChanges, model.getChanges()) : model.getChanges();
+    }
+
+    private void postRebuildViewEvent() {
+        CombinedModelChanges changes = pendingChanges;
+        pendingChanges = null;
+        viewUpdatePending = false;
+        logger.debug("Rebuilding UI model: {}", changes);
+
+        String fieldEngineState = getFieldEngineState();
+        boolean fieldEngineChanged = changes.isStructureChanged() || !fieldEngineState.equals(lastFieldEngineState);
+        lastFieldEngineState = fieldEngineState;
+        eventBus.post(new RebuildViewEvent(changes, fieldEngineChanged));
+    }
+
+    /** everything shown by the field engine view, except packet structure */
+    private String getFieldEngineState() {
+        Gson gson = new Gson();
+        return gson.toJson(packet.field_engine) + gson.toJson(packet.vm_instructions_expressions) + gson.toJson(userModel.getVmInstructionsModel());
     }
 
     private void setPktAndReload(PacketData pkt) {
@@ -460,13 +517,14 @@ public class PacketEditorModel {
         if (userProtocol != null) {
             if (newValue.isDeleted()) {
                 userModel.deleteField(protoPath, fieldId);
-            } else if (newValue.isRandom()) {
+            } else if (newValue.isRandom() && isBinaryMode()) {
                 FieldData randval = packetDataService.getRandomFieldValue(
                         field.getProtocol().getMeta().getId(),
                         field.getMeta().getId()
                 );
                 userModel.setFieldValue(protoPath, fieldId, randval.getValue());
             } else {
+                // random marker is replaced with the generated value after the build
                 userModel.setFieldValue(protoPath, fieldId, newValue.value);
             }
         } else {
@@ -477,13 +535,20 @@ public class PacketEditorModel {
             }
         }
 
-        PacketData newPkt;
+        PacketData newPkt = encodeFieldLocally(field, userProtocol, newValue);
+        if (newPkt != null) {
+            setPktAndReload(newPkt);
+            return;
+        }
         
         try {
             if (isBinaryMode()) {
                 newPkt = packetDataService.reconstructPacketField(packet, field.getProtocol().getPath(), newValue);
             } else {
                 newPkt = packetDataService.buildPacket(userModel.buildScapyModel(), userModel.getVmInstructionsModel());
+                if (userProtocol != null && newValue.isRandom()) {
+                    fixRandomFieldValue(newPkt, protoPath, field);
+                }
             }
         } catch (Exception e) {
             logger.error("Fail to update field {} with new value: {} due to: \"{}\"", field.getId(), newValue.value, e.getMessage());
@@ -495,6 +560,35 @@ public class PacketEditorModel {
         setPktAndReload(newPkt);
     }
 
+    /** returns packet with the field patched locally or null, if build_pkt/reconstruct_pkt is required */
+    private PacketData encodeFieldLocally(CombinedField field, UserProtocol userProtocol, ReconstructField newValue) {
+        if (packet == null || newValue.isRandom() || newValue.isDeleted()
+                || (userProtocol != null && userProtocol.getFieldInstruction(field.getId()) != null)) {
+            return null;
+        }
+        int protocolIndex = field.getProtocol().getPath().size() - 1;
+        // reconstruct_pkt keeps dissected checksums, build_pkt calculates unset ones
+        IntPredicate autoChecksum = idx -> {
+            if (isBinaryMode() || idx >= userModel.getProtocolStack().size()) {
+                return false;
+            }
+            UserField chksum = userModel.getProtocolStack().get(idx).getField("chksum");
+            return chksum == null || !chksum.isSet();
+        };
+        return packetDataService.encodeFieldLocally(packet, protocolIndex, newValue, autoChecksum);
+    }
+
+    /** stores value generated by Scapy for a randomized field, so next builds do not change it */
+    private void fixRandomFieldValue(PacketData newPkt, List<String> protoPath, CombinedField field) {
+        String fieldId = field.getMeta().getId();
+        List<ProtocolData> protocols = newPkt.getProtocols();
+        FieldData randval = protocols.size() >= protoPath.size() ? protocols.get(protoPath.size() - 1).getFieldById(fieldId) : null;
+        if (randval == null) {
+            randval = packetDataService.getRandomFieldValue(field.getProtocol().getMeta().getId(), fieldId);
+        }
+        userModel.getProtocolByPath(protoPath).getField(fieldId).setValue(randval.getValue());
+    }
+
     /** sets text value */
     public void editField(CombinedField field, String newValue) {
         if (field.getScapyFieldData() != null && field.getScapyFieldData().getValueExpr() != null) {
@@ -511,7 +605,17 @@ public class PacketEditorModel {
 
     /** packet bytes were changed with the binary editor */
     public void editPacketBytes(byte[] newBytes) {
-        importUserModelFromScapy(packetDataService.reconstructPacketFromBinary(newBytes));
+        applyPacketBytes(packetDataService.reconstructPacketFromBinary(newBytes));
+    }
+
+    /** reconstructs packet from bytes changed with the binary editor, does not block the caller. see applyPacketBytes */
+    public CompletableFuture<PacketData> editPacketBytesAsync(byte[] newBytes) {
+        return packetDataService.reconstructPacketFromBinaryAsync(newBytes);
+    }
+
+    /** applies result of editPacketBytesAsync */
+    public void applyPacketBytes(PacketData reconstructed) {
+        importUserModelFromScapy(reconstructed);
     }
 
     public void setSelected(CombinedField field) {
@@ -569,6 +673,7 @@ public class PacketEditorModel {
         DocState ds = new DocState();
         ds.packet = packet;
         ds.userModel = toPOJO(userModel);
+        ds.document = userModel.copy();
         undoController.beforeContentReplace(ds);
     }
 
@@ -576,8 +681,23 @@ public class PacketEditorModel {
     private void loadUndoState(DocState docState) {
         beforeContentReplace(); // save data for reverse undo/redo while processing undo/redo
         packet = docState.packet;
-        userModel = DocumentFile.fromPOJO(docState.userModel, metadataService);
-        fireUpdateViewEvent();
+        // hot snapshot is not referenced by the undo history anymore, so it can become the current model
+        userModel = docState.document != null ? docState.document : DocumentFile.fromPOJO(docState.userModel, metadataService);
+        // model and binary are consistent with the packet right away, only the view rebuild is deferred
+        updateModel();
+        postRebuildViewEventLater();
+    }
+
+    /** coalesces view rebuilds of rapid undo/redo steps into one */
+    private void postRebuildViewEventLater() {
+        if (!viewUpdatePending) {
+            viewUpdatePending = true;
+            Platform.runLater(() -> {
+                if (viewUpdatePending) {
+                    postRebuildViewEvent();
+                }
+            });
+        }
     }
 
     public Document getUserModel() {
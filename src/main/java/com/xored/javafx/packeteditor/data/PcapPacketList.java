@@ -0,0 +1,48 @@
+package com.xored.javafx.packeteditor.data;
+
+import com.xored.javafx.packeteditor.scapy.PcapReader;
+import javafx.collections.ObservableListBase;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Read-only list view of indexed packets of a capture. Records are created on access,
+ * so the list does not hold an object per packet
+ */
+public class PcapPacketList extends ObservableListBase<PcapReader.PacketRecord> {
+    private final PcapReader reader;
+    private int size = 0;
+
+    public PcapPacketList(PcapReader reader) {
+        this.reader = reader;
+    }
+
+    @Override
+    public PcapReader.PacketRecord get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        try {
+            return reader.getPacket(index);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /** makes packets indexed by the reader visible. should be called in the FX thread */
+    public void updateSize(int newSize) {
+        if (newSize > size) {
+            int oldSize = size;
+            size = newSize;
+            beginChange();
+            nextAdd(oldSize, newSize);
+            endChange();
+        }
+    }
+}
@@ -15,6 +15,8 @@ import static com.xored.javafx.packeteditor.metatdata.FieldMetadata.*;
 
 public class CombinedField {
     UserField userField;
+    /** user value at the moment of model build. user field is modified in place, so it can not be used for diff */
+    JsonElement userValue;
 
     FieldData scapyField;
     FieldMetadata meta;
@@ -0,0 +1,56 @@
+package com.xored.javafx.packeteditor.data.combined;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Difference between two consecutive combined models.
+ * Protocols and fields, which are not listed here, are the same instances as in the previous model and have the same data.
+ */
+public class CombinedModelChanges {
+    boolean structureChanged;
+    List<CombinedProtocol> changedProtocols = new ArrayList<>();
+    List<CombinedField> changedFields = new ArrayList<>();
+
+    /** changes which require the whole view to be rebuilt */
+    public static CombinedModelChanges full() {
+        CombinedModelChanges res = new CombinedModelChanges();
+        res.structureChanged = true;
+        return res;
+    }
+
+    /** changes of two consecutive updates as one change. later must be the changes of the model updated from the model of earlier */
+    public static CombinedModelChanges merge(CombinedModelChanges earlier, CombinedModelChanges later) {
+        if (earlier.structureChanged || later.structureChanged) {
+            return full();
+        }
+        CombinedModelChanges res = new CombinedModelChanges();
+        res.changedProtocols.addAll(earlier.changedProtocols);
+        later.changedProtocols.stream()
+                .filter(protocol -> !res.changedProtocols.contains(protocol))
+                .forEach(res.changedProtocols::add);
+        Stream.concat(earlier.changedFields.stream(), later.changedFields.stream())
+                .filter(field -> !res.changedProtocols.contains(field.parent) && !res.changedFields.contains(field))
+                .forEach(res.changedFields::add);
+        return res;
+    }
+
+    /** true if protocols were added, removed or replaced. in this case other lists are not filled */
+    public boolean isStructureChanged() { return structureChanged; }
+
+    /** protocols with changed layer attributes like title or user protocol. all fields of such protocol should be refreshed */
+    public List<CombinedProtocol> getChangedProtocols() { return Collections.unmodifiableList(changedProtocols); }
+
+    /** changed fields of protocols, which are not in the changed protocols list */
+    public List<CombinedField> getChangedFields() { return Collections.unmodifiableList(changedFields); }
+
+    public boolean isEmpty() {
+        return !structureChanged && changedProtocols.isEmpty() && changedFields.isEmpty();
+    }
+
+    public String toString() {
+        return structureChanged ? "structure changed" : String.format("%d protocols, %d fields changed", changedProtocols.size(), changedFields.size());
+    }
+}
@@ -1,14 +1,18 @@
 package com.xored.javafx.packeteditor.data.combined;
 
+import com.google.gson.JsonElement;
 import com.xored.javafx.packeteditor.data.user.Document;
+import com.xored.javafx.packeteditor.data.user.UserField;
 import com.xored.javafx.packeteditor.data.user.UserProtocol;
 import com.xored.javafx.packeteditor.metatdata.FieldMetadata;
+import com.xored.javafx.packeteditor.scapy.FieldData;
 import com.xored.javafx.packeteditor.scapy.ProtocolData;
 import com.xored.javafx.packeteditor.service.IMetadataService;
 
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Objects;
 
 /**
  * used to show user and scapy models aside
@@ -16,16 +20,27 @@ import java.util.List;
 public class CombinedProtocolModel {
     List<CombinedProtocol> protocolStack = new ArrayList<>();
 
+    /** model was built from scapy data only(binary mode) */
+    boolean fromScapyData;
+
+    CombinedModelChanges changes = CombinedModelChanges.full();
+
     public List<CombinedProtocol> getProtocolStack() {
         return protocolStack;
     }
 
+    /** changes relative to the model, this model was updated from */
+    public CombinedModelChanges getChanges() {
+        return changes;
+    }
+
     public String getLastProtocolId() {
         return protocolStack.get(protocolStack.size() - 1).getId();
     }
 
     public static CombinedProtocolModel fromScapyData(IMetadataService metadataService, Document userModel, List<ProtocolData> scapyStack) {
         CombinedProtocolModel res = new CombinedProtocolModel();
+        res.fromScapyData = true;
 
         List<String> currentPath = new ArrayList<>();
         for (ProtocolData protocol : scapyStack) {
@@ -65,6 +80,111 @@ public class CombinedProtocolModel {
         return res;
     }
 
+    /**
+     * builds model for the new packet data like fromScapyData/fromUserModel,
+     * but reuses protocols and fields of the previous model and records what was changed.
+     * falls back to a full build if protocol structure was changed.
+     * prev is consumed: its protocols and fields are updated in place and moved to the result, so prev must not be used afterwards
+     */
+    public static CombinedProtocolModel update(CombinedProtocolModel prev, IMetadataService metadataService, Document userModel, List<ProtocolData> scapyStack, boolean fromScapyData) {
+        List<String> ids = new ArrayList<>();
+        if (fromScapyData) {
+            scapyStack.forEach(protocol -> ids.add(protocol.getId()));
+        } else {
+            userModel.getProtocolStack().forEach(protocol -> ids.add(protocol.getId()));
+        }
+        if (!sameStructure(prev, metadataService, ids, fromScapyData)) {
+            return fromScapyData
+                    ? fromScapyData(metadataService, userModel, scapyStack)
+                    : fromUserModel(metadataService, userModel, scapyStack);
+        }
+
+        CombinedProtocolModel res = new CombinedProtocolModel();
+        res.fromScapyData = fromScapyData;
+        res.changes = new CombinedModelChanges();
+        for (int i = 0; i < ids.size(); i++) {
+            CombinedProtocol protocol = prev.protocolStack.get(i);
+            UserProtocol userProtocol = fromScapyData ? null : userModel.getProtocolStack().get(i);
+            ProtocolData scapyProtocol = fromScapyData ? scapyStack.get(i) : getByPath(protocol.path, scapyStack);
+
+            // user protocol is captured by layer controls, so its replacement(undo, load) requires a layer rebuild
+            boolean protocolChanged = protocol.userProtocol != userProtocol || !sameProtocolData(protocol.scapyProtocol, scapyProtocol);
+            // absolute offsets of all fields depend on protocol offset
+            boolean offsetChanged = !sameNumber(offsetOf(protocol.scapyProtocol), offsetOf(scapyProtocol));
+            protocol.userProtocol = userProtocol;
+            protocol.scapyProtocol = scapyProtocol;
+            if (protocolChanged) {
+                res.changes.changedProtocols.add(protocol);
+            }
+
+            for (CombinedField field : protocol.fields) {
+                FieldData scapyField = scapyProtocol != null ? scapyProtocol.getFieldById(field.getId()) : null;
+                UserField userField = userProtocol != null ? userProtocol.getField(field.getId()) : null;
+                JsonElement userValue = userField != null ? userField.getValue() : null;
+                // like user protocol, user field is captured by field controls
+                boolean fieldChanged = offsetChanged
+                        || field.userField != userField
+                        || !sameFieldData(field.scapyField, scapyField)
+                        || !Objects.equals(field.userValue, userValue);
+                field.scapyField = scapyField;
+                field.userField = userField;
+                field.userValue = userValue;
+                if (fieldChanged && !protocolChanged) {
+                    res.changes.changedFields.add(field);
+                }
+            }
+            res.protocolStack.add(protocol);
+        }
+        return res;
+    }
+
+    private static boolean sameStructure(CombinedProtocolModel prev, IMetadataService metadataService, List<String> ids, boolean fromScapyData) {
+        if (prev == null || prev.fromScapyData != fromScapyData || prev.protocolStack.size() != ids.size()) {
+            return false;
+        }
+        for (int i = 0; i < ids.size(); i++) {
+            CombinedProtocol protocol = prev.protocolStack.get(i);
+            if (!protocol.path.equals(ids.subList(0, i + 1))
+                    || protocol.meta != metadataService.getProtocolMetadataById(ids.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Number offsetOf(ProtocolData protocol) {
+        return protocol != null ? protocol.offset : null;
+    }
+
+    private static boolean sameNumber(Number n1, Number n2) {
+        if (n1 == null || n2 == null) {
+            return n1 == n2;
+        }
+        return n1.doubleValue() == n2.doubleValue();
+    }
+
+    /** compares attributes of protocol layer, which are shown in the view. fields are compared separately */
+    private static boolean sameProtocolData(ProtocolData p1, ProtocolData p2) {
+        if (p1 == null || p2 == null) {
+            return p1 == p2;
+        }
+        return Objects.equals(p1.id, p2.id)
+                && Objects.equals(p1.real_id, p2.real_id)
+                && Objects.equals(p1.valid_structure, p2.valid_structure)
+                && Objects.equals(p1.name, p2.name);
+    }
+
+    private static boolean sameFieldData(FieldData f1, FieldData f2) {
+        if (f1 == null || f2 == null) {
+            return f1 == f2;
+        }
+        return Objects.equals(f1.value, f2.value)
+                && Objects.equals(f1.hvalue, f2.hvalue)
+                && sameNumber(f1.offset, f2.offset)
+                && sameNumber(f1.length, f2.length)
+                && f1.isIgnored() == f2.isIgnored();
+    }
+
     private static void createFields(CombinedProtocol protocolObj) {
         for (FieldMetadata fieldMeta : protocolObj.getMeta().getFields()) {
             CombinedField field = new CombinedField();
@@ -76,6 +196,7 @@ public class CombinedProtocolModel {
             }
             if (protocolObj.userProtocol != null) {
                 field.userField = protocolObj.userProtocol.getField(fieldMeta.getId());
+                field.userValue = field.userField != null ? field.userField.getValue() : null;
             }
             protocolObj.fields.add(field);
         }
@@ -36,6 +36,17 @@ public class Document {
     
     private List<InstructionExpression> feInstructions = new ArrayList<>();
 
+    /** copies user data without metadata lookups. used for undo snapshots */
+    public Document copy() {
+        Document res = new Document();
+        protocols.forEach(protocol -> res.protocols.push(protocol.copy()));
+        feParameters.forEach((id, parameter) -> res.feParameters.put(id, new FeParameter(parameter.getMeta(), parameter.getValue())));
+        feInstructions.forEach(instruction -> res.feInstructions.add(instruction.copy()));
+        res.metadata = metadata;
+        res.currentFile = currentFile;
+        return res;
+    }
+
     public DocumentMetadata getMetadata() {
         return metadata;
     }
@@ -1,5 +1,6 @@
 package com.xored.javafx.packeteditor.data.user;
 
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 public class FEInstruction {
@@ -12,6 +13,10 @@ public class FEInstruction {
         this.parameters = parameters;
     }
 
+    public FEInstruction copy() {
+        return new FEInstruction(id, new LinkedHashMap<>(parameters));
+    }
+
     public String getId() {
         return id;
     }
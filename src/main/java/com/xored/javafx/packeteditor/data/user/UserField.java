@@ -30,6 +30,12 @@ public class UserField {
         }
     }
 
+    public UserField copy() {
+        UserField res = new UserField(id);
+        res.value = value;
+        return res;
+    }
+
     public boolean isSet() { return value != null; }
     public JsonElement getValue() {
         return value;
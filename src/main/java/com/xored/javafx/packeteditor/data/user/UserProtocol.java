@@ -23,6 +23,15 @@ public class UserProtocol {
         this.meta = meta;
         this.path.addAll(path);
     }
+    /** copies values, metadata is shared */
+    public UserProtocol copy() {
+        UserProtocol res = new UserProtocol(meta, path);
+        fieldMap.values().forEach(field -> res.addField(field.copy()));
+        fieldInstructions.forEach((fieldId, instruction) -> res.fieldInstructions.put(fieldId, instruction.copy()));
+        res.collapsed = collapsed;
+        return res;
+    }
+
     public void addField(UserField field) {
         fieldMap.put(field.getId(), field);
     }
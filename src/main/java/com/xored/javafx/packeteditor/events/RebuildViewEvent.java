@@ -1,3 +1,29 @@
 package com.xored.javafx.packeteditor.events;
 
-public class RebuildViewEvent {}
+import com.xored.javafx.packeteditor.data.combined.CombinedModelChanges;
+
+public class RebuildViewEvent {
+    private CombinedModelChanges changes;
+
+    private boolean fieldEngineChanged;
+
+    /** requests full rebuild of all views */
+    public RebuildViewEvent() {
+        this(CombinedModelChanges.full(), true);
+    }
+
+    public RebuildViewEvent(CombinedModelChanges changes, boolean fieldEngineChanged) {
+        this.changes = changes;
+        this.fieldEngineChanged = fieldEngineChanged;
+    }
+
+    /** changes of the combined model. views may update only changed layers and fields */
+    public CombinedModelChanges getChanges() {
+        return changes;
+    }
+
+    /** instructions, parameters or field engine result were changed */
+    public boolean isFieldEngineChanged() {
+        return fieldEngineChanged;
+    }
+}
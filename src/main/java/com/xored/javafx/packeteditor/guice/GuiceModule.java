@@ -21,8 +21,6 @@ import javafx.fxml.FXMLLoader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.IOException;
-import java.util.Properties;
 import java.util.ResourceBundle;
 
 public class GuiceModule extends AbstractModule {
@@ -54,6 +52,7 @@ public class GuiceModule extends AbstractModule {
         bind(MenuControllerEngine.class).in(Singleton.class);
         bind(FieldEditorController.class).in(Singleton.class);
         bind(FieldEngineController.class).in(Singleton.class);
+        bind(CaptureBrowserController.class).in(Singleton.class);
         bind(FieldEditorView.class).in(Singleton.class);
         bind(FieldEngineView.class).in(Singleton.class);
         bind(AppController.class).in(Singleton.class);
@@ -63,16 +62,6 @@ public class GuiceModule extends AbstractModule {
                 .annotatedWith(Names.named("resources"))
                 .toInstance(ResourceBundle.getBundle(TRexPacketCraftingTool.class.getName()));
         
-        Names.bindProperties(binder(), loadProperties());
-    }
-
-    private Properties loadProperties() {
-        Properties properties = new Properties();
-        try {
-            properties.load(ScapyServerClient.class.getResourceAsStream("scapy_config.properties"));
-        } catch (IOException e) {
-            logger.error("Unable to load config file. Due to: {}", e);
-        }
-        return properties;
+        Names.bindProperties(binder(), HeadlessModule.loadProperties());
     }
 }
@@ -0,0 +1,60 @@
+package com.xored.javafx.packeteditor.guice;
+
+import com.google.common.eventbus.EventBus;
+import com.google.inject.AbstractModule;
+import com.google.inject.Singleton;
+import com.google.inject.name.Names;
+import com.xored.javafx.packeteditor.scapy.ScapyServerClient;
+import com.xored.javafx.packeteditor.service.ConfigurationService;
+import com.xored.javafx.packeteditor.service.IMetadataService;
+import com.xored.javafx.packeteditor.service.MetadataService;
+import com.xored.javafx.packeteditor.service.PacketDataService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Properties;
+
+/**
+ * Binds scapy services without any JavaFX classes, for command line tools.
+ * Each injector has its own scapy connection, metadata can be shared between injectors connected to the same server.
+ */
+public class HeadlessModule extends AbstractModule {
+    public static Logger logger = LoggerFactory.getLogger(HeadlessModule.class);
+
+    private final IMetadataService metadataService;
+
+    public HeadlessModule() {
+        this(null);
+    }
+
+    /** @param metadataService already loaded metadata or null to load it from the server on connect */
+    public HeadlessModule(IMetadataService metadataService) {
+        super();
+        this.metadataService = metadataService;
+    }
+
+    @Override
+    protected void configure() {
+        bind(ConfigurationService.class).in(Singleton.class);
+        bind(ScapyServerClient.class).in(Singleton.class);
+        bind(PacketDataService.class).in(Singleton.class);
+        bind(EventBus.class).in(Singleton.class);
+        if (metadataService != null) {
+            bind(IMetadataService.class).toInstance(metadataService);
+        } else {
+            bind(IMetadataService.class).to(MetadataService.class).in(Singleton.class);
+        }
+        Names.bindProperties(binder(), loadProperties());
+    }
+
+    static Properties loadProperties() {
+        Properties properties = new Properties();
+        try {
+            properties.load(ScapyServerClient.class.getResourceAsStream("scapy_config.properties"));
+        } catch (IOException e) {
+            logger.error("Unable to load config file. Due to: {}", e);
+        }
+        return properties;
+    }
+}
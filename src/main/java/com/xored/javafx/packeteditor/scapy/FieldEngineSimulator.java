@@ -0,0 +1,232 @@
+package com.xored.javafx.packeteditor.scapy;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Runs the TRex field engine program of a packet locally, producing the packets TRex would emit.
+ * Supported instructions: flow_var (inc, dec, random), write_flow_var, fix_checksum_ipv4 and trim_pkt_size.
+ * The program is compiled once, variants are generated into a reusable buffer without allocations.
+ * Random values are reproducible for the seed, but differ from the ones generated by TRex.
+ */
+public class FieldEngineSimulator {
+
+    /** receives a generated packet. the buffer is reused for the next variant, so it should be copied to be kept */
+    public interface VariantConsumer {
+        void accept(int index, byte[] packet, int length);
+    }
+
+    private interface Instruction {
+        /** returns new packet length */
+        int run(byte[] pkt, int length, long[] vars, boolean first);
+    }
+
+    private final byte[] template;
+    private final Instruction[] program;
+    private final long[] initialVars;
+    private final long seed;
+    /** recreated for each generate, so the same seed gives the same packets */
+    private SplittableRandom random;
+
+    public FieldEngineSimulator(byte[] template, JsonElement vm, long seed) {
+        this.template = template.clone();
+        this.seed = seed;
+        Map<String, Integer> varIndex = new HashMap<>();
+        List<Integer> varSizes = new ArrayList<>();
+        List<Long> inits = new ArrayList<>();
+        List<Instruction> instructions = new ArrayList<>();
+        for (JsonElement element : getInstructions(vm)) {
+            JsonObject instruction = element.getAsJsonObject();
+            String type = instruction.get("type").getAsString();
+            switch (type) {
+                case "flow_var": {
+                    int size = instruction.get("size").getAsInt();
+                    if (size != 1 && size != 2 && size != 4 && size != 8) {
+                        throw new IllegalArgumentException("Unsupported flow_var size: " + size);
+                    }
+                    if (instruction.has("value_list")) {
+                        throw new IllegalArgumentException("flow_var with value_list is not supported");
+                    }
+                    String name = instruction.get("name").getAsString();
+                    long min = getLong(instruction, "min_value", 0);
+                    long max = getLong(instruction, "max_value", mask(size));
+                    long init = getLong(instruction, "init_value", min);
+                    long step = getLong(instruction, "step", 1);
+                    int idx = varSizes.size();
+                    varIndex.put(name, idx);
+                    varSizes.add(size);
+                    inits.add(init);
+                    instructions.add(flowVar(idx, instruction.get("op").getAsString(), min, max, step));
+                    break;
+                }
+                case "write_flow_var": {
+                    String name = instruction.get("name").getAsString();
+                    int idx = getVar(varIndex, name);
+                    int offset = instruction.get("pkt_offset").getAsInt();
+                    int size = varSizes.get(idx);
+                    if (offset < 0 || offset + size > template.length) {
+                        throw new IllegalArgumentException("write_flow_var " + name + " is out of packet: " + offset);
+                    }
+                    long add = getLong(instruction, "add_value", 0);
+                    boolean bigEndian = !instruction.has("is_big_endian") || instruction.get("is_big_endian").getAsBoolean();
+                    instructions.add((pkt, length, vars, first) -> {
+                        write(pkt, offset, size, vars[idx] + add, bigEndian);
+                        return length;
+                    });
+                    break;
+                }
+                case "fix_checksum_ipv4": {
+                    int offset = instruction.get("pkt_offset").getAsInt();
+                    if (offset < 0 || offset + 20 > template.length) {
+                        throw new IllegalArgumentException("fix_checksum_ipv4 is out of packet: " + offset);
+                    }
+                    instructions.add((pkt, length, vars, first) -> {
+                        fixIpv4Checksum(pkt, offset);
+                        return length;
+                    });
+                    break;
+                }
+                case "trim_pkt_size": {
+                    int idx = getVar(varIndex, instruction.get("name").getAsString());
+                    int maxLength = template.length;
+                    instructions.add((pkt, length, vars, first) -> Long.compareUnsigned(vars[idx], maxLength) > 0 ? maxLength : (int) vars[idx]);
+                    break;
+                }
+                default:
+                    throw new IllegalArgumentException("Unsupported field engine instruction: " + type);
+            }
+        }
+        program = instructions.toArray(new Instruction[instructions.size()]);
+        initialVars = inits.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    /** simulator of the packet field engine. throws IllegalArgumentException if the program is not supported */
+    public static FieldEngineSimulator create(PacketData pkt, long seed) {
+        JsonElement vm = pkt.field_engine != null ? pkt.field_engine.get("instructions") : null;
+        return new FieldEngineSimulator(pkt.getPacketBytes(), vm, seed);
+    }
+
+    /** generates first count packets */
+    public void generate(int count, VariantConsumer consumer) {
+        byte[] pkt = new byte[template.length];
+        long[] vars = initialVars.clone();
+        random = new SplittableRandom(seed);
+        for (int i = 0; i < count; i++) {
+            System.arraycopy(template, 0, pkt, 0, template.length);
+            int length = template.length;
+            for (Instruction instruction : program) {
+                length = instruction.run(pkt, length, vars, i == 0);
+            }
+            consumer.accept(i, pkt, length);
+        }
+    }
+
+    /** returns copies of the first count packets */
+    public List<byte[]> generate(int count) {
+        List<byte[]> res = new ArrayList<>(count);
+        generate(count, (index, packet, length) -> res.add(Arrays.copyOf(packet, length)));
+        return res;
+    }
+
+    /** program is either {"instructions": [...]} of TRex stream vm or the instructions array */
+    private static JsonArray getInstructions(JsonElement vm) {
+        if (vm == null || vm.isJsonNull()) {
+            return new JsonArray();
+        }
+        if (vm.isJsonArray()) {
+            return vm.getAsJsonArray();
+        }
+        JsonElement instructions = vm.getAsJsonObject().get("instructions");
+        return instructions != null && instructions.isJsonArray() ? instructions.getAsJsonArray() : new JsonArray();
+    }
+
+    private static int getVar(Map<String, Integer> varIndex, String name) {
+        Integer idx = varIndex.get(name);
+        if (idx == null) {
+            throw new IllegalArgumentException("Unknown flow variable: " + name);
+        }
+        return idx;
+    }
+
+    private static long getLong(JsonObject instruction, String name, long defaultValue) {
+        JsonElement value = instruction.get(name);
+        return value != null && !value.isJsonNull() ? value.getAsBigInteger().longValue() : defaultValue;
+    }
+
+    private static long mask(int size) {
+        return size == 8 ? -1L : (1L << (size * 8)) - 1;
+    }
+
+    /**
+     * values are kept in [min, max] as unsigned numbers. the first packet gets init value, like in TRex.
+     * range is 0 for the full 64-bit range
+     */
+    private Instruction flowVar(int idx, String op, long min, long max, long step) {
+        long range = max - min + 1;
+        long s = range != 0 ? Long.remainderUnsigned(step, range) : step;
+        switch (op) {
+            case "inc":
+                return (pkt, length, vars, first) -> {
+                    if (!first) {
+                        long offset = vars[idx] - min;
+                        long next = offset + s;
+                        if (range != 0 && (Long.compareUnsigned(next, range) >= 0 || Long.compareUnsigned(next, offset) < 0)) {
+                            next -= range;
+                        }
+                        vars[idx] = min + next;
+                    }
+                    return length;
+                };
+            case "dec":
+                return (pkt, length, vars, first) -> {
+                    if (!first) {
+                        long offset = vars[idx] - min;
+                        long next = offset - s;
+                        if (range != 0 && Long.compareUnsigned(offset, s) < 0) {
+                            next += range;
+                        }
+                        vars[idx] = min + next;
+                    }
+                    return length;
+                };
+            case "random":
+                return (pkt, length, vars, first) -> {
+                    long value = random.nextLong();
+                    vars[idx] = min + (range != 0 ? Long.remainderUnsigned(value, range) : value);
+                    return length;
+                };
+            default:
+                throw new IllegalArgumentException("Unsupported flow_var op: " + op);
+        }
+    }
+
+    static void write(byte[] pkt, int offset, int size, long value, boolean bigEndian) {
+        for (int i = 0; i < size; i++) {
+            pkt[bigEndian ? offset + size - 1 - i : offset + i] = (byte) (value >>> (8 * i));
+        }
+    }
+
+    static void fixIpv4Checksum(byte[] pkt, int offset) {
+        int headerLength = Math.min((pkt[offset] & 0x0f) * 4, pkt.length - offset);
+        pkt[offset + 10] = 0;
+        pkt[offset + 11] = 0;
+        int sum = 0;
+        for (int i = 0; i + 1 < headerLength; i += 2) {
+            sum += LocalDissector.u16(pkt, offset + i);
+        }
+        while ((sum >> 16) != 0) {
+            sum = (sum & 0xffff) + (sum >> 16);
+        }
+        sum = ~sum & 0xffff;
+        pkt[offset + 10] = (byte) (sum >> 8);
+        pkt[offset + 11] = (byte) sum;
+    }
+}
@@ -0,0 +1,76 @@
+package com.xored.javafx.packeteditor.scapy;
+
+import java.util.Arrays;
+
+/**
+ * Log-linear histogram of non-negative values, like HdrHistogram with 2 significant digits.
+ * Each power of two is split into SUB_BUCKETS linear buckets, so the relative error of a percentile is below 1/SUB_BUCKETS.
+ * Not thread-safe.
+ */
+class LatencyHistogram {
+    static final int SUB_BUCKET_BITS = 6;
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    /** values below 2^(MAX_SHIFT + SUB_BUCKET_BITS + 1) are tracked, bigger ones are counted in the last bucket */
+    static final int MAX_SHIFT = 26;
+
+    private final long[] counts = new long[(MAX_SHIFT + 2) * SUB_BUCKETS];
+    private long totalCount;
+    private long max;
+
+    void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts[Math.min(indexOf(value), counts.length - 1)]++;
+        totalCount++;
+        max = Math.max(max, value);
+    }
+
+    long getTotalCount() {
+        return totalCount;
+    }
+
+    long getMax() {
+        return max;
+    }
+
+    /** returns the highest value equivalent to the percentile [0, 100], or 0 if empty */
+    long getValueAtPercentile(double percentile) {
+        if (totalCount == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(percentile / 100.0 * totalCount));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                return Math.min(highestEquivalentValue(i), max);
+            }
+        }
+        return max;
+    }
+
+    void reset() {
+        Arrays.fill(counts, 0);
+        totalCount = 0;
+        max = 0;
+    }
+
+    /** values below SUB_BUCKETS are exact, each following power of two [2^k, 2^(k+1)) is split into SUB_BUCKETS buckets */
+    static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return shift * SUB_BUCKETS + (int) (value >> shift);
+    }
+
+    static long highestEquivalentValue(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long sub = index % SUB_BUCKETS + SUB_BUCKETS;
+        return ((sub + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,525 @@
+package com.xored.javafx.packeteditor.scapy;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableMap;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonPrimitive;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+
+import static com.xored.javafx.packeteditor.scapy.FieldValue.ObjectType.BYTES;
+import static com.xored.javafx.packeteditor.scapy.FieldValue.ObjectType.EXPRESSION;
+
+/**
+ * Dissects Ether, Dot1Q, IP, IPv6, TCP, UDP, ICMP and ARP packets without scapy_server.
+ * Produces the same PacketData as reconstruct_pkt: field offsets are relative to the protocol, bit fields have fractional length.
+ * Returns null for anything scapy would dissect differently: unknown ethertypes, IP options, fragments, extension headers,
+ * TCP/UDP payloads on port pairs the connected scapy_server has not dissected as Raw yet, reserved TCP bits, etc.
+ * The caller should fall back to scapy_server then and pass its result to learnUnboundPorts.
+ */
+public class LocalDissector {
+    /** max number of remembered port pairs */
+    static final int MAX_UNBOUND_FLOWS = 4096;
+
+    static final Map<Integer, String> ETHER_TYPES = ImmutableMap.of(0x0800, "IPv4", 0x0806, "ARP", 0x86dd, "IPv6");
+    static final Map<Integer, String> IP_PROTOS = ImmutableMap.of(1, "icmp", 6, "tcp", 17, "udp");
+    static final Map<Integer, String> IPV6_NH = ImmutableMap.of(6, "TCP", 17, "UDP");
+    static final Map<Integer, String> ICMP_TYPES = ImmutableMap.of(0, "echo-reply", 8, "echo-request");
+    static final Map<Integer, String> ARP_OPS = ImmutableMap.of(1, "who-has", 2, "is-at");
+
+    static final String[] IP_FLAGS = {"MF", "DF", "evil"};
+    static final String TCP_FLAGS = "FSRPAUEC";
+
+    static final int UNSUPPORTED = -1;
+
+    /**
+     * TCP/UDP port pairs scapy_server dissected as Raw.
+     * scapy binds application protocols to sport, dport or both and the bindings differ between versions,
+     * so a single port does not tell if a payload is Raw
+     */
+    private final Cache<Long, Boolean> unboundFlows = CacheBuilder.newBuilder()
+            .maximumSize(MAX_UNBOUND_FLOWS)
+            .build();
+
+    /** returns dissected packet or null if the packet is not fully covered */
+    public PacketData dissect(byte[] bytes) {
+        List<ProtocolData> layers = new ArrayList<>();
+        int end = dissectEther(bytes, layers);
+        if (end == UNSUPPORTED) {
+            return null;
+        }
+        if (end < bytes.length) {
+            layers.add(loadLayer("Padding", bytes, end, bytes.length));
+        }
+        PacketData pkt = new PacketData();
+        pkt.data = layers;
+        pkt.binary = Base64.getEncoder().encodeToString(bytes);
+        return pkt;
+    }
+
+    /** returns end of the dissected data, the rest is padding */
+    private int dissectEther(byte[] b, List<ProtocolData> layers) {
+        if (b.length < 14) {
+            return UNSUPPORTED;
+        }
+        int type = u16(b, 12);
+        if (type <= 1500) {
+            // 802.3 frame, scapy dissects it as Dot3
+            return UNSUPPORTED;
+        }
+        Layer ether = new Layer("Ether", 0);
+        ether.field("dst", mac(b, 0), 0, 6);
+        ether.field("src", mac(b, 6), 6, 6);
+        ether.field("type", type, enumHex(ETHER_TYPES, type), 12, 2);
+        layers.add(ether.protocol);
+        return dissectEtherPayload(b, 14, type, layers);
+    }
+
+    private int dissectEtherPayload(byte[] b, int off, int type, List<ProtocolData> layers) {
+        if (off == b.length) {
+            return off;
+        }
+        switch (type) {
+            case 0x8100:
+                return dissectDot1Q(b, off, layers);
+            case 0x0800:
+                return dissectIP(b, off, layers);
+            case 0x86dd:
+                return dissectIPv6(b, off, layers);
+            case 0x0806:
+                return dissectARP(b, off, layers);
+            default:
+                return UNSUPPORTED;
+        }
+    }
+
+    private int dissectDot1Q(byte[] b, int off, List<ProtocolData> layers) {
+        if (b.length - off < 4) {
+            return UNSUPPORTED;
+        }
+        int tci = u16(b, off);
+        int type = u16(b, off + 2);
+        if (type <= 1500) {
+            return UNSUPPORTED;
+        }
+        Layer dot1q = new Layer("Dot1Q", off);
+        dot1q.bitField("prio", tci >> 13, 0, 3);
+        dot1q.bitField("id", (tci >> 12) & 1, 3, 1);
+        dot1q.bitField("vlan", tci & 0xfff, 4, 12);
+        dot1q.field("type", type, enumHex(ETHER_TYPES, type), 2, 2);
+        layers.add(dot1q.protocol);
+        return dissectEtherPayload(b, off + 4, type, layers);
+    }
+
+    private int dissectIP(byte[] b, int off, List<ProtocolData> layers) {
+        if (b.length - off < 20) {
+            return UNSUPPORTED;
+        }
+        int version = u8(b, off) >> 4;
+        int ihl = u8(b, off) & 0xf;
+        int len = u16(b, off + 2);
+        int flags = u8(b, off + 6) >> 5;
+        int frag = u16(b, off + 6) & 0x1fff;
+        int proto = u8(b, off + 9);
+        if (version != 4 || ihl != 5 || len < 20 || len > b.length - off
+                || (flags & 1) != 0 || frag != 0 || !IP_PROTOS.containsKey(proto)) {
+            return UNSUPPORTED;
+        }
+        Layer ip = new Layer("IP", off);
+        ip.bitField("version", version, 0, 4);
+        ip.bitField("ihl", ihl, 4, 4);
+        ip.field("tos", u8(b, off + 1), hex(u8(b, off + 1)), 1, 1);
+        ip.field("len", len, 2, 2);
+        ip.field("id", u16(b, off + 4), 4, 2);
+        ip.bitField("flags", flags, ipFlags(flags), 48, 3);
+        ip.bitField("frag", frag, 51, 13);
+        ip.field("ttl", u8(b, off + 8), 8, 1);
+        ip.field("proto", proto, IP_PROTOS.get(proto), 9, 1);
+        ip.field("chksum", u16(b, off + 10), hex(u16(b, off + 10)), 10, 2);
+        ip.field("src", ipv4(b, off + 12), 12, 4);
+        ip.field("dst", ipv4(b, off + 16), 16, 4);
+        ip.expressionField("options", "[]", 20, 0);
+        layers.add(ip.protocol);
+        return dissectTransport(b, off + 20, off + len, proto, layers);
+    }
+
+    private int dissectIPv6(byte[] b, int off, List<ProtocolData> layers) {
+        if (b.length - off < 40) {
+            return UNSUPPORTED;
+        }
+        long head = u32(b, off);
+        int plen = u16(b, off + 4);
+        int nh = u8(b, off + 6);
+        if (head >>> 28 != 6 || plen > b.length - off - 40 || !IPV6_NH.containsKey(nh)) {
+            return UNSUPPORTED;
+        }
+        Layer ipv6 = new Layer("IPv6", off);
+        ipv6.bitField("version", (int) (head >>> 28), 0, 4);
+        ipv6.bitField("tc", (int) (head >>> 20) & 0xff, 4, 8);
+        ipv6.bitField("fl", (int) head & 0xfffff, 12, 20);
+        ipv6.field("plen", plen, 4, 2);
+        ipv6.field("nh", nh, IPV6_NH.get(nh), 6, 1);
+        ipv6.field("hlim", u8(b, off + 7), 7, 1);
+        ipv6.field("src", ipv6(b, off + 8), 8, 16);
+        ipv6.field("dst", ipv6(b, off + 24), 24, 16);
+        layers.add(ipv6.protocol);
+        return dissectTransport(b, off + 40, off + 40 + plen, nh, layers);
+    }
+
+    private int dissectTransport(byte[] b, int off, int end, int proto, List<ProtocolData> layers) {
+        if (off == end) {
+            return end;
+        }
+        switch (proto) {
+            case 6:
+                return dissectTCP(b, off, end, layers);
+            case 17:
+                return dissectUDP(b, off, end, layers);
+            case 1:
+                return dissectICMP(b, off, end, layers);
+            default:
+                return UNSUPPORTED;
+        }
+    }
+
+    private int dissectTCP(byte[] b, int off, int end, List<ProtocolData> layers) {
+        if (end - off < 20) {
+            return UNSUPPORTED;
+        }
+        int sport = u16(b, off);
+        int dport = u16(b, off + 2);
+        int dataofs = u8(b, off + 12) >> 4;
+        int reserved = u8(b, off + 12) & 0xf;
+        int flags = u8(b, off + 13);
+        int hdrLen = dataofs * 4;
+        // reserved bits are a part of flags in newer scapy versions
+        if (dataofs < 5 || hdrLen > end - off || reserved != 0) {
+            return UNSUPPORTED;
+        }
+        String options = tcpOptions(b, off + 20, off + hdrLen);
+        if (options == null || !isRawPayload("TCP", sport, dport, end - off - hdrLen)) {
+            return UNSUPPORTED;
+        }
+        Layer tcp = new Layer("TCP", off);
+        tcp.field("sport", sport, 0, 2);
+        tcp.field("dport", dport, 2, 2);
+        tcp.field("seq", u32(b, off + 4), 4, 4);
+        tcp.field("ack", u32(b, off + 8), 8, 4);
+        tcp.bitField("dataofs", dataofs, 96, 4);
+        tcp.bitField("reserved", reserved, 100, 4);
+        tcp.bitField("flags", flags, tcpFlags(flags), 104, 8);
+        tcp.field("window", u16(b, off + 14), 14, 2);
+        tcp.field("chksum", u16(b, off + 16), hex(u16(b, off + 16)), 16, 2);
+        tcp.field("urgptr", u16(b, off + 18), 18, 2);
+        tcp.expressionField("options", options, 20, hdrLen - 20);
+        layers.add(tcp.protocol);
+        return dissectRaw(b, off + hdrLen, end, layers);
+    }
+
+    private int dissectUDP(byte[] b, int off, int end, List<ProtocolData> layers) {
+        if (end - off < 8) {
+            return UNSUPPORTED;
+        }
+        int sport = u16(b, off);
+        int dport = u16(b, off + 2);
+        int len = u16(b, off + 4);
+        if (len != end - off || !isRawPayload("UDP", sport, dport, end - off - 8)) {
+            return UNSUPPORTED;
+        }
+        Layer udp = new Layer("UDP", off);
+        udp.field("sport", sport, 0, 2);
+        udp.field("dport", dport, 2, 2);
+        udp.field("len", len, 4, 2);
+        udp.field("chksum", u16(b, off + 6), hex(u16(b, off + 6)), 6, 2);
+        layers.add(udp.protocol);
+        return dissectRaw(b, off + 8, end, layers);
+    }
+
+    private int dissectICMP(byte[] b, int off, int end, List<ProtocolData> layers) {
+        if (end - off < 8) {
+            return UNSUPPORTED;
+        }
+        int type = u8(b, off);
+        if (!ICMP_TYPES.containsKey(type)) {
+            // other types carry conditional fields or quoted packets
+            return UNSUPPORTED;
+        }
+        Layer icmp = new Layer("ICMP", off);
+        icmp.field("type", type, ICMP_TYPES.get(type), 0, 1);
+        icmp.field("code", u8(b, off + 1), 1, 1);
+        icmp.field("chksum", u16(b, off + 2), hex(u16(b, off + 2)), 2, 2);
+        icmp.field("id", u16(b, off + 4), hex(u16(b, off + 4)), 4, 2);
+        icmp.field("seq", u16(b, off + 6), hex(u16(b, off + 6)), 6, 2);
+        layers.add(icmp.protocol);
+        return dissectRaw(b, off + 8, end, layers);
+    }
+
+    private int dissectARP(byte[] b, int off, List<ProtocolData> layers) {
+        if (b.length - off < 28) {
+            return UNSUPPORTED;
+        }
+        int hwtype = u16(b, off);
+        int ptype = u16(b, off + 2);
+        int op = u16(b, off + 6);
+        if (hwtype != 1 || ptype != 0x0800 || u8(b, off + 4) != 6 || u8(b, off + 5) != 4) {
+            return UNSUPPORTED;
+        }
+        Layer arp = new Layer("ARP", off);
+        arp.field("hwtype", hwtype, hex(hwtype), 0, 2);
+        arp.field("ptype", ptype, enumHex(ETHER_TYPES, ptype), 2, 2);
+        arp.field("hwlen", 6, 4, 1);
+        arp.field("plen", 4, 5, 1);
+        arp.field("op", op, ARP_OPS.getOrDefault(op, String.valueOf(op)), 6, 2);
+        arp.field("hwsrc", mac(b, off + 8), 8, 6);
+        arp.field("psrc", ipv4(b, off + 14), 14, 4);
+        arp.field("hwdst", mac(b, off + 18), 18, 6);
+        arp.field("pdst", ipv4(b, off + 24), 24, 4);
+        layers.add(arp.protocol);
+        // the rest is padding
+        return off + 28;
+    }
+
+    private int dissectRaw(byte[] b, int off, int end, List<ProtocolData> layers) {
+        if (off < end) {
+            layers.add(loadLayer("Raw", b, off, end));
+        }
+        return end;
+    }
+
+    private static ProtocolData loadLayer(String id, byte[] b, int off, int end) {
+        byte[] load = Arrays.copyOfRange(b, off, end);
+        Layer layer = new Layer(id, off);
+        layer.add("load", FieldValue.create(BYTES, "base64", Base64.getEncoder().encodeToString(load)), pythonRepr(load), 0, load.length);
+        return layer.protocol;
+    }
+
+    /** true if scapy would not dissect the payload as an application protocol */
+    boolean isRawPayload(String transport, int sport, int dport, int payloadLength) {
+        return payloadLength == 0 || unboundFlows.getIfPresent(flowKey(transport, sport, dport)) != null;
+    }
+
+    /** remembers port pairs of TCP/UDP layers followed by Raw in a packet dissected by scapy_server */
+    public void learnUnboundPorts(PacketData pkt) {
+        List<ProtocolData> protocols = pkt.getProtocols();
+        for (int i = 0; i + 1 < protocols.size(); i++) {
+            ProtocolData protocol = protocols.get(i);
+            if (!("TCP".equals(protocol.id) || "UDP".equals(protocol.id)) || !"Raw".equals(protocols.get(i + 1).id)) {
+                continue;
+            }
+            FieldData sport = protocol.getFieldById("sport");
+            FieldData dport = protocol.getFieldById("dport");
+            if (sport != null && dport != null && sport.isPrimitive() && dport.isPrimitive()) {
+                unboundFlows.put(flowKey(protocol.id, sport.getIntValue(), dport.getIntValue()), Boolean.TRUE);
+            }
+        }
+    }
+
+    /** forgets learned port pairs, the next server may bind other ports */
+    public void clearUnboundPorts() {
+        unboundFlows.invalidateAll();
+    }
+
+    private static long flowKey(String transport, int sport, int dport) {
+        return ("TCP".equals(transport) ? 1L << 32 : 0) | (sport & 0xffffL) << 16 | (dport & 0xffff);
+    }
+
+    /** returns python representation of TCP options or null if there are options scapy shows differently */
+    static String tcpOptions(byte[] b, int off, int end) {
+        List<String> options = new ArrayList<>();
+        while (off < end) {
+            int kind = u8(b, off);
+            if (kind == 0) {
+                // scapy stops at EOL
+                options.add("('EOL', None)");
+                break;
+            }
+            if (kind == 1) {
+                options.add("('NOP', None)");
+                off++;
+                continue;
+            }
+            if (end - off < 2) {
+                return null;
+            }
+            int len = u8(b, off + 1);
+            if (len < 2 || len > end - off) {
+                return null;
+            }
+            if (kind == 2 && len == 4) {
+                options.add("('MSS', " + u16(b, off + 2) + ")");
+            } else if (kind == 3 && len == 3) {
+                options.add("('WScale', " + u8(b, off + 2) + ")");
+            } else if (kind == 4 && len == 2) {
+                options.add("('SAckOK', '')");
+            } else if (kind == 8 && len == 10) {
+                options.add("('Timestamp', (" + u32(b, off + 2) + ", " + u32(b, off + 6) + "))");
+            } else {
+                return null;
+            }
+            off += len;
+        }
+        return "[" + String.join(", ", options) + "]";
+    }
+
+    static String ipFlags(int flags) {
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < IP_FLAGS.length; i++) {
+            if ((flags & (1 << i)) != 0) {
+                names.add(IP_FLAGS[i]);
+            }
+        }
+        return String.join("+", names);
+    }
+
+    static String tcpFlags(int flags) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < TCP_FLAGS.length(); i++) {
+            if ((flags & (1 << i)) != 0) {
+                sb.append(TCP_FLAGS.charAt(i));
+            }
+        }
+        return sb.toString();
+    }
+
+    static String enumHex(Map<Integer, String> names, int value) {
+        return names.getOrDefault(value, hex(value));
+    }
+
+    static String hex(int value) {
+        return "0x" + Integer.toHexString(value);
+    }
+
+    static String mac(byte[] b, int off) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 6; i++) {
+            if (i > 0) {
+                sb.append(':');
+            }
+            sb.append(Character.forDigit(u8(b, off + i) >> 4, 16)).append(Character.forDigit(u8(b, off + i) & 0xf, 16));
+        }
+        return sb.toString();
+    }
+
+    static String ipv4(byte[] b, int off) {
+        return u8(b, off) + "." + u8(b, off + 1) + "." + u8(b, off + 2) + "." + u8(b, off + 3);
+    }
+
+    /** formats IPv6 address as inet_ntop does: the longest run of two or more zero groups is replaced with :: */
+    static String ipv6(byte[] b, int off) {
+        int[] groups = new int[8];
+        for (int i = 0; i < 8; i++) {
+            groups[i] = u16(b, off + i * 2);
+        }
+        int bestStart = -1;
+        int bestLen = 0;
+        for (int i = 0; i < 8; ) {
+            int j = i;
+            while (j < 8 && groups[j] == 0) {
+                j++;
+            }
+            if (j - i > bestLen && j - i >= 2) {
+                bestStart = i;
+                bestLen = j - i;
+            }
+            i = j > i ? j : i + 1;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 8; i++) {
+            if (i == bestStart) {
+                sb.append("::");
+                i += bestLen - 1;
+                continue;
+            }
+            if (sb.length() > 0 && sb.charAt(sb.length() - 1) != ':') {
+                sb.append(':');
+            }
+            sb.append(Integer.toHexString(groups[i]));
+        }
+        return sb.toString();
+    }
+
+    static String pythonRepr(byte[] bytes) {
+        StringBuilder sb = new StringBuilder("'");
+        for (byte b : bytes) {
+            if (b == '\\' || b == '\'') {
+                sb.append('\\').append((char) b);
+            } else if (b == '\t') {
+                sb.append("\\t");
+            } else if (b == '\n') {
+                sb.append("\\n");
+            } else if (b == '\r') {
+                sb.append("\\r");
+            } else if (ScapyUtils.isPrintableChar(b)) {
+                sb.append((char) b);
+            } else {
+                sb.append(String.format("\\x%02x", b & 0xff));
+            }
+        }
+        return sb.append('\'').toString();
+    }
+
+    static int u8(byte[] b, int off) {
+        return b[off] & 0xff;
+    }
+
+    static int u16(byte[] b, int off) {
+        return (u8(b, off) << 8) | u8(b, off + 1);
+    }
+
+    static long u32(byte[] b, int off) {
+        return ((long) u16(b, off) << 16) | u16(b, off + 2);
+    }
+
+    /** collects fields of one protocol */
+    private static class Layer {
+        final ProtocolData protocol = new ProtocolData();
+
+        Layer(String id, int offset) {
+            protocol.id = id;
+            protocol.real_id = id;
+            protocol.valid_structure = true;
+            protocol.offset = offset;
+            protocol.fields = new ArrayList<>();
+        }
+
+        void add(String id, JsonElement value, String hvalue, Number offset, Number length) {
+            FieldData field = new FieldData();
+            field.id = id;
+            field.value = value;
+            field.hvalue = hvalue;
+            field.offset = offset;
+            field.length = length;
+            protocol.fields.add(field);
+        }
+
+        void field(String id, String value, int offset, int length) {
+            add(id, new JsonPrimitive(value), value, offset, length);
+        }
+
+        void field(String id, long value, int offset, int length) {
+            field(id, value, String.valueOf(value), offset, length);
+        }
+
+        void field(String id, long value, String hvalue, int offset, int length) {
+            add(id, new JsonPrimitive(value), hvalue, offset, length);
+        }
+
+        /** bit offset is relative to the protocol. scapy reports the offset of the first byte and the length in bytes */
+        void bitField(String id, int value, int bitOffset, int bits) {
+            bitField(id, value, String.valueOf(value), bitOffset, bits);
+        }
+
+        void bitField(String id, int value, String hvalue, int bitOffset, int bits) {
+            add(id, new JsonPrimitive(value), hvalue, bitOffset / 8, bits / 8.0);
+        }
+
+        void expressionField(String id, String expr, int offset, int length) {
+            add(id, FieldValue.create(EXPRESSION, "expr", expr), expr, offset, length);
+        }
+    }
+}
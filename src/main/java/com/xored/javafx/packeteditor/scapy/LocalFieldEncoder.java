@@ -0,0 +1,197 @@
+package com.xored.javafx.packeteditor.scapy;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonPrimitive;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntPredicate;
+import java.util.regex.Pattern;
+
+/**
+ * Writes a new value of a fixed-width header field directly to packet bytes.
+ * Checksums depending on the field are updated incrementally (RFC 1624), lengths never change since the field width is fixed.
+ * Only fields, which do not affect dissection of the packet, are supported: ports, addresses, ttl and so on.
+ */
+public class LocalFieldEncoder {
+    static final Pattern MAC = Pattern.compile("\\s*([0-9a-fA-F]{1,2}[:-]){5}[0-9a-fA-F]{1,2}\\s*");
+    static final Pattern IPV4 = Pattern.compile("\\s*(\\d{1,3}\\.){3}\\d{1,3}\\s*");
+
+    enum Kind { INT, MAC, IPV4 }
+
+    /** field position relative to the protocol */
+    static class FieldSpec {
+        final Kind kind;
+        final int bitOffset;
+        final int bits;
+
+        FieldSpec(Kind kind, int bitOffset, int bits) {
+            this.kind = kind;
+            this.bitOffset = bitOffset;
+            this.bits = bits;
+        }
+    }
+
+    static final Map<String, FieldSpec> FIELDS = ImmutableMap.<String, FieldSpec>builder()
+            .put("Ether.dst", new FieldSpec(Kind.MAC, 0, 48))
+            .put("Ether.src", new FieldSpec(Kind.MAC, 48, 48))
+            .put("Dot1Q.prio", new FieldSpec(Kind.INT, 0, 3))
+            .put("Dot1Q.id", new FieldSpec(Kind.INT, 3, 1))
+            .put("Dot1Q.vlan", new FieldSpec(Kind.INT, 4, 12))
+            .put("IP.tos", new FieldSpec(Kind.INT, 8, 8))
+            .put("IP.id", new FieldSpec(Kind.INT, 32, 16))
+            .put("IP.ttl", new FieldSpec(Kind.INT, 64, 8))
+            .put("IP.chksum", new FieldSpec(Kind.INT, 80, 16))
+            .put("IP.src", new FieldSpec(Kind.IPV4, 96, 32))
+            .put("IP.dst", new FieldSpec(Kind.IPV4, 128, 32))
+            .put("IPv6.tc", new FieldSpec(Kind.INT, 4, 8))
+            .put("IPv6.fl", new FieldSpec(Kind.INT, 12, 20))
+            .put("IPv6.hlim", new FieldSpec(Kind.INT, 56, 8))
+            .put("TCP.sport", new FieldSpec(Kind.INT, 0, 16))
+            .put("TCP.dport", new FieldSpec(Kind.INT, 16, 16))
+            .put("TCP.seq", new FieldSpec(Kind.INT, 32, 32))
+            .put("TCP.ack", new FieldSpec(Kind.INT, 64, 32))
+            .put("TCP.window", new FieldSpec(Kind.INT, 112, 16))
+            .put("TCP.chksum", new FieldSpec(Kind.INT, 128, 16))
+            .put("TCP.urgptr", new FieldSpec(Kind.INT, 144, 16))
+            .put("UDP.sport", new FieldSpec(Kind.INT, 0, 16))
+            .put("UDP.dport", new FieldSpec(Kind.INT, 16, 16))
+            .put("UDP.chksum", new FieldSpec(Kind.INT, 48, 16))
+            .put("ICMP.code", new FieldSpec(Kind.INT, 8, 8))
+            .put("ICMP.chksum", new FieldSpec(Kind.INT, 16, 16))
+            .put("ICMP.id", new FieldSpec(Kind.INT, 32, 16))
+            .put("ICMP.seq", new FieldSpec(Kind.INT, 48, 16))
+            .put("ARP.op", new FieldSpec(Kind.INT, 48, 16))
+            .put("ARP.hwsrc", new FieldSpec(Kind.MAC, 64, 48))
+            .put("ARP.psrc", new FieldSpec(Kind.IPV4, 112, 32))
+            .put("ARP.hwdst", new FieldSpec(Kind.MAC, 144, 48))
+            .put("ARP.pdst", new FieldSpec(Kind.IPV4, 192, 32))
+            .build();
+
+    /** checksum offsets relative to the protocol */
+    static final Map<String, Integer> CHECKSUMS = ImmutableMap.of("IP", 10, "TCP", 16, "UDP", 6, "ICMP", 2);
+
+    /**
+     * returns packet bytes with the new field value or null if the field or value is not supported
+     * @param protocolIndex index of the protocol in pkt
+     * @param autoChecksum tells if checksum of the protocol with this index should be updated
+     */
+    public static byte[] encode(PacketData pkt, int protocolIndex, String fieldId, JsonElement value, IntPredicate autoChecksum) {
+        List<ProtocolData> protocols = pkt.getProtocols();
+        if (protocolIndex < 0 || protocolIndex >= protocols.size()) {
+            return null;
+        }
+        ProtocolData protocol = protocols.get(protocolIndex);
+        FieldSpec spec = FIELDS.get(protocol.id + "." + fieldId);
+        if (spec == null || protocol.offset == null || !(value instanceof JsonPrimitive)) {
+            return null;
+        }
+        long newValue = parseValue(spec, value.getAsString());
+        byte[] bytes = pkt.getPacketBytes();
+        int protoOffset = protocol.offset.intValue();
+        int start = protoOffset + spec.bitOffset / 8;
+        int end = protoOffset + (spec.bitOffset + spec.bits + 7) / 8;
+        // 16-bit words, covering the field
+        int wordsStart = start & ~1;
+        int wordsEnd = (end + 1) & ~1;
+        if (newValue < 0 || wordsEnd > bytes.length || protoOffset % 2 != 0) {
+            return null;
+        }
+        byte[] oldWords = Arrays.copyOfRange(bytes, wordsStart, wordsEnd);
+        writeBits(bytes, protoOffset * 8 + spec.bitOffset, spec.bits, newValue);
+
+        if (!fieldId.equals("chksum")) {
+            if (CHECKSUMS.containsKey(protocol.id) && autoChecksum.test(protocolIndex)) {
+                updateChecksum(bytes, protocol, protoOffset + CHECKSUMS.get(protocol.id), oldWords, wordsStart);
+            }
+            // addresses are a part of TCP/UDP pseudo header
+            boolean address = protocol.id.equals("IP") && (fieldId.equals("src") || fieldId.equals("dst"));
+            if (address && protocolIndex + 1 < protocols.size()) {
+                ProtocolData next = protocols.get(protocolIndex + 1);
+                if ((next.id.equals("TCP") || next.id.equals("UDP")) && autoChecksum.test(protocolIndex + 1)) {
+                    updateChecksum(bytes, next, next.offset.intValue() + CHECKSUMS.get(next.id), oldWords, wordsStart);
+                }
+            }
+        }
+        return bytes;
+    }
+
+    /** HC' = ~(~HC + ~m + m') for each changed word, RFC 1624 eqn. 3 */
+    static void updateChecksum(byte[] bytes, ProtocolData protocol, int checksumOffset, byte[] oldWords, int wordsStart) {
+        if (checksumOffset + 2 > bytes.length) {
+            return;
+        }
+        int checksum = LocalDissector.u16(bytes, checksumOffset);
+        boolean udp = protocol.id.equals("UDP");
+        if (udp && checksum == 0) {
+            // checksum is not used
+            return;
+        }
+        long sum = ~checksum & 0xffff;
+        for (int i = 0; i < oldWords.length; i += 2) {
+            int m = LocalDissector.u16(oldWords, i);
+            int m1 = LocalDissector.u16(bytes, wordsStart + i);
+            sum += (~m & 0xffff) + m1;
+        }
+        while ((sum >> 16) != 0) {
+            sum = (sum & 0xffff) + (sum >> 16);
+        }
+        int res = (int) ~sum & 0xffff;
+        if (udp && res == 0) {
+            res = 0xffff;
+        }
+        bytes[checksumOffset] = (byte) (res >> 8);
+        bytes[checksumOffset + 1] = (byte) res;
+    }
+
+    /** returns -1 if the value can not be parsed locally, for instance enum names */
+    static long parseValue(FieldSpec spec, String value) {
+        switch (spec.kind) {
+            case MAC:
+                if (!MAC.matcher(value).matches()) {
+                    return -1;
+                }
+                long mac = 0;
+                for (String part : value.trim().split("[:-]")) {
+                    mac = (mac << 8) | Integer.parseInt(part, 16);
+                }
+                return mac;
+            case IPV4:
+                if (!IPV4.matcher(value).matches()) {
+                    return -1;
+                }
+                long ip = 0;
+                for (String part : value.trim().split("\\.")) {
+                    int octet = Integer.parseInt(part);
+                    if (octet > 255) {
+                        return -1;
+                    }
+                    ip = (ip << 8) | octet;
+                }
+                return ip;
+            default:
+                String s = value.trim();
+                long res;
+                try {
+                    res = s.toLowerCase().startsWith("0x") ? Long.parseLong(s.substring(2), 16) : Long.parseLong(s);
+                } catch (NumberFormatException e) {
+                    return -1;
+                }
+                return res < (1L << spec.bits) ? res : -1;
+        }
+    }
+
+    static void writeBits(byte[] bytes, int bitOffset, int bits, long value) {
+        for (int i = 0; i < bits; i++) {
+            int bit = bitOffset + i;
+            int mask = 0x80 >> (bit % 8);
+            if ((value >> (bits - 1 - i) & 1) != 0) {
+                bytes[bit / 8] |= mask;
+            } else {
+                bytes[bit / 8] &= ~mask;
+            }
+        }
+    }
+}
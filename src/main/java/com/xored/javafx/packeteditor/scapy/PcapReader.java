@@ -0,0 +1,493 @@
+package com.xored.javafx.packeteditor.scapy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads pcap and pcapng files without scapy_server.
+ * The file is memory-mapped by segments, and the packet index is built lazily,
+ * so opening a large capture reads only its header. The index is sparse: it keeps the position of every
+ * CHECKPOINT_INTERVAL-th record, other records are found by walking record headers from the nearest checkpoint.
+ * Lengths and timestamps are read from the headers on demand, packet bytes are copied on demand.
+ */
+public class PcapReader implements Closeable {
+    static Logger logger = LoggerFactory.getLogger(PcapReader.class);
+
+    public static final int LINKTYPE_ETHERNET = 1;
+
+    static final int PCAP_MAGIC = 0xa1b2c3d4;
+    static final int PCAP_MAGIC_NS = 0xa1b23c4d;
+    static final int PCAP_HEADER_LENGTH = 24;
+    static final int PCAP_RECORD_HEADER_LENGTH = 16;
+
+    static final int PCAPNG_SECTION_HEADER = 0x0A0D0D0A;
+    static final int PCAPNG_BYTE_ORDER_MAGIC = 0x1A2B3C4D;
+    static final int PCAPNG_INTERFACE_DESCRIPTION = 1;
+    static final int PCAPNG_PACKET = 2;
+    static final int PCAPNG_SIMPLE_PACKET = 3;
+    static final int PCAPNG_ENHANCED_PACKET = 6;
+    static final int PCAPNG_OPTION_END = 0;
+    static final int PCAPNG_OPTION_TSRESOL = 9;
+
+    /** size of a mapped region. records crossing a segment border are copied piecewise */
+    static final long SEGMENT_SIZE = 64L * 1024 * 1024;
+
+    /** number of packets between index checkpoints */
+    static final int CHECKPOINT_INTERVAL = 1024;
+
+    /** indexed packet record */
+    public static class PacketRecord {
+        public final int index;
+        /** offset of packet data in the file */
+        public final long offset;
+        public final int capturedLength;
+        public final int originalLength;
+        public final long timestampNanos;
+        public final int linkType;
+
+        PacketRecord(int index, long offset, int capturedLength, int originalLength, long timestampNanos, int linkType) {
+            this.index = index;
+            this.offset = offset;
+            this.capturedLength = capturedLength;
+            this.originalLength = originalLength;
+            this.timestampNanos = timestampNanos;
+            this.linkType = linkType;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof PacketRecord && ((PacketRecord) o).index == index && ((PacketRecord) o).offset == offset;
+        }
+
+        @Override
+        public int hashCode() {
+            return index;
+        }
+    }
+
+    static class NgInterface {
+        final int linkType;
+        long unitsPerSecond = 1000000;
+
+        NgInterface(int linkType) {
+            this.linkType = linkType;
+        }
+    }
+
+    /** pcapng section: byte order and interfaces of its packets */
+    static class NgSection {
+        final ByteOrder order;
+        final List<NgInterface> interfaces = new ArrayList<>();
+
+        NgSection(ByteOrder order) {
+            this.order = order;
+        }
+    }
+
+    /** position of a record or block and the pcapng section it belongs to */
+    private static class Position {
+        long pos;
+        int section;
+        /** packet of the last read record, null if it was not a packet block */
+        PacketRecord record;
+
+        Position(long pos, int section) {
+            this.pos = pos;
+            this.section = section;
+        }
+
+        Position copy() {
+            return new Position(pos, section);
+        }
+    }
+
+    private final File file;
+    private final FileChannel channel;
+    private final long fileSize;
+    private final MappedByteBuffer[] segments;
+    private final boolean pcapNg;
+
+    /** classic pcap header fields */
+    private ByteOrder order;
+    private int pcapLinkType;
+    private boolean pcapNanos;
+    /** pcapng sections found so far */
+    private final List<NgSection> sections = new ArrayList<>();
+
+    /** position of the next record to index */
+    private final Position scanPosition;
+    private boolean scanComplete = false;
+
+    private int count = 0;
+    /** positions of records CHECKPOINT_INTERVAL * i */
+    private long[] checkpoints = new long[16];
+    private int[] checkpointSections = new int[16];
+
+    /** position after the last returned packet, makes sequential reading cheap */
+    private Position cursor;
+    private int cursorIndex;
+
+    private PcapReader(File file) throws IOException {
+        this.file = file;
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            fileSize = channel.size();
+            segments = new MappedByteBuffer[(int) ((fileSize + SEGMENT_SIZE - 1) / SEGMENT_SIZE)];
+            if (fileSize < 4) {
+                throw new IOException("Unsupported pcap format: " + file.getName());
+            }
+            int magic = readInt(0, ByteOrder.BIG_ENDIAN);
+            pcapNg = magic == PCAPNG_SECTION_HEADER;
+            if (pcapNg) {
+                if (readSectionHeader(0) == null) {
+                    throw new IOException("Unsupported pcapng format: " + file.getName());
+                }
+                // the section header is read again as the first block
+                scanPosition = new Position(0, -1);
+            } else {
+                readPcapHeader(magic);
+                scanPosition = new Position(PCAP_HEADER_LENGTH, 0);
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public static PcapReader open(File file) throws IOException {
+        return new PcapReader(file);
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public boolean isPcapNg() {
+        return pcapNg;
+    }
+
+    /** number of packets in the file. indexes the whole file */
+    public synchronized int getPacketCount() throws IOException {
+        while (!scanComplete) {
+            scanNext();
+        }
+        return count;
+    }
+
+    /** number of packets indexed so far */
+    public synchronized int getIndexedCount() {
+        return count;
+    }
+
+    public synchronized boolean isIndexComplete() {
+        return scanComplete;
+    }
+
+    /** returns packet record, indexing the file up to it. returns null if there are less packets in the file */
+    public synchronized PacketRecord getPacket(int index) throws IOException {
+        while (count <= index && !scanComplete) {
+            scanNext();
+        }
+        if (index < 0 || index >= count) {
+            return null;
+        }
+        int checkpoint = index / CHECKPOINT_INTERVAL;
+        Position position;
+        int i;
+        if (cursor != null && cursorIndex <= index && cursorIndex >= checkpoint * CHECKPOINT_INTERVAL) {
+            position = cursor;
+            i = cursorIndex;
+        } else {
+            position = new Position(checkpoints[checkpoint], checkpointSections[checkpoint]);
+            i = checkpoint * CHECKPOINT_INTERVAL;
+        }
+        while (true) {
+            if (!readRecord(position, i, false)) {
+                throw new IOException(file.getName() + " changed after indexing");
+            }
+            if (position.record != null) {
+                if (i == index) {
+                    cursor = position.copy();
+                    cursorIndex = index + 1;
+                    return position.record;
+                }
+                i++;
+            }
+        }
+    }
+
+    /** copies captured bytes of the packet */
+    public byte[] readPacketData(PacketRecord record) throws IOException {
+        byte[] res = new byte[record.capturedLength];
+        read(record.offset, res);
+        return res;
+    }
+
+    /** copies captured bytes of the packet. returns null if there are less packets in the file */
+    public byte[] readPacketData(int index) throws IOException {
+        PacketRecord record = getPacket(index);
+        return record != null ? readPacketData(record) : null;
+    }
+
+    /** closes the file. mapped segments stay valid until they are garbage collected */
+    @Override
+    public void close() throws IOException {
+        cursor = null;
+        Arrays.fill(segments, null);
+        channel.close();
+    }
+
+    private void readPcapHeader(int magic) throws IOException {
+        if (magic == PCAP_MAGIC || magic == PCAP_MAGIC_NS) {
+            order = ByteOrder.BIG_ENDIAN;
+        } else if (Integer.reverseBytes(magic) == PCAP_MAGIC || Integer.reverseBytes(magic) == PCAP_MAGIC_NS) {
+            order = ByteOrder.LITTLE_ENDIAN;
+        } else {
+            throw new IOException("Unsupported pcap format: " + file.getName());
+        }
+        if (fileSize < PCAP_HEADER_LENGTH) {
+            throw new IOException("Pcap header is truncated: " + file.getName());
+        }
+        pcapNanos = readInt(0, order) == PCAP_MAGIC_NS;
+        pcapLinkType = readInt(20, order);
+        if (pcapLinkType != LINKTYPE_ETHERNET) {
+            logger.warn("pcap link type {} is not Ethernet, packets may be decoded incorrectly", pcapLinkType);
+        }
+    }
+
+    /** reads section header block at pos, returns null if it is malformed */
+    private NgSection readSectionHeader(long pos) throws IOException {
+        if (pos + 12 > fileSize) {
+            return null;
+        }
+        int byteOrderMagic = readInt(pos + 8, ByteOrder.BIG_ENDIAN);
+        if (byteOrderMagic == PCAPNG_BYTE_ORDER_MAGIC) {
+            return new NgSection(ByteOrder.BIG_ENDIAN);
+        } else if (Integer.reverseBytes(byteOrderMagic) == PCAPNG_BYTE_ORDER_MAGIC) {
+            return new NgSection(ByteOrder.LITTLE_ENDIAN);
+        }
+        return null;
+    }
+
+    /** indexes the next packet */
+    private void scanNext() throws IOException {
+        while (true) {
+            long pos = scanPosition.pos;
+            int section = scanPosition.section;
+            if (!readRecord(scanPosition, count, true)) {
+                finishScan(pos);
+                return;
+            }
+            if (scanPosition.record != null) {
+                if (count % CHECKPOINT_INTERVAL == 0) {
+                    addCheckpoint(pos, section);
+                }
+                count++;
+                return;
+            }
+        }
+    }
+
+    /**
+     * reads the record or block at position and moves position after it.
+     * position.record is set to the packet of the record or null for other pcapng blocks.
+     * returns false at the end of the file or at a malformed record
+     * @param indexing tells that the block is read for the first time, so pcapng sections and interfaces are added
+     */
+    private boolean readRecord(Position position, int index, boolean indexing) throws IOException {
+        position.record = null;
+        return pcapNg ? readBlock(position, index, indexing) : readPcapRecord(position, index);
+    }
+
+    private boolean readPcapRecord(Position position, int index) throws IOException {
+        long pos = position.pos;
+        if (pos + PCAP_RECORD_HEADER_LENGTH > fileSize) {
+            return false;
+        }
+        long seconds = readInt(pos, order) & 0xFFFFFFFFL;
+        long fraction = readInt(pos + 4, order) & 0xFFFFFFFFL;
+        int capturedLength = readInt(pos + 8, order);
+        int originalLength = readInt(pos + 12, order);
+        long dataPos = pos + PCAP_RECORD_HEADER_LENGTH;
+        if (capturedLength < 0 || dataPos + capturedLength > fileSize) {
+            return false;
+        }
+        long nanos = seconds * 1000000000L + (pcapNanos ? fraction : fraction * 1000);
+        position.record = new PacketRecord(index, dataPos, capturedLength, originalLength, nanos, pcapLinkType);
+        position.pos = dataPos + capturedLength;
+        return true;
+    }
+
+    private boolean readBlock(Position position, int index, boolean indexing) throws IOException {
+        long pos = position.pos;
+        if (pos + 12 > fileSize) {
+            return false;
+        }
+        // section header type reads the same in both byte orders
+        boolean sectionHeader = readInt(pos, ByteOrder.BIG_ENDIAN) == PCAPNG_SECTION_HEADER;
+        if (sectionHeader) {
+            if (indexing) {
+                NgSection section = readSectionHeader(pos);
+                if (section == null) {
+                    return false;
+                }
+                sections.add(section);
+            }
+            position.section++;
+        }
+        NgSection section = sections.get(position.section);
+        ByteOrder order = section.order;
+        int type = sectionHeader ? PCAPNG_SECTION_HEADER : readInt(pos, order);
+        long blockLength = readInt(pos + 4, order) & 0xFFFFFFFFL;
+        if (blockLength < 12 || blockLength % 4 != 0 || pos + blockLength > fileSize) {
+            return false;
+        }
+        long body = pos + 8;
+        switch (type) {
+            case PCAPNG_INTERFACE_DESCRIPTION:
+                if (indexing) {
+                    section.interfaces.add(readInterface(body, pos + blockLength - 4, order));
+                }
+                break;
+            case PCAPNG_ENHANCED_PACKET:
+            case PCAPNG_PACKET: {
+                int interfaceId = type == PCAPNG_PACKET ? readShort(body, order) : readInt(body, order);
+                long ts = ((readInt(body + 4, order) & 0xFFFFFFFFL) << 32) | (readInt(body + 8, order) & 0xFFFFFFFFL);
+                int capturedLength = readInt(body + 12, order);
+                int originalLength = readInt(body + 16, order);
+                long dataPos = body + 20;
+                if (capturedLength < 0 || dataPos + capturedLength > pos + blockLength - 4) {
+                    return false;
+                }
+                NgInterface ngInterface = getInterface(section, interfaceId, indexing);
+                position.record = new PacketRecord(index, dataPos, capturedLength, originalLength,
+                        toNanos(ts, ngInterface.unitsPerSecond), ngInterface.linkType);
+                break;
+            }
+            case PCAPNG_SIMPLE_PACKET: {
+                int originalLength = readInt(body, order);
+                int capturedLength = (int) Math.min(originalLength & 0xFFFFFFFFL, blockLength - 16);
+                position.record = new PacketRecord(index, body + 4, capturedLength, originalLength, 0,
+                        getInterface(section, 0, indexing).linkType);
+                break;
+            }
+            default:
+                // statistics, name resolution and custom blocks are skipped
+        }
+        position.pos = pos + blockLength;
+        return true;
+    }
+
+    private NgInterface readInterface(long body, long end, ByteOrder order) throws IOException {
+        NgInterface res = new NgInterface(readShort(body, order));
+        long pos = body + 8;
+        while (pos + 4 <= end) {
+            int code = readShort(pos, order);
+            int length = readShort(pos + 2, order);
+            if (code == PCAPNG_OPTION_END) {
+                break;
+            }
+            if (code == PCAPNG_OPTION_TSRESOL && length >= 1) {
+                byte[] resolution = new byte[1];
+                read(pos + 4, resolution);
+                int exponent = resolution[0] & 0x7F;
+                if ((resolution[0] & 0x80) != 0) {
+                    res.unitsPerSecond = exponent < 63 ? 1L << exponent : Long.MAX_VALUE;
+                } else {
+                    res.unitsPerSecond = exponent < 19 ? (long) Math.pow(10, exponent) : Long.MAX_VALUE;
+                }
+            }
+            pos += 4 + ((length + 3) & ~3);
+        }
+        return res;
+    }
+
+    private static NgInterface getInterface(NgSection section, int interfaceId, boolean indexing) {
+        if (interfaceId >= 0 && interfaceId < section.interfaces.size()) {
+            return section.interfaces.get(interfaceId);
+        }
+        if (indexing) {
+            logger.warn("pcapng packet refers to unknown interface {}", interfaceId);
+        }
+        return new NgInterface(LINKTYPE_ETHERNET);
+    }
+
+    private static long toNanos(long ts, long unitsPerSecond) {
+        return ts / unitsPerSecond * 1000000000L + (ts % unitsPerSecond) * 1000000000L / unitsPerSecond;
+    }
+
+    private void finishScan(long pos) {
+        if (pos < fileSize) {
+            logger.warn("{} is truncated or malformed at offset {}, {} packets indexed", file.getName(), pos, count);
+        }
+        scanComplete = true;
+    }
+
+    private void addCheckpoint(long pos, int section) {
+        int checkpoint = count / CHECKPOINT_INTERVAL;
+        if (checkpoint == checkpoints.length) {
+            checkpoints = Arrays.copyOf(checkpoints, checkpoint * 2);
+            checkpointSections = Arrays.copyOf(checkpointSections, checkpoint * 2);
+        }
+        checkpoints[checkpoint] = pos;
+        checkpointSections[checkpoint] = section;
+    }
+
+    private synchronized MappedByteBuffer getSegment(int idx) throws IOException {
+        if (segments[idx] == null) {
+            long start = idx * SEGMENT_SIZE;
+            segments[idx] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(SEGMENT_SIZE, fileSize - start));
+        }
+        return segments[idx];
+    }
+
+    private void read(long pos, byte[] dst) throws IOException {
+        int done = 0;
+        while (done < dst.length) {
+            long p = pos + done;
+            int idx = (int) (p / SEGMENT_SIZE);
+            MappedByteBuffer segment = getSegment(idx);
+            int segmentOffset = (int) (p - idx * SEGMENT_SIZE);
+            int len = Math.min(dst.length - done, segment.capacity() - segmentOffset);
+            // duplicate keeps the shared buffer position intact for concurrent readers
+            ByteBuffer view = segment.duplicate();
+            view.position(segmentOffset);
+            view.get(dst, done, len);
+            done += len;
+        }
+    }
+
+    private int readInt(long pos, ByteOrder byteOrder) throws IOException {
+        int idx = (int) (pos / SEGMENT_SIZE);
+        int segmentOffset = (int) (pos - idx * SEGMENT_SIZE);
+        MappedByteBuffer segment = getSegment(idx);
+        int value;
+        if (segmentOffset + 4 <= segment.capacity()) {
+            value = segment.getInt(segmentOffset);
+        } else {
+            byte[] b = new byte[4];
+            read(pos, b);
+            value = ((b[0] & 0xFF) << 24) | ((b[1] & 0xFF) << 16) | ((b[2] & 0xFF) << 8) | (b[3] & 0xFF);
+        }
+        // mapped buffers are big-endian
+        return byteOrder == ByteOrder.BIG_ENDIAN ? value : Integer.reverseBytes(value);
+    }
+
+    private int readShort(long pos, ByteOrder byteOrder) throws IOException {
+        byte[] b = new byte[2];
+        read(pos, b);
+        return byteOrder == ByteOrder.BIG_ENDIAN ? ((b[0] & 0xFF) << 8) | (b[1] & 0xFF) : ((b[1] & 0xFF) << 8) | (b[0] & 0xFF);
+    }
+}
@@ -0,0 +1,228 @@
+package com.xored.javafx.packeteditor.scapy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes packets to a classic pcap file without scapy_server.
+ * Record headers are collected in a buffer, large packets are written with a gathering write without copying.
+ * A new file is written next to the target and moved over it on close, so an existing file is replaced
+ * only when it is not locked, e.g. by a memory mapping of PcapReader, and is never left truncated.
+ */
+public class PcapWriter implements Closeable {
+    static Logger logger = LoggerFactory.getLogger(PcapWriter.class);
+
+    public static final int SNAPLEN = 262144;
+
+    /** packets smaller than this are copied to the write buffer */
+    static final int COPY_THRESHOLD = 4096;
+    static final int BUFFER_SIZE = 64 * 1024;
+    /** larger record lengths mean a corrupted file rather than a partial record */
+    static final int MAX_RECORD_LENGTH = 16 * 1024 * 1024;
+
+    private final FileChannel channel;
+    /** file replaced on close, null when appending */
+    private final Path target;
+    private final Path tempFile;
+    private final ByteBuffer buffer;
+    /** format of the existing file when appending */
+    private final boolean nanos;
+    private int packetCount = 0;
+
+    private PcapWriter(FileChannel channel, Path target, Path tempFile, ByteOrder order, boolean nanos) {
+        this.channel = channel;
+        this.target = target;
+        this.tempFile = tempFile;
+        this.nanos = nanos;
+        buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(order);
+    }
+
+    /** creates a new file, the existing one is replaced on close */
+    public static PcapWriter create(File file, int linkType) throws IOException {
+        Path target = file.getAbsoluteFile().toPath();
+        Path tempFile = Files.createTempFile(target.getParent(), file.getName(), ".tmp");
+        FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        PcapWriter writer = new PcapWriter(channel, target, tempFile, ByteOrder.nativeOrder(), false);
+        writer.writeHeader(linkType);
+        return writer;
+    }
+
+    public static PcapWriter create(File file) throws IOException {
+        return create(file, PcapReader.LINKTYPE_ETHERNET);
+    }
+
+    public static PcapWriter append(File file) throws IOException {
+        return append(file, PcapReader.LINKTYPE_ETHERNET);
+    }
+
+    /**
+     * appends packets to the existing pcap file keeping its byte order and timestamp precision. creates the file if it is empty or does not exist.
+     * fails if the file has another link type. a partial record at the end, e.g. after an interrupted write, is cut off
+     */
+    public static PcapWriter append(File file, int linkType) throws IOException {
+        if (!file.exists() || file.length() == 0) {
+            return create(file, linkType);
+        }
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(PcapReader.PCAP_HEADER_LENGTH);
+            readFully(channel, header, 0, file);
+            int magic = header.getInt(0);
+            ByteOrder order;
+            if (magic == PcapReader.PCAP_MAGIC || magic == PcapReader.PCAP_MAGIC_NS) {
+                order = ByteOrder.BIG_ENDIAN;
+            } else if (Integer.reverseBytes(magic) == PcapReader.PCAP_MAGIC || Integer.reverseBytes(magic) == PcapReader.PCAP_MAGIC_NS) {
+                order = ByteOrder.LITTLE_ENDIAN;
+            } else {
+                throw new IOException("Only classic pcap files can be appended: " + file.getName());
+            }
+            header.order(order);
+            boolean nanos = header.getInt(0) == PcapReader.PCAP_MAGIC_NS;
+            int fileLinkType = header.getInt(20);
+            if (fileLinkType != linkType) {
+                throw new IOException("Link type " + fileLinkType + " of " + file.getName() + " differs from " + linkType);
+            }
+            long end = findEnd(channel, order, file);
+            if (end < channel.size()) {
+                logger.warn("cutting off {} bytes of partial record at the end of {}", channel.size() - end, file.getName());
+                channel.truncate(end);
+            }
+            channel.position(end);
+            return new PcapWriter(channel, null, null, order, nanos);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /** returns end of the last complete record */
+    private static long findEnd(FileChannel channel, ByteOrder order, File file) throws IOException {
+        ByteBuffer record = ByteBuffer.allocate(PcapReader.PCAP_RECORD_HEADER_LENGTH).order(order);
+        long size = channel.size();
+        long pos = PcapReader.PCAP_HEADER_LENGTH;
+        while (pos + PcapReader.PCAP_RECORD_HEADER_LENGTH <= size) {
+            readFully(channel, record, pos, file);
+            long inclLen = record.getInt(8) & 0xffffffffL;
+            if (inclLen > MAX_RECORD_LENGTH) {
+                throw new IOException("Pcap record at " + pos + " is corrupted: " + file.getName());
+            }
+            if (pos + PcapReader.PCAP_RECORD_HEADER_LENGTH + inclLen > size) {
+                break;
+            }
+            pos += PcapReader.PCAP_RECORD_HEADER_LENGTH + inclLen;
+        }
+        return pos;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position, File file) throws IOException {
+        buffer.clear();
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Pcap header is truncated: " + file.getName());
+            }
+        }
+    }
+
+    private void writeHeader(int linkType) throws IOException {
+        buffer.putInt(PcapReader.PCAP_MAGIC)
+                .putShort((short) 2)
+                .putShort((short) 4)
+                .putInt(0)
+                .putInt(0)
+                .putInt(SNAPLEN)
+                .putInt(linkType);
+    }
+
+    public void writePacket(byte[] data) throws IOException {
+        writePacket(data, System.currentTimeMillis() * 1000000L);
+    }
+
+    public void writePacket(byte[] data, long timestampNanos) throws IOException {
+        writePacket(data, data.length, timestampNanos);
+    }
+
+    /** writes packet record. originalLength may be greater than data length for truncated packets */
+    public void writePacket(byte[] data, int originalLength, long timestampNanos) throws IOException {
+        writePacket(data, 0, data.length, originalLength, timestampNanos);
+    }
+
+    /** writes length bytes of the buffer starting at offset. the buffer can be reused after the call */
+    public void writePacket(byte[] data, int offset, int length, long timestampNanos) throws IOException {
+        writePacket(data, offset, length, length, timestampNanos);
+    }
+
+    private void writePacket(byte[] data, int offset, int length, int originalLength, long timestampNanos) throws IOException {
+        if (buffer.remaining() < PcapReader.PCAP_RECORD_HEADER_LENGTH) {
+            flush();
+        }
+        long fraction = timestampNanos % 1000000000L;
+        buffer.putInt((int) (timestampNanos / 1000000000L))
+                .putInt((int) (nanos ? fraction : fraction / 1000))
+                .putInt(length)
+                .putInt(originalLength);
+        if (length < COPY_THRESHOLD) {
+            if (buffer.remaining() < length) {
+                flush();
+            }
+            buffer.put(data, offset, length);
+        } else {
+            buffer.flip();
+            ByteBuffer[] buffers = {buffer, ByteBuffer.wrap(data, offset, length)};
+            while (buffers[1].hasRemaining()) {
+                channel.write(buffers);
+            }
+            buffer.clear();
+        }
+        packetCount++;
+    }
+
+    public int getPacketCount() {
+        return packetCount;
+    }
+
+    public void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            try {
+                flush();
+            } finally {
+                channel.close();
+            }
+            if (tempFile != null) {
+                replaceTarget();
+            }
+        } finally {
+            if (tempFile != null) {
+                Files.deleteIfExists(tempFile);
+            }
+        }
+    }
+
+    private void replaceTarget() throws IOException {
+        try {
+            Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
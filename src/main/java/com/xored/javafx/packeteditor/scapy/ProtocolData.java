@@ -15,9 +15,14 @@ public class ProtocolData {
 
     public List<FieldData> fields;
 
-    /** returns field by Id or null */
+    /** returns field by Id or null. no index, since the public field list can be mutated */
     public FieldData getFieldById(String fieldId) {
-        return fields.stream().filter(f->f.getId().equals(fieldId)).findFirst().orElse(null);
+        for (FieldData f : fields) {
+            if (f.getId().equals(fieldId)) {
+                return f;
+            }
+        }
+        return null;
     }
 
     public String getId() {
@@ -0,0 +1,259 @@
+package com.xored.javafx.packeteditor.scapy;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.zeromq.ZMQ;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pipelined connection to scapy server over a DEALER socket.
+ * Many requests can be in flight, replies are matched to requests by JSON-RPC id.
+ * The socket is owned by a single IO thread, callers only enqueue requests.
+ */
+class ScapyAsyncChannel {
+    static Logger logger = LoggerFactory.getLogger(ScapyAsyncChannel.class);
+
+    /** max time to wait in poll, when there is nothing to send */
+    static final int POLL_INTERVAL_MS = 100;
+
+    private static final AtomicInteger channelCounter = new AtomicInteger();
+
+    final Gson gson = new Gson();
+
+    private final ZMQ.Context zmqContext;
+    private final String connectionUrl;
+    private final int receiveTimeout;
+    private final ScapyClientMetrics metrics;
+    private final String wakeupUrl;
+
+    private final ZMQ.Socket wakeupSender;
+    private final Queue<PendingRequest> outgoing = new ConcurrentLinkedQueue<>();
+    private final Map<String, PendingRequest> inFlight = new ConcurrentHashMap<>();
+    private final AtomicInteger lastId = new AtomicInteger();
+
+    /** futures are completed here, so user callbacks never stall the IO loop */
+    private final ExecutorService completionExecutor;
+    private final Thread ioThread;
+    private volatile boolean running = true;
+
+    static class PendingRequest {
+        final ScapyServerClient.Request request;
+        final CompletableFuture<JsonElement> result = new CompletableFuture<>();
+        long deadline;
+        /** for metrics */
+        int requestBytes;
+        long serializationNanos;
+        long sentNanos;
+
+        PendingRequest(ScapyServerClient.Request request) {
+            this.request = request;
+        }
+    }
+
+    ScapyAsyncChannel(ZMQ.Context zmqContext, String connectionUrl, int receiveTimeout, ScapyClientMetrics metrics) {
+        this.zmqContext = zmqContext;
+        this.connectionUrl = connectionUrl;
+        this.receiveTimeout = receiveTimeout;
+        this.metrics = metrics;
+
+        int channelIdx = channelCounter.incrementAndGet();
+        wakeupUrl = "inproc://scapy-async-wakeup-" + channelIdx;
+
+        // inproc endpoint must be bound before connect. the IO thread takes the bound end
+        ZMQ.Socket wakeupReceiver = zmqContext.socket(ZMQ.PAIR);
+        wakeupReceiver.setLinger(0);
+        wakeupReceiver.bind(wakeupUrl);
+        wakeupSender = zmqContext.socket(ZMQ.PAIR);
+        wakeupSender.setLinger(0);
+        wakeupSender.connect(wakeupUrl);
+
+        completionExecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "scapy-async-callbacks-" + channelIdx);
+            t.setDaemon(true);
+            return t;
+        });
+        ioThread = new Thread(() -> ioLoop(wakeupReceiver), "scapy-async-io-" + channelIdx);
+        ioThread.setDaemon(true);
+        ioThread.start();
+    }
+
+    /**
+     * enqueues request. result is completed with a Scapy result or ScapyException/ConnectionException.
+     * cancelled request is not sent, if it is still in the queue
+     */
+    CompletableFuture<JsonElement> request(String method, JsonElement params) {
+        ScapyServerClient.Request reqs = new ScapyServerClient.Request();
+        reqs.id = "a" + lastId.incrementAndGet();
+        reqs.method = method;
+        reqs.params = params;
+
+        PendingRequest pending = new PendingRequest(reqs);
+        if (!running) {
+            pending.result.completeExceptionally(new ConnectionException("Async connection is closed"));
+            return pending.result;
+        }
+        pending.result.whenComplete((r, e) -> {
+            // answer of already sent request is ignored, as the future is completed
+            if (pending.result.isCancelled() && outgoing.remove(pending)) {
+                logger.debug("async request {} is cancelled before sending", reqs.id);
+            }
+        });
+        outgoing.add(pending);
+        wakeup();
+        return pending.result;
+    }
+
+    /** number of requests sent, but not answered yet */
+    int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    private void wakeup() {
+        synchronized (wakeupSender) {
+            if (running) {
+                wakeupSender.send(new byte[] {0}, ZMQ.DONTWAIT);
+            }
+        }
+    }
+
+    private void ioLoop(ZMQ.Socket wakeupReceiver) {
+        ZMQ.Socket dealer = zmqContext.socket(ZMQ.DEALER);
+        dealer.setLinger(0);
+        dealer.connect(connectionUrl);
+        logger.info("async channel connected to scapy_server at {}", connectionUrl);
+
+        ZMQ.Poller poller = new ZMQ.Poller(2);
+        int dealerIdx = poller.register(dealer, ZMQ.Poller.POLLIN);
+        int wakeupIdx = poller.register(wakeupReceiver, ZMQ.Poller.POLLIN);
+        try {
+            while (running) {
+                sendOutgoing(dealer);
+                poller.poll(POLL_INTERVAL_MS);
+                if (poller.pollin(wakeupIdx)) {
+                    while (wakeupReceiver.recv(ZMQ.DONTWAIT) != null) {
+                        // drain wake-up signals
+                    }
+                }
+                if (poller.pollin(dealerIdx)) {
+                    receiveAll(dealer);
+                }
+                expireTimedOut();
+            }
+        } catch (Exception e) {
+            logger.error("async channel failed: {}", e);
+        } finally {
+            dealer.close();
+            wakeupReceiver.close();
+            failAll(new ConnectionException("Async connection is closed"));
+        }
+    }
+
+    private void sendOutgoing(ZMQ.Socket dealer) {
+        PendingRequest pending;
+        while ((pending = outgoing.poll()) != null) {
+            long started = System.nanoTime();
+            String request_json = gson.toJson(pending.request);
+            byte[] request_bytes = request_json.getBytes(StandardCharsets.UTF_8);
+            logger.debug(" sending async: {}", request_json);
+            pending.deadline = System.currentTimeMillis() + receiveTimeout;
+            pending.requestBytes = request_bytes.length;
+            pending.sentNanos = System.nanoTime();
+            pending.serializationNanos = pending.sentNanos - started;
+            inFlight.put(pending.request.id, pending);
+            // empty delimiter frame emulates REQ envelope for the REP socket of scapy_server
+            dealer.sendMore(new byte[0]);
+            dealer.send(request_bytes, 0);
+        }
+    }
+
+    private void receiveAll(ZMQ.Socket dealer) {
+        byte[] frame;
+        while ((frame = dealer.recv(ZMQ.DONTWAIT)) != null) {
+            // skip envelope delimiter, the payload is the last frame of a message
+            while (dealer.hasReceiveMore()) {
+                frame = dealer.recv(0);
+            }
+            if (frame.length > 0) {
+                dispatch(frame);
+            }
+        }
+    }
+
+    private void dispatch(byte[] response_bytes) {
+        long received = System.nanoTime();
+        String response_json = new String(response_bytes, StandardCharsets.UTF_8);
+        logger.debug("received async: {}", response_json);
+        ScapyServerClient.Response resp;
+        try {
+            resp = gson.fromJson(response_json, ScapyServerClient.Response.class);
+        } catch (Exception e) {
+            logger.error("failed to parse async response: {}", e);
+            return;
+        }
+        PendingRequest pending = resp.id != null ? inFlight.remove(resp.id) : null;
+        if (pending == null) {
+            logger.warn("received async response with unexpected id:{}", resp.id);
+            return;
+        }
+        metrics.record(pending.request.method, pending.requestBytes, response_bytes.length,
+                pending.serializationNanos + System.nanoTime() - received, received - pending.sentNanos,
+                resp.error != null ? ScapyClientMetrics.Outcome.ERROR : ScapyClientMetrics.Outcome.OK);
+        if (resp.error != null) {
+            String message = resp.error.get("message").getAsString();
+            ScapyException error = message.equals("Method not found") ? new MethodNotFoundException() : new ScapyException(message);
+            if (!(error instanceof MethodNotFoundException)) {
+                logger.error("received error: {}", message);
+            }
+            completionExecutor.execute(() -> pending.result.completeExceptionally(error));
+        } else {
+            completionExecutor.execute(() -> pending.result.complete(resp.result));
+        }
+    }
+
+    private void expireTimedOut() {
+        long now = System.currentTimeMillis();
+        Iterator<PendingRequest> it = inFlight.values().iterator();
+        while (it.hasNext()) {
+            PendingRequest pending = it.next();
+            if (pending.deadline < now) {
+                it.remove();
+                metrics.record(pending.request.method, pending.requestBytes, 0, pending.serializationNanos,
+                        System.nanoTime() - pending.sentNanos, ScapyClientMetrics.Outcome.TIMEOUT);
+                String message = "Unable to receive response for " + pending.request.method;
+                completionExecutor.execute(() -> pending.result.completeExceptionally(new ConnectionException(message)));
+            }
+        }
+    }
+
+    private void failAll(Exception e) {
+        PendingRequest pending;
+        while ((pending = outgoing.poll()) != null) {
+            pending.result.completeExceptionally(e);
+        }
+        inFlight.values().forEach(p -> p.result.completeExceptionally(e));
+        inFlight.clear();
+    }
+
+    /** stops IO thread and closes sockets. should be called before context termination */
+    void close() {
+        synchronized (wakeupSender) {
+            running = false;
+            wakeupSender.send(new byte[] {0}, ZMQ.DONTWAIT);
+            wakeupSender.close();
+        }
+        try {
+            ioThread.join(POLL_INTERVAL_MS * 10);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        completionExecutor.shutdown();
+    }
+}
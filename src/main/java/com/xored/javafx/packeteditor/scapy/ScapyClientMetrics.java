@@ -0,0 +1,209 @@
+package com.xored.javafx.packeteditor.scapy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.beans.ConstructorProperties;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per method instrumentation of JSON-RPC calls to scapy_server: call, error and timeout counts,
+ * request and response sizes, time spent in JSON serialization vs waiting for the server, and latency percentiles.
+ * Exposed via JMX as OBJECT_NAME and can be dumped to the log periodically.
+ * Methods of a batch are recorded as a single BATCH call.
+ */
+public class ScapyClientMetrics implements ScapyClientMetricsMXBean {
+    static Logger logger = LoggerFactory.getLogger(ScapyClientMetrics.class);
+
+    public static final String OBJECT_NAME = "com.xored.javafx.packeteditor:type=ScapyClientMetrics";
+    public static final String BATCH = "batch";
+
+    public enum Outcome { OK, ERROR, TIMEOUT }
+
+    private final Map<String, MethodStats> stats = new ConcurrentSkipListMap<>();
+    private ScheduledExecutorService logExecutor;
+
+    /** accumulated stats of one method. latencies are in microseconds */
+    private static class MethodStats {
+        long calls;
+        long errors;
+        long timeouts;
+        long requestBytes;
+        long responseBytes;
+        long serializationNanos;
+        long wireNanos;
+        final LatencyHistogram latency = new LatencyHistogram();
+
+        synchronized void record(long requestSize, long responseSize, long serialization, long wire, Outcome outcome) {
+            calls++;
+            if (outcome == Outcome.ERROR) {
+                errors++;
+            } else if (outcome == Outcome.TIMEOUT) {
+                timeouts++;
+            }
+            requestBytes += requestSize;
+            responseBytes += responseSize;
+            serializationNanos += serialization;
+            wireNanos += wire;
+            latency.record(TimeUnit.NANOSECONDS.toMicros(serialization + wire));
+        }
+
+        synchronized MethodMetrics snapshot(String method) {
+            double n = Math.max(1, calls);
+            return new MethodMetrics(method, calls, errors, timeouts, requestBytes, responseBytes,
+                    serializationNanos / n / 1e6, wireNanos / n / 1e6,
+                    latency.getValueAtPercentile(50) / 1e3, latency.getValueAtPercentile(90) / 1e3,
+                    latency.getValueAtPercentile(99) / 1e3, latency.getMax() / 1e3);
+        }
+    }
+
+    /** snapshot of a method metrics. times are in milliseconds, serialization and wire times are averages per call */
+    public static class MethodMetrics {
+        private final String method;
+        private final long calls;
+        private final long errors;
+        private final long timeouts;
+        private final long requestBytes;
+        private final long responseBytes;
+        private final double serializationMillis;
+        private final double wireMillis;
+        private final double p50Millis;
+        private final double p90Millis;
+        private final double p99Millis;
+        private final double maxMillis;
+
+        @ConstructorProperties({"method", "calls", "errors", "timeouts", "requestBytes", "responseBytes",
+                "serializationMillis", "wireMillis", "p50Millis", "p90Millis", "p99Millis", "maxMillis"})
+        public MethodMetrics(String method, long calls, long errors, long timeouts, long requestBytes, long responseBytes,
+                             double serializationMillis, double wireMillis,
+                             double p50Millis, double p90Millis, double p99Millis, double maxMillis) {
+            this.method = method;
+            this.calls = calls;
+            this.errors = errors;
+            this.timeouts = timeouts;
+            this.requestBytes = requestBytes;
+            this.responseBytes = responseBytes;
+            this.serializationMillis = serializationMillis;
+            this.wireMillis = wireMillis;
+            this.p50Millis = p50Millis;
+            this.p90Millis = p90Millis;
+            this.p99Millis = p99Millis;
+            this.maxMillis = maxMillis;
+        }
+
+        public String getMethod() { return method; }
+
+        public long getCalls() { return calls; }
+
+        public long getErrors() { return errors; }
+
+        public long getTimeouts() { return timeouts; }
+
+        public long getRequestBytes() { return requestBytes; }
+
+        public long getResponseBytes() { return responseBytes; }
+
+        public double getSerializationMillis() { return serializationMillis; }
+
+        public double getWireMillis() { return wireMillis; }
+
+        public double getP50Millis() { return p50Millis; }
+
+        public double getP90Millis() { return p90Millis; }
+
+        public double getP99Millis() { return p99Millis; }
+
+        public double getMaxMillis() { return maxMillis; }
+    }
+
+    /**
+     * records a finished call
+     * @param serializationNanos time of request and response JSON (de)serialization
+     * @param wireNanos time between sending request and receiving response, or giving up
+     */
+    public void record(String method, long requestBytes, long responseBytes, long serializationNanos, long wireNanos, Outcome outcome) {
+        stats.computeIfAbsent(method, m -> new MethodStats())
+                .record(requestBytes, responseBytes, serializationNanos, wireNanos, outcome);
+    }
+
+    /** returns snapshot of the method metrics or null if it was not called */
+    public MethodMetrics getMethodMetrics(String method) {
+        MethodStats methodStats = stats.get(method);
+        return methodStats != null ? methodStats.snapshot(method) : null;
+    }
+
+    @Override
+    public List<MethodMetrics> getMethodMetrics() {
+        List<MethodMetrics> res = new ArrayList<>();
+        stats.forEach((method, methodStats) -> res.add(methodStats.snapshot(method)));
+        return res;
+    }
+
+    @Override
+    public String getReport() {
+        StringBuilder sb = new StringBuilder(String.format("%-36s %8s %6s %6s %10s %10s %8s %8s %8s %8s %8s %8s",
+                "method", "calls", "errors", "t/o", "req KB", "resp KB", "ser ms", "wire ms", "p50 ms", "p90 ms", "p99 ms", "max ms"));
+        for (MethodMetrics m : getMethodMetrics()) {
+            sb.append(String.format("%n%-36s %8d %6d %6d %10.1f %10.1f %8.2f %8.2f %8.2f %8.2f %8.2f %8.2f",
+                    m.getMethod(), m.getCalls(), m.getErrors(), m.getTimeouts(),
+                    m.getRequestBytes() / 1024.0, m.getResponseBytes() / 1024.0,
+                    m.getSerializationMillis(), m.getWireMillis(),
+                    m.getP50Millis(), m.getP90Millis(), m.getP99Millis(), m.getMaxMillis()));
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public void reset() {
+        stats.clear();
+    }
+
+    /** registers the metrics in the platform MBean server, replacing metrics of another client */
+    public void registerMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+        } catch (JMException e) {
+            logger.warn("Unable to register scapy client metrics MBean: {}", e);
+        }
+    }
+
+    /** dumps the report to the log every intervalSeconds. non-positive interval stops logging */
+    public synchronized void startLogging(long intervalSeconds) {
+        stopLogging();
+        if (intervalSeconds <= 0) {
+            return;
+        }
+        logExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "scapy-client-metrics");
+            t.setDaemon(true);
+            return t;
+        });
+        logExecutor.scheduleAtFixedRate(() -> {
+            if (!stats.isEmpty()) {
+                logger.info("scapy_server calls:\n{}", getReport());
+            }
+        }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    public synchronized void stopLogging() {
+        if (logExecutor != null) {
+            logExecutor.shutdownNow();
+            logExecutor = null;
+        }
+    }
+}
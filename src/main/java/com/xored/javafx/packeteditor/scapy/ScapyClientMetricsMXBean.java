@@ -0,0 +1,14 @@
+package com.xored.javafx.packeteditor.scapy;
+
+import java.util.List;
+
+/** JMX view of ScapyClientMetrics */
+public interface ScapyClientMetricsMXBean {
+    /** metrics of each JSON-RPC method called since start or reset */
+    List<ScapyClientMetrics.MethodMetrics> getMethodMetrics();
+
+    /** human readable table of getMethodMetrics, the same as in the periodic log */
+    String getReport();
+
+    void reset();
+}
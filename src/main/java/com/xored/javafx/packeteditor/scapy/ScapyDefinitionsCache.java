@@ -0,0 +1,374 @@
+package com.xored.javafx.packeteditor.scapy;
+
+import com.google.common.hash.Hashing;
+import com.google.gson.*;
+import com.google.gson.internal.LazilyParsedNumber;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * Stores parsed get_definitions result on disk in a compact binary format.
+ * Cache file is keyed by scapy version handler, so a server with other protocols never gets stale definitions.
+ */
+public class ScapyDefinitionsCache {
+    static Logger logger = LoggerFactory.getLogger(ScapyDefinitionsCache.class);
+
+    static final int MAGIC = 0x54504544; // "TPED"
+    /** increment on any change of the binary layout */
+    static final int FORMAT_VERSION = 1;
+
+    private static final byte JSON_MISSING = 0;
+    private static final byte JSON_NULL = 1;
+    private static final byte JSON_STRING = 2;
+    private static final byte JSON_NUMBER = 3;
+    private static final byte JSON_BOOLEAN = 4;
+    private static final byte JSON_ARRAY = 5;
+    private static final byte JSON_OBJECT = 6;
+
+    private final File cacheDir;
+
+    public ScapyDefinitionsCache(File cacheDir) {
+        this.cacheDir = cacheDir;
+    }
+
+    /** returns file, which stores cached data of the given kind for the version handler */
+    public File getCacheFile(String prefix, String versionHandler) {
+        String hash = Hashing.sha1().hashString(versionHandler, StandardCharsets.UTF_8).toString();
+        return new File(cacheDir, prefix + "_" + hash + ".bin");
+    }
+
+    /** returns cached definitions or null if there are no valid definitions for the version handler */
+    public ScapyDefinitions load(String versionHandler) {
+        return load("definitions", versionHandler, ScapyDefinitionsCache::readDefinitions);
+    }
+
+    /** writes definitions to the cache. errors are logged, since cache is optional */
+    public void save(String versionHandler, ScapyDefinitions definitions) {
+        save("definitions", versionHandler, out -> writeDefinitions(out, definitions));
+    }
+
+    /** returns cached data of the given kind or null if there is no valid data for the version handler */
+    public <T> T load(String prefix, String versionHandler, DataReader<T> reader) {
+        File file = getCacheFile(prefix, versionHandler);
+        if (!file.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(file.toPath())))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION || !versionHandler.equals(readString(in))) {
+                logger.info("Ignoring outdated cache {}", file);
+                return null;
+            }
+            return reader.read(in);
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Unable to read cache {}: {}", file, e.getMessage());
+            return null;
+        }
+    }
+
+    /** writes data of the given kind to the cache. errors are logged, since cache is optional */
+    public void save(String prefix, String versionHandler, DataWriter writer) {
+        File file = getCacheFile(prefix, versionHandler);
+        try {
+            writeAtomically(file, out -> {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                writeString(out, versionHandler);
+                writer.write(out);
+            });
+        } catch (IOException e) {
+            logger.warn("Unable to write cache {}: {}", file, e.getMessage());
+        }
+    }
+
+    public interface DataWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    public interface DataReader<T> {
+        T read(DataInputStream in) throws IOException;
+    }
+
+    /** writes file via temp file and rename, so readers never see a partially written file */
+    public static void writeAtomically(File file, DataWriter writer) throws IOException {
+        Files.createDirectories(file.getParentFile().toPath());
+        Path tmp = Files.createTempFile(file.getParentFile().toPath(), file.getName(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                writer.write(out);
+            }
+            try {
+                Files.move(tmp, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                Files.move(tmp, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    static void writeDefinitions(DataOutputStream out, ScapyDefinitions defs) throws IOException {
+        writeList(out, defs.protocols, proto -> {
+            writeString(out, proto.id);
+            writeString(out, proto.name);
+            writeList(out, proto.fields, field -> {
+                writeString(out, field.id);
+                writeString(out, field.name);
+                writeString(out, field.type);
+                writeBoolean(out, field.auto);
+                writeInteger(out, field.min);
+                writeInteger(out, field.max);
+                writeString(out, field.regex);
+                writeJson(out, field.values_dict);
+                writeJson(out, field.bits);
+            });
+            writeStrings(out, proto.fieldEngineAwareFields);
+        });
+        writeList(out, defs.feInstructionParameters, param -> writeFEParameter(out, param));
+        writeList(out, defs.feInstructions, instruction -> {
+            writeString(out, instruction.id);
+            writeString(out, instruction.help);
+            writeStrings(out, instruction.parameters);
+        });
+        writeList(out, defs.feTemplates, template -> {
+            writeString(out, template.id);
+            writeString(out, template.name);
+            writeStrings(out, template.instructionIds);
+        });
+        writeList(out, defs.feParameters, param -> writeFEParameter(out, param));
+    }
+
+    static ScapyDefinitions readDefinitions(DataInputStream in) throws IOException {
+        ScapyDefinitions defs = new ScapyDefinitions();
+        defs.protocols = readList(in, () -> {
+            ScapyDefinitions.ScapyProtocol proto = defs.new ScapyProtocol();
+            proto.id = readString(in);
+            proto.name = readString(in);
+            proto.fields = readList(in, () -> {
+                ScapyDefinitions.ScapyField field = defs.new ScapyField();
+                field.id = readString(in);
+                field.name = readString(in);
+                field.type = readString(in);
+                field.auto = readBoolean(in);
+                field.min = readInteger(in);
+                field.max = readInteger(in);
+                field.regex = readString(in);
+                field.values_dict = (JsonObject) readJson(in);
+                field.bits = (JsonArray) readJson(in);
+                return field;
+            });
+            proto.fieldEngineAwareFields = readStrings(in);
+            return proto;
+        });
+        defs.feInstructionParameters = readList(in, () -> readFEParameter(in, defs));
+        defs.feInstructions = readList(in, () -> {
+            ScapyDefinitions.ScapyFEInstruction instruction = defs.new ScapyFEInstruction();
+            instruction.id = readString(in);
+            instruction.help = readString(in);
+            instruction.parameters = readStrings(in);
+            return instruction;
+        });
+        defs.feTemplates = readList(in, () -> {
+            ScapyDefinitions.ScapyFETemplate template = defs.new ScapyFETemplate();
+            template.id = readString(in);
+            template.name = readString(in);
+            template.instructionIds = readStrings(in);
+            return template;
+        });
+        defs.feParameters = readList(in, () -> readFEParameter(in, defs));
+        return defs;
+    }
+
+    private static void writeFEParameter(DataOutputStream out, ScapyDefinitions.ScapyFEParameter param) throws IOException {
+        writeString(out, param.type);
+        writeString(out, param.id);
+        writeString(out, param.name);
+        writeString(out, param.defaultValue);
+        if (param.dict == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(param.dict.size());
+            for (Map.Entry<String, String> entry : param.dict.entrySet()) {
+                writeString(out, entry.getKey());
+                writeString(out, entry.getValue());
+            }
+        }
+        writeBoolean(out, param.required);
+        writeBoolean(out, param.editable);
+    }
+
+    private static ScapyDefinitions.ScapyFEParameter readFEParameter(DataInputStream in, ScapyDefinitions defs) throws IOException {
+        ScapyDefinitions.ScapyFEParameter param = defs.new ScapyFEParameter();
+        param.type = readString(in);
+        param.id = readString(in);
+        param.name = readString(in);
+        param.defaultValue = readString(in);
+        int dictSize = in.readInt();
+        if (dictSize >= 0) {
+            param.dict = new LinkedHashMap<>();
+            for (int i = 0; i < dictSize; i++) {
+                param.dict.put(readString(in), readString(in));
+            }
+        }
+        param.required = readBoolean(in);
+        param.editable = readBoolean(in);
+        return param;
+    }
+
+    interface ItemWriter<T> {
+        void write(T item) throws IOException;
+    }
+
+    interface ItemReader<T> {
+        T read() throws IOException;
+    }
+
+    public static <T> void writeList(DataOutputStream out, List<T> list, ItemWriter<T> writer) throws IOException {
+        if (list == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(list.size());
+        for (T item : list) {
+            writer.write(item);
+        }
+    }
+
+    public static <T> List<T> readList(DataInputStream in, ItemReader<T> reader) throws IOException {
+        int size = in.readInt();
+        if (size < 0) {
+            return null;
+        }
+        List<T> res = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            res.add(reader.read());
+        }
+        return res;
+    }
+
+    public static void writeStrings(DataOutputStream out, List<String> list) throws IOException {
+        writeList(out, list, s -> writeString(out, s));
+    }
+
+    public static List<String> readStrings(DataInputStream in) throws IOException {
+        return readList(in, () -> readString(in));
+    }
+
+    /** unlike writeUTF, has no 64k limit and supports null */
+    public static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    public static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeBoolean(DataOutputStream out, Boolean value) throws IOException {
+        out.writeByte(value == null ? -1 : value ? 1 : 0);
+    }
+
+    private static Boolean readBoolean(DataInputStream in) throws IOException {
+        byte value = in.readByte();
+        return value < 0 ? null : value == 1;
+    }
+
+    private static void writeInteger(DataOutputStream out, Integer value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeInt(value);
+        }
+    }
+
+    private static Integer readInteger(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readInt() : null;
+    }
+
+    static void writeJson(DataOutputStream out, JsonElement value) throws IOException {
+        if (value == null) {
+            out.writeByte(JSON_MISSING);
+        } else if (value.isJsonNull()) {
+            out.writeByte(JSON_NULL);
+        } else if (value.isJsonArray()) {
+            JsonArray array = value.getAsJsonArray();
+            out.writeByte(JSON_ARRAY);
+            out.writeInt(array.size());
+            for (JsonElement item : array) {
+                writeJson(out, item);
+            }
+        } else if (value.isJsonObject()) {
+            Set<Map.Entry<String, JsonElement>> entries = value.getAsJsonObject().entrySet();
+            out.writeByte(JSON_OBJECT);
+            out.writeInt(entries.size());
+            for (Map.Entry<String, JsonElement> entry : entries) {
+                writeString(out, entry.getKey());
+                writeJson(out, entry.getValue());
+            }
+        } else {
+            JsonPrimitive primitive = value.getAsJsonPrimitive();
+            if (primitive.isBoolean()) {
+                out.writeByte(JSON_BOOLEAN);
+                out.writeBoolean(primitive.getAsBoolean());
+            } else if (primitive.isNumber()) {
+                // string form keeps the number exactly as it was received
+                out.writeByte(JSON_NUMBER);
+                writeString(out, primitive.getAsString());
+            } else {
+                out.writeByte(JSON_STRING);
+                writeString(out, primitive.getAsString());
+            }
+        }
+    }
+
+    static JsonElement readJson(DataInputStream in) throws IOException {
+        byte tag = in.readByte();
+        switch (tag) {
+            case JSON_MISSING:
+                return null;
+            case JSON_NULL:
+                return JsonNull.INSTANCE;
+            case JSON_STRING:
+                return new JsonPrimitive(readString(in));
+            case JSON_NUMBER:
+                return new JsonPrimitive(new LazilyParsedNumber(readString(in)));
+            case JSON_BOOLEAN:
+                return new JsonPrimitive(in.readBoolean());
+            case JSON_ARRAY: {
+                int size = in.readInt();
+                JsonArray array = new JsonArray();
+                for (int i = 0; i < size; i++) {
+                    array.add(readJson(in));
+                }
+                return array;
+            }
+            case JSON_OBJECT: {
+                int size = in.readInt();
+                JsonObject object = new JsonObject();
+                for (int i = 0; i < size; i++) {
+                    String key = readString(in);
+                    object.add(key, readJson(in));
+                }
+                return object;
+            }
+            default:
+                throw new IOException("Unexpected json tag: " + tag);
+        }
+    }
+}
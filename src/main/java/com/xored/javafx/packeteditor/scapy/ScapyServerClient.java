@@ -9,9 +9,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.zeromq.ZMQ;
 
-import java.util.Arrays;
-import java.util.Base64;
-import java.util.List;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 
 /** binding to scapy server */
 public class ScapyServerClient {
@@ -19,11 +20,11 @@ public class ScapyServerClient {
     static Logger logger = LoggerFactory.getLogger(ScapyServerClient.class);
 
     final Base64.Encoder base64Encoder = Base64.getEncoder();
-    final Base64.Decoder base64Decoder = Base64.getDecoder();
     final Gson gson = new Gson();
 
     ZMQ.Context zmqContext;
     ZMQ.Socket zmqSocket;
+    ScapyAsyncChannel asyncChannel;
     String version_handler;
     int last_id = 0;
 
@@ -39,6 +40,13 @@ public class ScapyServerClient {
     
     private String connectionUrl;
 
+    private int receiveTimeout;
+
+    /** scapy_server rejected a batch once, so batches are sent as sequential requests */
+    private boolean batchUnsupported = false;
+
+    private final ScapyClientMetrics metrics = new ScapyClientMetrics();
+
     static class Request {
         final String jsonrpc = "2.0";
         String id;
@@ -67,12 +75,18 @@ public class ScapyServerClient {
         zmqSocket.setReceiveTimeOut(timeout);
         
         connectionUrl = scapyUrl;
+        receiveTimeout = timeout;
         
         logger.info("connecting to scapy_server at {}", connectionUrl);
         zmqSocket.connect(connectionUrl);
 
+        metrics.registerMBean();
+        if (configurationService != null) {
+            metrics.startLogging(configurationService.getMetricsLogInterval());
+        }
+
         try {
-            version_handler = getVersionHandler();
+            version_handler = requestVersionHandler();
             isConnected = true;
             eventBus.post(new ScapyClientConnectedEvent());
         } catch (Exception e) {
@@ -84,6 +98,11 @@ public class ScapyServerClient {
         return isConnected;
     }
 
+    /** latency and size metrics of calls to scapy_server */
+    public ScapyClientMetrics getMetrics() {
+        return metrics;
+    }
+
     private JsonArray getVersion() {
         JsonElement result = request("get_version", null);
         if (result == null) {
@@ -101,7 +120,12 @@ public class ScapyServerClient {
         return version;
     }
     
-    private String getVersionHandler() {
+    /** version handler of the connected server. identifies server API and available protocols */
+    public String getVersionHandler() {
+        return version_handler;
+    }
+
+    private String requestVersionHandler() {
         JsonElement versionHandler = request("get_version_handler", getVersion());
         if (versionHandler == null) {
             logger.error("get_version returned null");
@@ -117,6 +141,12 @@ public class ScapyServerClient {
 
     public void closeConnection() {
         logger.info("Closing ZMQ Socket. from thread: {}", Thread.currentThread().getName());
+        synchronized (this) {
+            if (asyncChannel != null) {
+                asyncChannel.close();
+                asyncChannel = null;
+            }
+        }
         if (zmqSocket != null) {
             zmqSocket.disconnect(connectionUrl);
             zmqSocket.close();
@@ -129,8 +159,10 @@ public class ScapyServerClient {
             zmqContext = null;
         }
         logger.info("Connection to Scapy server closed.");
+        metrics.stopLogging();
 
         lastRequestFailed = false;
+        batchUnsupported = false;
         isConnected = false;
     }
 
@@ -145,24 +177,125 @@ public class ScapyServerClient {
         reqs.method = method;
         reqs.params = payload;
 
-        String request_json = gson.toJson(reqs);
-        logger.debug(" sending: {}", request_json);
+        long started = System.nanoTime();
+        byte[] request_bytes = gson.toJson(reqs).getBytes(StandardCharsets.UTF_8);
+        long sent = System.nanoTime();
+        byte[] response_bytes = sendAndReceive(request_bytes, method, method);
+        long received = System.nanoTime();
+        Response resp = gson.fromJson(new String(response_bytes, StandardCharsets.UTF_8), Response.class);
+        metrics.record(method, request_bytes.length, response_bytes.length, sent - started + System.nanoTime() - received,
+                received - sent, resp.error != null ? ScapyClientMetrics.Outcome.ERROR : ScapyClientMetrics.Outcome.OK);
+        checkError(resp);
+
+        if (!resp.id.equals(reqs.id)) {
+            logger.error("received id:{}, expected:{}", resp.id, reqs.id);
+            throw new ScapyException("unexpected result id");
+        }
+
+        return resp.result;
+    }
+
+    /**
+     * makes several requests to Scapy server in a single JSON-RPC batch, so they cost one round trip.
+     * results are returned in the order of requests, result of a failed request is null
+     */
+    public List<JsonElement> requestBatch(List<String> methods, List<JsonElement> payloads) {
+        if (methods.size() != payloads.size()) {
+            throw new IllegalArgumentException("methods and payloads should have the same size");
+        }
+        if (methods.isEmpty()) {
+            return new ArrayList<>();
+        }
+        if (batchUnsupported) {
+            return requestSequentially(methods, payloads);
+        }
+        if(lastRequestFailed) {
+            reconnect();
+            payloads.forEach(this::updateVersionHandler);
+        }
+
+        Map<String, Integer> indexById = new HashMap<>();
+        List<Request> batch = new ArrayList<>();
+        for (int i = 0; i < methods.size(); i++) {
+            Request reqs = new Request();
+            reqs.id = Integer.toString(++last_id);
+            reqs.method = methods.get(i);
+            reqs.params = payloads.get(i);
+            batch.add(reqs);
+            indexById.put(reqs.id, i);
+        }
 
-        zmqSocket.send(request_json.getBytes(), 0);
+        long started = System.nanoTime();
+        byte[] request_bytes = gson.toJson(batch).getBytes(StandardCharsets.UTF_8);
+        long sent = System.nanoTime();
+        byte[] response_bytes = sendAndReceive(request_bytes, ScapyClientMetrics.BATCH, "batch of " + String.join(",", new LinkedHashSet<>(methods)));
+        long received = System.nanoTime();
+        String response_json = new String(response_bytes, StandardCharsets.UTF_8);
+        JsonElement response = new JsonParser().parse(response_json);
+        metrics.record(ScapyClientMetrics.BATCH, request_bytes.length, response_bytes.length, sent - started + System.nanoTime() - received,
+                received - sent, response.isJsonArray() ? ScapyClientMetrics.Outcome.OK : ScapyClientMetrics.Outcome.ERROR);
+        if (!response.isJsonArray()) {
+            // server does not handle batches, whole batch was rejected with a single error
+            logger.warn("Scapy server does not support batch requests: {}", response_json);
+            batchUnsupported = true;
+            return requestSequentially(methods, payloads);
+        }
+
+        List<JsonElement> results = new ArrayList<>(Collections.nCopies(methods.size(), null));
+        for (JsonElement item : response.getAsJsonArray()) {
+            Response resp = gson.fromJson(item, Response.class);
+            Integer idx = resp.id != null ? indexById.get(resp.id) : null;
+            if (idx == null) {
+                logger.error("received unexpected id in batch:{}", resp.id);
+                continue;
+            }
+            if (resp.error != null) {
+                logger.error("received error for {}: {}", methods.get(idx), resp.error.get("message"));
+                continue;
+            }
+            results.set(idx, resp.result);
+        }
+        return results;
+    }
+
+    private List<JsonElement> requestSequentially(List<String> methods, List<JsonElement> payloads) {
+        List<JsonElement> results = new ArrayList<>();
+        for (int i = 0; i < methods.size(); i++) {
+            try {
+                results.add(request(methods.get(i), payloads.get(i)));
+            } catch (ConnectionException e) {
+                throw e;
+            } catch (ScapyException e) {
+                results.add(null);
+            }
+        }
+        return results;
+    }
+
+    /** @param metricsMethod name of the call in metrics, method describes the call in errors */
+    private byte[] sendAndReceive(byte[] request_bytes, String metricsMethod, String method) {
+        if (logger.isDebugEnabled()) {
+            logger.debug(" sending: {}", new String(request_bytes, StandardCharsets.UTF_8));
+        }
+        long sent = System.nanoTime();
+        zmqSocket.send(request_bytes, 0);
 
         byte[] response_bytes = zmqSocket.recv(0);
         if (response_bytes == null) {
             lastRequestFailed = true;
-            logger.info("Received null response. Request method: '{}'. Errno: '{}'", zmqSocket.base().errno());
+            metrics.record(metricsMethod, request_bytes.length, 0, 0, System.nanoTime() - sent, ScapyClientMetrics.Outcome.TIMEOUT);
+            logger.info("Received null response. Request method: '{}'. Errno: '{}'", method, zmqSocket.base().errno());
             String message = "Unable to receive response for " + method;
             throw new ConnectionException(message);
         }
 
-        String response_json = new String(response_bytes, java.nio.charset.StandardCharsets.UTF_8);
-        logger.debug("received: {}", response_json);
-
-        Response resp = gson.fromJson(response_json, Response.class);
+        if (logger.isDebugEnabled()) {
+            logger.debug("received: {}", new String(response_bytes, StandardCharsets.UTF_8));
+        }
+        return response_bytes;
+    }
 
+    private void checkError(Response resp) {
         if (resp.error != null) {
             String message = resp.error.get("message").getAsString();
             if(message.equals("Method not found")) {
@@ -171,13 +304,51 @@ public class ScapyServerClient {
             logger.error("received error: {}", message);
             throw new ScapyException(message);
         }
+    }
 
-        if (!resp.id.equals(reqs.id)) {
-            logger.error("received id:{}, expected:{}", resp.id, reqs.id);
-            throw new ScapyException("unexpected result id");
+    /** replaces stale version handler in the payload after reconnect */
+    private void updateVersionHandler(JsonElement payload) {
+        if (payload instanceof JsonArray && ((JsonArray) payload).size() > 0) {
+            ((JsonArray) payload).set(0, new JsonPrimitive(version_handler));
         }
+    }
 
-        return resp.result;
+    /**
+     * makes pipelined request to Scapy server, does not block the caller.
+     * result future fails with ScapyException, MethodNotFoundException or ConnectionException
+     */
+    public CompletableFuture<JsonElement> requestAsync(String method, JsonElement payload) {
+        ScapyAsyncChannel channel;
+        try {
+            channel = getAsyncChannel();
+        } catch (ConnectionException e) {
+            CompletableFuture<JsonElement> res = new CompletableFuture<>();
+            res.completeExceptionally(e);
+            return res;
+        }
+        return channel.request(method, payload);
+    }
+
+    /** maps result of async request. cancelling the returned future cancels the request, if it is not sent yet */
+    private static <T> CompletableFuture<T> mapAsync(CompletableFuture<JsonElement> request, Function<JsonElement, T> mapper) {
+        CompletableFuture<T> res = request.thenApply(mapper);
+        res.whenComplete((r, e) -> {
+            if (res.isCancelled()) {
+                request.cancel(false);
+            }
+        });
+        return res;
+    }
+
+    /** async channel is opened lazily, it shares ZMQ context with the sync socket */
+    private synchronized ScapyAsyncChannel getAsyncChannel() {
+        if (zmqContext == null || connectionUrl == null) {
+            throw new ConnectionException("Not connected to Scapy server");
+        }
+        if (asyncChannel == null) {
+            asyncChannel = new ScapyAsyncChannel(zmqContext, connectionUrl, receiveTimeout, metrics);
+        }
+        return asyncChannel;
     }
 
     private JsonArray rebuildPayload(JsonElement payload) {
@@ -194,10 +365,7 @@ public class ScapyServerClient {
 
     /** builds packet from JSON definition using scapy */
     public PacketData build_pkt(JsonElement params) {
-        JsonArray payload = new JsonArray();
-        payload.add(version_handler);
-        payload.add(params);
-        return packetFromJson(request("build_pkt", payload));
+        return packetFromJson(request("build_pkt", buildPktPayload(params)));
     }
 
     public PacketData build_pkt(List<ReconstructProtocol> protocols) {
@@ -205,21 +373,52 @@ public class ScapyServerClient {
     }
 
     public PacketData build_pkt_ex(List<ReconstructProtocol> protocols, JsonElement extra_options) {
+        return packetFromJson(request("build_pkt_ex", buildPktExPayload(protocols, extra_options)));
+    }
+
+    /** async version of build_pkt */
+    public CompletableFuture<PacketData> build_pkt_async(List<ReconstructProtocol> protocols) {
+        return mapAsync(requestAsync("build_pkt", buildPktPayload(gson.toJsonTree(protocols))), this::packetFromJson);
+    }
+
+    /** async version of build_pkt_ex */
+    public CompletableFuture<PacketData> build_pkt_ex_async(List<ReconstructProtocol> protocols, JsonElement extra_options) {
+        return mapAsync(requestAsync("build_pkt_ex", buildPktExPayload(protocols, extra_options)), this::packetFromJson);
+    }
+
+    private JsonArray buildPktPayload(JsonElement params) {
+        JsonArray payload = new JsonArray();
+        payload.add(version_handler);
+        payload.add(params);
+        return payload;
+    }
+
+    private JsonArray buildPktExPayload(List<ReconstructProtocol> protocols, JsonElement extra_options) {
         JsonArray payload = new JsonArray();
         payload.add(version_handler);
         payload.add(gson.toJsonTree(protocols));
         payload.add(extra_options);
-        return packetFromJson(request("build_pkt_ex", payload));
+        return payload;
     }
 
     public ScapyData loadInstructionParameterValues(List<ReconstructProtocol> pktStructure, JsonElement vmInstructionsModel, String parameterId) {
+        JsonObject res = (JsonObject) request("load_instruction_parameter_values", loadInstructionParameterValuesPayload(pktStructure, vmInstructionsModel, parameterId));
+        return gson.fromJson(res, ScapyData.class);
+    }
+
+    /** non-blocking loadInstructionParameterValues */
+    public CompletableFuture<ScapyData> loadInstructionParameterValuesAsync(List<ReconstructProtocol> pktStructure, JsonElement vmInstructionsModel, String parameterId) {
+        return mapAsync(requestAsync("load_instruction_parameter_values", loadInstructionParameterValuesPayload(pktStructure, vmInstructionsModel, parameterId)),
+                res -> gson.fromJson(res, ScapyData.class));
+    }
+
+    private JsonArray loadInstructionParameterValuesPayload(List<ReconstructProtocol> pktStructure, JsonElement vmInstructionsModel, String parameterId) {
         JsonArray payload = new JsonArray();
         payload.add(version_handler);
         payload.add(gson.toJsonTree(pktStructure));
         payload.add(vmInstructionsModel);
         payload.add(new JsonPrimitive(parameterId));
-        JsonObject res = (JsonObject) request("load_instruction_parameter_values", payload);
-        return gson.fromJson(res, ScapyData.class);
+        return payload;
     }
     
     public ScapyDefinitions get_definitions() {
@@ -242,27 +441,12 @@ public class ScapyServerClient {
         return get_payload_classes(Arrays.asList(ReconstructProtocol.pass(protocolId)));
     }
 
-    /** reads first packet from binary pcap file */
-    public PacketData read_pcap_packet(byte[] pcap_binary) {
+    /** async version of get_payload_classes */
+    public CompletableFuture<List<String>> get_payload_classes_async(String protocolId) {
         JsonArray payload = new JsonArray();
-        String payload_b64 = base64Encoder.encodeToString(pcap_binary);
         payload.add(version_handler);
-        payload.add(payload_b64);
-        JsonArray pcap_packets = (JsonArray)request("read_pcap", payload);
-        JsonElement first_packet = pcap_packets.get(0);
-        return packetFromJson(first_packet);
-    }
-
-    /** write single pcap packet to a file, returns result binary pcap file content */
-    public byte[] write_pcap_packet(byte[] packet_binary) {
-        JsonArray packets = new JsonArray();
-        packets.add(base64Encoder.encodeToString(packet_binary));
-
-        JsonArray payload = new JsonArray();
-        payload.add(version_handler);
-        payload.add(packets);
-        String pcap_base64 = request("write_pcap", payload).getAsString();
-        return base64Decoder.decode(pcap_base64);
+        payload.add(gson.toJsonTree(Arrays.asList(ReconstructProtocol.pass(protocolId))));
+        return mapAsync(requestAsync("get_payload_classes", payload), res -> Arrays.asList(gson.fromJson(res, String[].class)));
     }
 
     public JsonElement get_tree() {
@@ -285,12 +469,30 @@ public class ScapyServerClient {
 
     /** builds packet from bytes, modifies fields */
     public JsonObject reconstruct_pkt (byte[] packet_binary, JsonElement modify) {
+        JsonElement result = request("reconstruct_pkt", reconstructPktPayload(packet_binary, modify));
+        return result.getAsJsonObject();
+    }
+
+    /** async version of reconstruct_pkt */
+    public CompletableFuture<PacketData> reconstruct_pkt_async(byte[] packet_binary) {
+        return reconstruct_pkt_async(packet_binary, new JsonArray());
+    }
+
+    /** async version of reconstruct_pkt, modifies fields */
+    public CompletableFuture<PacketData> reconstruct_pkt_async(byte[] packet_binary, List<ReconstructProtocol> protocols) {
+        return reconstruct_pkt_async(packet_binary, gson.toJsonTree(protocols));
+    }
+
+    private CompletableFuture<PacketData> reconstruct_pkt_async(byte[] packet_binary, JsonElement modify) {
+        return mapAsync(requestAsync("reconstruct_pkt", reconstructPktPayload(packet_binary, modify)), this::packetFromJson);
+    }
+
+    private JsonArray reconstructPktPayload(byte[] packet_binary, JsonElement modify) {
         JsonArray param = new JsonArray();
         param.add(version_handler);
-        param.add(Base64.getEncoder().encodeToString(packet_binary));
+        param.add(base64Encoder.encodeToString(packet_binary));
         param.add(modify);
-        JsonElement result = request("reconstruct_pkt", param);
-        return result.getAsJsonObject();
+        return param;
     }
 
     private PacketData packetFromJson(JsonElement packet) {
@@ -310,6 +512,24 @@ public class ScapyServerClient {
         }
     }
 
+    /** gets content of several templates in one batch. result is null for failed templates */
+    public List<String> getTemplates(List<JsonObject> templates) {
+        List<String> methods = new ArrayList<>();
+        List<JsonElement> payloads = new ArrayList<>();
+        for (JsonObject t : templates) {
+            JsonArray params = new JsonArray();
+            params.add(version_handler);
+            params.add(t);
+            methods.add("get_template");
+            payloads.add(params);
+        }
+        List<String> res = new ArrayList<>();
+        for (JsonElement content : requestBatch(methods, payloads)) {
+            res.add(content != null ? gson.fromJson(content, String.class) : null);
+        }
+        return res;
+    }
+
     public String getTemplate(JsonObject t) {
         try {
             JsonArray params = new JsonArray();
@@ -23,6 +23,10 @@ public class ConfigurationService {
 
     private String templatesLocation = null;
 
+    private String cacheLocation = null;
+
+    private long metricsLogInterval = 0;
+
     public boolean isStandaloneMode() {
         return ApplicationMode.STANDALONE.equals(applicationMode);
     }
@@ -34,6 +38,7 @@ public class ConfigurationService {
 
     private static final String  APP_DATA_PATH = File.separator + "TRex" + File.separator + "trex" + File.separator;
     private static final String  TEMPLATES_PATH = "templates" + File.separator;
+    private static final String  CACHE_PATH = "cache" + File.separator;
     private static final boolean OS_IS_WINDOWS = System.getProperty("os.name").toLowerCase().contains("win");
 
     public static boolean isNullOrEmpty(String data) {
@@ -57,6 +62,16 @@ public class ConfigurationService {
         }
     }
     
+    @Inject(optional = true)
+    public void setMetricsLogInterval(@Named("SCAPY_METRICS_LOG_INTERVAL") String metricsLogInterval) {
+        this.metricsLogInterval = Long.parseLong(metricsLogInterval.trim());
+    }
+
+    /** seconds between dumps of scapy_server call metrics to the log, 0 disables the dump */
+    public long getMetricsLogInterval() {
+        return metricsLogInterval;
+    }
+
     public String getConnectionUrl() {
         return protocol + "://" + host + ":" + connectionPort;
     }
@@ -108,15 +123,19 @@ public class ConfigurationService {
         this.saveLocation = saveLocation;
     }
 
+    private static String getAppDataLocation() {
+        String path = System.getProperty( "user.home" );
+        if (OS_IS_WINDOWS) {
+            if (isNullOrEmpty(System.getenv("LOCALAPPDATA"))) {
+                path = System.getenv("LOCALAPPDATA") ;
+            }
+        }
+        return path + APP_DATA_PATH;
+    }
+
     public String getTemplatesLocation() {
         if (isNullOrEmpty(templatesLocation)) {
-            String path = System.getProperty( "user.home" );
-            if (OS_IS_WINDOWS) {
-                if (isNullOrEmpty(System.getenv("LOCALAPPDATA"))) {
-                    path = System.getenv("LOCALAPPDATA") ;
-                }
-            }
-            templatesLocation = path + APP_DATA_PATH + TEMPLATES_PATH;
+            templatesLocation = getAppDataLocation() + TEMPLATES_PATH;
         }
         return templatesLocation;
     }
@@ -125,4 +144,16 @@ public class ConfigurationService {
         this.templatesLocation = templatesLocation;
     }
 
+    /** directory for data cached between application runs, like scapy definitions */
+    public String getCacheLocation() {
+        if (isNullOrEmpty(cacheLocation)) {
+            cacheLocation = getAppDataLocation() + CACHE_PATH;
+        }
+        return cacheLocation;
+    }
+
+    public void setCacheLocation(String cacheLocation) {
+        this.cacheLocation = cacheLocation;
+    }
+
 }
@@ -0,0 +1,204 @@
+package com.xored.javafx.packeteditor.service;
+
+import com.google.common.eventbus.EventBus;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.xored.javafx.packeteditor.data.user.Document;
+import com.xored.javafx.packeteditor.data.user.DocumentFile;
+import com.xored.javafx.packeteditor.guice.HeadlessModule;
+import com.xored.javafx.packeteditor.scapy.ConnectionException;
+import com.xored.javafx.packeteditor.scapy.PacketData;
+import com.xored.javafx.packeteditor.scapy.PcapWriter;
+import com.xored.javafx.packeteditor.scapy.ScapyServerClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Compiles .trp documents to pcap and TRex stream JSON without UI.
+ * Documents are built concurrently, each one over a connection taken from the pool of scapy_server connections.
+ */
+public class DocumentCompiler implements Closeable {
+    static Logger logger = LoggerFactory.getLogger(DocumentCompiler.class);
+
+    public static final String PCAP_EXTENSION = ".pcap";
+    public static final String STREAM_EXTENSION = ".json";
+
+    private final Gson gson = new GsonBuilder().setPrettyPrinting().create();
+    private final IMetadataService metadataService;
+    private final List<PacketDataService> connections;
+    private final BlockingQueue<PacketDataService> idleConnections;
+
+    /** compilation result of a document. error is null on success */
+    public static class Result {
+        public final File document;
+        public final File pcap;
+        public final File stream;
+        public final String error;
+
+        Result(File document, File pcap, File stream, String error) {
+            this.document = document;
+            this.pcap = pcap;
+            this.stream = stream;
+            this.error = error;
+        }
+
+        public boolean isSuccess() {
+            return error == null;
+        }
+    }
+
+    public DocumentCompiler(IMetadataService metadataService, List<PacketDataService> connections) {
+        if (connections.isEmpty()) {
+            throw new IllegalArgumentException("at least one connection is required");
+        }
+        this.metadataService = metadataService;
+        this.connections = new ArrayList<>(connections);
+        idleConnections = new LinkedBlockingQueue<>(connections);
+    }
+
+    /**
+     * opens a pool of connections to scapy_server. metadata is loaded once by the first connection
+     * @param serverAddress host:port or null for the configured server
+     */
+    public static DocumentCompiler connect(int connections, String serverAddress) {
+        return connect(connections, serverAddress, null);
+    }
+
+    /** @param metadataService metadata shared by connections or null to load it from the server */
+    public static DocumentCompiler connect(int connections, String serverAddress, IMetadataService metadataService) {
+        List<PacketDataService> services = new ArrayList<>();
+        IMetadataService sharedMetadata = metadataService;
+        try {
+            for (int i = 0; i < connections; i++) {
+                Injector injector = Guice.createInjector(new HeadlessModule(sharedMetadata));
+                EventBus eventBus = injector.getInstance(EventBus.class);
+                PacketDataService service = injector.getInstance(PacketDataService.class);
+                eventBus.register(service);
+                if (sharedMetadata == null) {
+                    sharedMetadata = injector.getInstance(IMetadataService.class);
+                    eventBus.register(sharedMetadata);
+                }
+                ConfigurationService configurationService = injector.getInstance(ConfigurationService.class);
+                if (serverAddress != null) {
+                    String[] parts = serverAddress.split(":");
+                    configurationService.setConnectionHost(parts[0]);
+                    configurationService.setConnectionPort(parts[1]);
+                }
+                ScapyServerClient scapy = injector.getInstance(ScapyServerClient.class);
+                scapy.connect();
+                services.add(service);
+                if (!scapy.isConnected()) {
+                    throw new ConnectionException("Unable to connect to scapy_server at " + scapy.getConnectionUrl());
+                }
+            }
+        } catch (RuntimeException e) {
+            services.forEach(PacketDataService::closeConnection);
+            throw e;
+        }
+        logger.info("opened {} connections to scapy_server", connections);
+        return new DocumentCompiler(sharedMetadata, services);
+    }
+
+    /** returns .trp files of the directories and files themselves, sorted by path */
+    public static List<File> collectDocuments(List<File> paths) {
+        List<File> res = new ArrayList<>();
+        for (File path : paths) {
+            if (path.isDirectory()) {
+                File[] files = path.listFiles((dir, name) -> name.endsWith(DocumentFile.FILE_EXTENSION));
+                if (files != null) {
+                    res.addAll(Arrays.asList(files));
+                }
+            } else {
+                res.add(path);
+            }
+        }
+        res.sort(Comparator.comparing(File::getPath));
+        return res;
+    }
+
+    /**
+     * compiles documents concurrently, one document per connection at a time
+     * @param outDir directory for the results or null to write them next to documents
+     * @return results in the order of documents
+     */
+    public List<Result> compileAll(List<File> documents, File outDir) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(connections.size(), Math.max(1, documents.size())));
+        try {
+            List<Future<Result>> futures = new ArrayList<>();
+            for (File document : documents) {
+                futures.add(executor.submit(() -> compile(document, outDir)));
+            }
+            List<Result> res = new ArrayList<>();
+            for (Future<Result> future : futures) {
+                try {
+                    res.add(future.get());
+                } catch (ExecutionException e) {
+                    // compile reports errors in the result
+                    throw new IllegalStateException(e.getCause());
+                }
+            }
+            return res;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /** compiles a document to &lt;name&gt;.pcap with the packet and &lt;name&gt;.json with the packet and its field engine */
+    public Result compile(File document, File outDir) throws InterruptedException {
+        String name = document.getName();
+        if (name.endsWith(DocumentFile.FILE_EXTENSION)) {
+            name = name.substring(0, name.length() - DocumentFile.FILE_EXTENSION.length());
+        }
+        File dir = outDir != null ? outDir : document.getAbsoluteFile().getParentFile();
+        File pcap = new File(dir, name + PCAP_EXTENSION);
+        File stream = new File(dir, name + STREAM_EXTENSION);
+
+        PacketDataService packetDataService = idleConnections.take();
+        try {
+            Document doc = DocumentFile.loadFromFile(document, metadataService);
+            PacketData pkt = packetDataService.buildPacket(doc.buildScapyModel(), doc.getVmInstructionsModel());
+            String feError = pkt.getFieldEngineError();
+            if (feError != null) {
+                return new Result(document, null, null, "Field engine error: " + feError);
+            }
+            try (PcapWriter writer = PcapWriter.create(pcap)) {
+                writer.writePacket(pkt.getPacketBytes());
+            }
+            Files.write(stream.toPath(), gson.toJson(toStream(pkt)).getBytes(StandardCharsets.UTF_8));
+            return new Result(document, pcap, stream, null);
+        } catch (IOException | RuntimeException e) {
+            logger.error("failed to compile {}: {}", document, e);
+            return new Result(document, null, null, e.getMessage() != null ? e.getMessage() : e.toString());
+        } finally {
+            idleConnections.add(packetDataService);
+        }
+    }
+
+    /** packet in the format of TRex stream: base64 binary and field engine program */
+    JsonObject toStream(PacketData pkt) {
+        JsonObject packet = new JsonObject();
+        packet.addProperty("binary", pkt.binary);
+        packet.addProperty("meta", "");
+        Map<String, Object> vm = pkt.field_engine != null && pkt.field_engine.has("instructions") ? pkt.getPktVmInstructions() : Collections.emptyMap();
+        JsonObject res = new JsonObject();
+        res.add("packet", packet);
+        res.add("vm", gson.toJsonTree(vm));
+        return res;
+    }
+
+    @Override
+    public void close() {
+        connections.forEach(PacketDataService::closeConnection);
+    }
+}
@@ -0,0 +1,290 @@
+package com.xored.javafx.packeteditor.service;
+
+import com.google.common.base.Strings;
+import com.google.gson.JsonElement;
+import com.xored.javafx.packeteditor.data.FEInstructionParameter2;
+import com.xored.javafx.packeteditor.data.FeParameter;
+import com.xored.javafx.packeteditor.data.InstructionExpression;
+
+import java.math.BigInteger;
+import java.util.*;
+
+/**
+ * Estimates the cost of a field engine program before it is deployed to TRex:
+ * size of the variant space, per-packet work of the VM and the resulting per-core packet rate.
+ * The rate is a rough model of a TRex core, it is meant to compare programs, not to predict exact numbers.
+ */
+public class FieldEngineCostAnalyzer {
+
+    /** TRex replays cached packets without running the program */
+    public static final String CACHE_SIZE = "cache_size";
+
+    /** larger caches are not recommended, they take tester memory per stream */
+    public static final int MAX_RECOMMENDED_CACHE_SIZE = 10000;
+
+    // nanoseconds of a TRex core per packet
+    static final double BASE_NANOS = 40;
+    static final double VM_PACKET_NANOS = 20;
+    static final double CACHED_PACKET_NANOS = 5;
+    static final double FLOW_VAR_NANOS = 4;
+    static final double RANDOM_NANOS = 8;
+    static final double WRITE_NANOS = 3;
+    static final double WRITE_BYTE_NANOS = 0.5;
+    static final double FIX_IPV4_NANOS = 12;
+    static final double FIX_HW_NANOS = 2;
+    static final double TRIM_NANOS = 3;
+    static final double TUPLE_NANOS = 10;
+
+    /** cost estimation of a program */
+    public static class Report {
+        /** number of distinct packets the program can produce */
+        public final BigInteger distinctPackets;
+        public final int instructionsPerPacket;
+        public final int checksumFixups;
+        public final int bytesWritten;
+        /** 0 if cache is disabled */
+        public final long cacheSize;
+        /** cache size covering the whole variant space or 0 if it is too large */
+        public final long recommendedCacheSize;
+        public final long packetsPerSecond;
+
+        Report(BigInteger distinctPackets, int instructionsPerPacket, int checksumFixups, int bytesWritten,
+               long cacheSize, long recommendedCacheSize, long packetsPerSecond) {
+            this.distinctPackets = distinctPackets;
+            this.instructionsPerPacket = instructionsPerPacket;
+            this.checksumFixups = checksumFixups;
+            this.bytesWritten = bytesWritten;
+            this.cacheSize = cacheSize;
+            this.recommendedCacheSize = recommendedCacheSize;
+            this.packetsPerSecond = packetsPerSecond;
+        }
+
+        /** true if every packet of the program is served from the cache */
+        public boolean isCacheCovering() {
+            return cacheSize > 0 && distinctPackets.compareTo(BigInteger.valueOf(cacheSize)) <= 0;
+        }
+
+        public String getSummary() {
+            StringBuilder sb = new StringBuilder()
+                    .append(distinctPackets).append(" distinct packets, ")
+                    .append(instructionsPerPacket).append(" instructions, ")
+                    .append(checksumFixups).append(" checksum fix-ups, ")
+                    .append(bytesWritten).append(" bytes written per packet, ")
+                    .append(String.format(Locale.ROOT, "~%.1f Mpps per core", packetsPerSecond / 1e6));
+            if (isCacheCovering()) {
+                sb.append(", served from cache");
+            } else if (recommendedCacheSize > 0) {
+                sb.append(", cache_size ").append(recommendedCacheSize).append(" would cover all packets");
+            }
+            return sb.toString();
+        }
+
+        @Override
+        public String toString() {
+            return getSummary();
+        }
+    }
+
+    /** values of one generator of flow variables */
+    private static class Generator {
+        final BigInteger cycle;
+        final boolean random;
+        boolean used;
+
+        Generator(BigInteger cycle, boolean random) {
+            this.cycle = cycle;
+            this.random = random;
+        }
+    }
+
+    private final Map<String, Generator> generators = new HashMap<>();
+    private final Map<String, Integer> varSizes = new HashMap<>();
+    private int instructionCount;
+    private int checksumFixups;
+    private int bytesWritten;
+    private double programNanos;
+
+    private FieldEngineCostAnalyzer() {
+    }
+
+    public static Report analyze(List<InstructionExpression> instructions, List<FeParameter> parameters) {
+        FieldEngineCostAnalyzer analyzer = new FieldEngineCostAnalyzer();
+        instructions.forEach(analyzer::add);
+        long cacheSize = parameters.stream()
+                .filter(parameter -> CACHE_SIZE.equals(parameter.getId()))
+                .map(parameter -> parseNumber(parameter.getValue(), 0))
+                .findFirst().orElse(0L);
+        return analyzer.report(cacheSize);
+    }
+
+    /** parameter values of the instruction, defaults for empty ones */
+    static Map<String, String> parameterValues(InstructionExpression instruction) {
+        Map<String, String> params = new HashMap<>();
+        for (FEInstructionParameter2 parameter : instruction.getParameters()) {
+            JsonElement value = parameter.getValue();
+            String str = value != null && !value.isJsonNull() ? value.getAsString() : "";
+            params.put(parameter.getId(), Strings.isNullOrEmpty(str) ? parameter.getDefaultValue() : str);
+        }
+        return params;
+    }
+
+    private void add(InstructionExpression instruction) {
+        Map<String, String> params = parameterValues(instruction);
+        instructionCount++;
+        switch (instruction.getId()) {
+            case "STLVmFlowVar": {
+                int size = (int) parseNumber(params.get("size"), 4);
+                BigInteger range = range(params.get("min_value"), params.get("max_value"), size);
+                String op = Strings.isNullOrEmpty(params.get("op")) ? "inc" : params.get("op");
+                if ("random".equals(op)) {
+                    addVar(params.get("name"), size, new Generator(range, true));
+                    programNanos += RANDOM_NANOS;
+                } else {
+                    BigInteger step = BigInteger.valueOf(parseNumber(params.get("step"), 1)).mod(range);
+                    BigInteger cycle = step.signum() == 0 ? BigInteger.ONE : range.divide(range.gcd(step));
+                    addVar(params.get("name"), size, new Generator(cycle, false));
+                    programNanos += FLOW_VAR_NANOS;
+                }
+                break;
+            }
+            case "STLVmFlowVarRepetableRandom":
+            case "STLVmFlowVarRepeatableRandom": {
+                int size = (int) parseNumber(params.get("size"), 4);
+                BigInteger range = range(params.get("min_value"), params.get("max_value"), size);
+                BigInteger limit = BigInteger.valueOf(parseNumber(params.get("limit"), 100));
+                addVar(params.get("name"), size, new Generator(range.min(limit), false));
+                programNanos += RANDOM_NANOS;
+                break;
+            }
+            case "STLVmTupleGen": {
+                BigInteger ips = range(params.get("ip_min"), params.get("ip_max"), 4);
+                BigInteger ports = range(params.get("port_min"), params.get("port_max"), 2);
+                BigInteger cycle = ips.multiply(ports);
+                long limit = parseNumber(params.get("limit_flows"), 0);
+                if (limit > 0) {
+                    cycle = cycle.min(BigInteger.valueOf(limit));
+                }
+                Generator generator = new Generator(cycle, false);
+                String name = params.get("name");
+                generators.put(name + ".ip", generator);
+                varSizes.put(name + ".ip", 4);
+                generators.put(name + ".port", generator);
+                varSizes.put(name + ".port", 2);
+                programNanos += TUPLE_NANOS;
+                break;
+            }
+            case "STLVmWrFlowVar":
+                write(params.get("fv_name"), varSizes.getOrDefault(params.get("fv_name"), 4));
+                break;
+            case "STLVmWrMaskFlowVar":
+                write(params.get("fv_name"), (int) parseNumber(params.get("pkt_cast_size"), 1));
+                break;
+            case "STLVmFixIpv4":
+                checksumFixups++;
+                bytesWritten += 2;
+                programNanos += FIX_IPV4_NANOS;
+                break;
+            case "STLVmFixChecksumHw":
+                // computed by the NIC, only offload flags are set
+                checksumFixups++;
+                programNanos += FIX_HW_NANOS;
+                break;
+            case "STLVmTrimPktSize":
+                use(params.get("fv_name"));
+                programNanos += TRIM_NANOS;
+                break;
+            default:
+                programNanos += FLOW_VAR_NANOS;
+        }
+    }
+
+    private void addVar(String name, int size, Generator generator) {
+        generators.put(name, generator);
+        varSizes.put(name, size);
+    }
+
+    private void write(String name, int size) {
+        use(name);
+        bytesWritten += size;
+        programNanos += WRITE_NANOS + size * WRITE_BYTE_NANOS;
+    }
+
+    private void use(String name) {
+        Generator generator = generators.get(name);
+        if (generator != null) {
+            generator.used = true;
+        }
+    }
+
+    private Report report(long cacheSize) {
+        // all variables step on every packet: sequences repeat after the lcm of their cycles,
+        // random values are independent of them
+        BigInteger period = BigInteger.ONE;
+        BigInteger randomSpace = BigInteger.ONE;
+        for (Generator generator : new LinkedHashSet<>(generators.values())) {
+            if (!generator.used) {
+                continue;
+            }
+            if (generator.random) {
+                randomSpace = randomSpace.multiply(generator.cycle);
+            } else {
+                period = period.divide(period.gcd(generator.cycle)).multiply(generator.cycle);
+            }
+        }
+        BigInteger distinctPackets = period.multiply(randomSpace);
+
+        long recommendedCacheSize = distinctPackets.compareTo(BigInteger.valueOf(MAX_RECOMMENDED_CACHE_SIZE)) <= 0
+                && instructionCount > 0 ? distinctPackets.longValue() : 0;
+
+        double nanos = BASE_NANOS;
+        if (cacheSize > 0 && distinctPackets.compareTo(BigInteger.valueOf(cacheSize)) <= 0) {
+            nanos += CACHED_PACKET_NANOS;
+        } else if (instructionCount > 0) {
+            nanos += VM_PACKET_NANOS + programNanos;
+        }
+        return new Report(distinctPackets, instructionCount, checksumFixups, bytesWritten,
+                cacheSize, recommendedCacheSize, (long) (1e9 / nanos));
+    }
+
+    /** number of values in [min, max] of an unsigned variable of size bytes */
+    private static BigInteger range(String min, String max, int size) {
+        BigInteger mask = mask(size);
+        BigInteger minValue = parseBig(min, BigInteger.ZERO).and(mask);
+        BigInteger maxValue = parseBig(max, mask).and(mask);
+        if (maxValue.compareTo(minValue) < 0) {
+            return BigInteger.ONE;
+        }
+        return maxValue.subtract(minValue).add(BigInteger.ONE);
+    }
+
+    static BigInteger mask(int size) {
+        return BigInteger.ONE.shiftLeft(size * 8).subtract(BigInteger.ONE);
+    }
+
+    static long parseNumber(String value, long defaultValue) {
+        return parseBig(value, BigInteger.valueOf(defaultValue)).longValue();
+    }
+
+    /** decimal, 0x hex and dotted IPv4 values as accepted by TRex */
+    static BigInteger parseBig(String value, BigInteger defaultValue) {
+        if (Strings.isNullOrEmpty(value)) {
+            return defaultValue;
+        }
+        String str = value.trim();
+        try {
+            if (str.startsWith("0x") || str.startsWith("0X")) {
+                return new BigInteger(str.substring(2), 16);
+            }
+            if (str.contains(".")) {
+                BigInteger res = BigInteger.ZERO;
+                for (String octet : str.split("\\.")) {
+                    res = res.shiftLeft(8).add(BigInteger.valueOf(Integer.parseInt(octet) & 0xff));
+                }
+                return res;
+            }
+            return new BigInteger(str);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package com.xored.javafx.packeteditor.service;
+
+import com.google.common.base.Strings;
+import com.xored.javafx.packeteditor.data.FeParameter;
+import com.xored.javafx.packeteditor.data.InstructionExpression;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static com.xored.javafx.packeteditor.service.FieldEngineCostAnalyzer.mask;
+import static com.xored.javafx.packeteditor.service.FieldEngineCostAnalyzer.parseBig;
+import static com.xored.javafx.packeteditor.service.FieldEngineCostAnalyzer.parseNumber;
+
+/**
+ * Shows how split_by_var distributes the range of a flow variable over TRex cores.
+ * The range is split into contiguous sub-ranges, the first cores take the remainder.
+ */
+public class FieldEngineSplitPreview {
+
+    public static final String SPLIT_BY_VAR = "split_by_var";
+
+    /** number of the first values of per-core sequences */
+    public static final int SEQUENCE_LENGTH = 5;
+
+    /** difference of per-core value counts considered as unbalanced */
+    static final double MAX_IMBALANCE = 0.1;
+
+    /** values of the split variable generated by a core */
+    public static class CoreRange {
+        public final int core;
+        public final BigInteger min;
+        public final BigInteger max;
+        public final BigInteger count;
+        /** first values generated by the core, empty for random variables */
+        public final List<BigInteger> sequence;
+
+        CoreRange(int core, BigInteger min, BigInteger max, BigInteger count, List<BigInteger> sequence) {
+            this.core = core;
+            this.min = min;
+            this.max = max;
+            this.count = count;
+            this.sequence = sequence;
+        }
+
+        public boolean isIdle() {
+            return count.signum() == 0;
+        }
+
+        @Override
+        public String toString() {
+            if (isIdle()) {
+                return "core " + core + ": idle";
+            }
+            StringBuilder sb = new StringBuilder("core ").append(core).append(": ")
+                    .append(min).append("-").append(max).append(" (").append(count).append(" values)");
+            if (!sequence.isEmpty()) {
+                sb.append(" ");
+                sequence.forEach(value -> sb.append(value).append(", "));
+                sb.append("...");
+            }
+            return sb.toString();
+        }
+    }
+
+    public static class Preview {
+        /** null if the split variable is not found */
+        public final String variable;
+        public final List<CoreRange> cores;
+        public final List<String> warnings;
+
+        Preview(String variable, List<CoreRange> cores, List<String> warnings) {
+            this.variable = variable;
+            this.cores = cores;
+            this.warnings = warnings;
+        }
+
+        public boolean isValid() {
+            return warnings.isEmpty();
+        }
+
+        public String getSummary() {
+            StringBuilder sb = new StringBuilder();
+            cores.forEach(core -> sb.append(core).append("\n"));
+            warnings.forEach(warning -> sb.append("Warning: ").append(warning).append("\n"));
+            return sb.toString().trim();
+        }
+
+        @Override
+        public String toString() {
+            return getSummary();
+        }
+    }
+
+    private FieldEngineSplitPreview() {
+    }
+
+    /** preview of the split_by_var global parameter */
+    public static Preview preview(List<InstructionExpression> instructions, List<FeParameter> parameters, int cores) {
+        String variable = parameters.stream()
+                .filter(parameter -> SPLIT_BY_VAR.equals(parameter.getId()))
+                .map(FeParameter::getValue)
+                .findFirst().orElse(null);
+        return preview(instructions, variable, cores);
+    }
+
+    public static Preview preview(List<InstructionExpression> instructions, String variable, int cores) {
+        if (cores < 1) {
+            throw new IllegalArgumentException("Number of cores should be positive: " + cores);
+        }
+        if (Strings.isNullOrEmpty(variable)) {
+            return warning(null, "split_by_var is not set, every core generates the same packets");
+        }
+        Map<String, String> flowVar = null;
+        for (InstructionExpression instruction : instructions) {
+            Map<String, String> params = FieldEngineCostAnalyzer.parameterValues(instruction);
+            if ("STLVmFlowVar".equals(instruction.getId()) && variable.equals(params.get("name"))) {
+                flowVar = params;
+            }
+        }
+        if (flowVar == null) {
+            return warning(variable, "split variable " + variable + " is not a flow variable of the program");
+        }
+
+        int size = (int) parseNumber(flowVar.get("size"), 4);
+        BigInteger min = parseBig(flowVar.get("min_value"), BigInteger.ZERO).and(mask(size));
+        BigInteger max = parseBig(flowVar.get("max_value"), mask(size)).and(mask(size)).max(min);
+        String op = Strings.isNullOrEmpty(flowVar.get("op")) ? "inc" : flowVar.get("op");
+        boolean random = "random".equals(op);
+        boolean inc = !"dec".equals(op);
+        BigInteger step = parseBig(flowVar.get("step"), BigInteger.ONE);
+        BigInteger init = parseBig(flowVar.get("init_value"), inc ? min : max);
+
+        BigInteger total = max.subtract(min).add(BigInteger.ONE);
+        BigInteger[] division = total.divideAndRemainder(BigInteger.valueOf(cores));
+        BigInteger base = division[0];
+        int remainder = division[1].intValue();
+
+        List<CoreRange> ranges = new ArrayList<>();
+        BigInteger start = min;
+        for (int core = 0; core < cores; core++) {
+            BigInteger count = core < remainder ? base.add(BigInteger.ONE) : base;
+            BigInteger end = start.add(count).subtract(BigInteger.ONE);
+            List<BigInteger> sequence = random || count.signum() == 0
+                    ? Collections.<BigInteger>emptyList()
+                    : sequence(start, end, count, init, step, inc);
+            ranges.add(new CoreRange(core, start, end, count, sequence));
+            start = end.add(BigInteger.ONE);
+        }
+
+        List<String> warnings = new ArrayList<>();
+        if (base.signum() == 0) {
+            warnings.add(variable + " has " + total + " values, " + (cores - remainder) + " of " + cores + " cores stay idle");
+        } else if (remainder > 0 && BigInteger.ONE.doubleValue() / base.doubleValue() > MAX_IMBALANCE) {
+            warnings.add("unbalanced split: cores get " + base.add(BigInteger.ONE) + " or " + base + " values of " + variable);
+        }
+        if (!random && base.signum() > 0) {
+            BigInteger smallest = base;
+            BigInteger s = step.mod(smallest);
+            BigInteger cycle = s.signum() == 0 ? BigInteger.ONE : smallest.divide(smallest.gcd(s));
+            if (cycle.compareTo(smallest) < 0) {
+                warnings.add("step " + step + " repeats " + cycle + " of " + smallest + " values of a core");
+            }
+        }
+        return new Preview(variable, ranges, warnings);
+    }
+
+    private static Preview warning(String variable, String warning) {
+        return new Preview(variable, Collections.emptyList(), Collections.singletonList(warning));
+    }
+
+    /** first values of an inc or dec variable wrapped in [min, max] */
+    private static List<BigInteger> sequence(BigInteger min, BigInteger max, BigInteger count, BigInteger init, BigInteger step, boolean inc) {
+        BigInteger value = init.compareTo(min) >= 0 && init.compareTo(max) <= 0 ? init : (inc ? min : max);
+        BigInteger delta = inc ? step : step.negate();
+        List<BigInteger> res = new ArrayList<>();
+        for (int i = 0; i < SEQUENCE_LENGTH; i++) {
+            res.add(value);
+            value = value.subtract(min).add(delta).mod(count).add(min);
+        }
+        return res;
+    }
+}
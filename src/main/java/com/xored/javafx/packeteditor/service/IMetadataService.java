@@ -21,6 +21,8 @@ public interface IMetadataService {
 
     List<String> getAllowedPayloadForProtocol(String protocolId);
 
+    boolean isAllowedPayload(String protocolId, String payloadId);
+
     Map<String, FEInstructionParameterMeta> getFeInstructionParameters();
 
     List<InstructionsTemplate> getFeInstructionsTemplates();
@@ -0,0 +1,108 @@
+package com.xored.javafx.packeteditor.service;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.xored.javafx.packeteditor.scapy.ReconstructProtocol;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Cache of load_instruction_parameter_values results.
+ * Value lists depend on the protocol stack and the field engine instructions with all their parameters,
+ * so the key does not include packet field values and edits of them do not invalidate the cache.
+ * Pending requests are cached too, so a prefetched value list is never requested twice.
+ */
+public class InstructionParameterValuesCache {
+    public static final int DEFAULT_MAX_SIZE = 256;
+
+    private final Cache<String, CompletableFuture<Map<String, String>>> cache;
+
+    public InstructionParameterValuesCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    public InstructionParameterValuesCache(long maxSize) {
+        cache = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .build();
+    }
+
+    /** hash of the protocol ids and instruction ids with parameters. parameters are hashed in key order */
+    public String getStructureKey(List<ReconstructProtocol> pktStructure, JsonElement vmInstructionsModel) {
+        Hasher hasher = Hashing.sha256().newHasher();
+        pktStructure.forEach(protocol -> hasher.putString(protocol.id, StandardCharsets.UTF_8).putChar('/'));
+        hasher.putChar('\n');
+        for (JsonElement instruction : getInstructions(vmInstructionsModel)) {
+            JsonObject obj = instruction.getAsJsonObject();
+            hasher.putString(obj.get("id").getAsString(), StandardCharsets.UTF_8).putChar('(');
+            JsonObject parameters = obj.getAsJsonObject("parameters");
+            if (parameters != null) {
+                new TreeMap<>(parameters.entrySet().stream().collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue)))
+                        .forEach((name, value) -> hasher.putString(name, StandardCharsets.UTF_8).putChar('=')
+                                .putString(value.toString(), StandardCharsets.UTF_8).putChar(';'));
+            }
+            hasher.putChar(')');
+        }
+        return hasher.hash().toString();
+    }
+
+    public String getKey(String structureKey, String parameterId) {
+        return structureKey + "/" + parameterId;
+    }
+
+    /** returns cached or pending values, starting the request if there is none */
+    public CompletableFuture<Map<String, String>> get(String key, Supplier<CompletableFuture<Map<String, String>>> request) {
+        CompletableFuture<Map<String, String>> pending = new CompletableFuture<>();
+        CompletableFuture<Map<String, String>> values = cache.asMap().putIfAbsent(key, pending);
+        if (values != null) {
+            return values;
+        }
+        CompletableFuture<Map<String, String>> response;
+        try {
+            response = request.get();
+        } catch (RuntimeException e) {
+            response = new CompletableFuture<>();
+            response.completeExceptionally(e);
+        }
+        response.whenComplete((res, e) -> {
+            if (e != null) {
+                // failed requests are retried next time
+                cache.asMap().remove(key, pending);
+                pending.completeExceptionally(e);
+            } else {
+                pending.complete(res);
+            }
+        });
+        return pending;
+    }
+
+    public void clear() {
+        cache.invalidateAll();
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    private static JsonArray getInstructions(JsonElement vmInstructionsModel) {
+        if (vmInstructionsModel == null || !vmInstructionsModel.isJsonObject()) {
+            return new JsonArray();
+        }
+        JsonObject fieldEngine = vmInstructionsModel.getAsJsonObject().getAsJsonObject("field_engine");
+        if (fieldEngine == null || !fieldEngine.has("instructions") || !fieldEngine.get("instructions").isJsonArray()) {
+            return new JsonArray();
+        }
+        return fieldEngine.getAsJsonArray("instructions");
+    }
+}
@@ -0,0 +1,191 @@
+package com.xored.javafx.packeteditor.service;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+import java.util.Map;
+
+/**
+ * Structural difference between two JSON trees.
+ * Changed object members and array elements are patched by path, strings and arrays of different length
+ * are spliced, so a small change in a large packet produces a small delta.
+ * Delta is a JSON array of operations:
+ * ["set", path, value], ["del", path], ["str", path, prefix, suffix, middle], ["arr", path, start, removed, inserted]
+ */
+final class JsonDelta {
+    static final String SET = "set";
+    static final String DEL = "del";
+    static final String STR = "str";
+    static final String ARR = "arr";
+
+    private JsonDelta() {
+    }
+
+    /** returns operations, which transform from into to */
+    static JsonArray diff(JsonElement from, JsonElement to) {
+        JsonArray ops = new JsonArray();
+        diff(new JsonArray(), from, to, ops);
+        return ops;
+    }
+
+    private static void diff(JsonArray path, JsonElement from, JsonElement to, JsonArray ops) {
+        if (from.equals(to)) {
+            return;
+        }
+        if (from.isJsonObject() && to.isJsonObject()) {
+            JsonObject fromObj = from.getAsJsonObject();
+            JsonObject toObj = to.getAsJsonObject();
+            for (Map.Entry<String, JsonElement> entry : fromObj.entrySet()) {
+                if (!toObj.has(entry.getKey())) {
+                    ops.add(op(DEL, child(path, new JsonPrimitive(entry.getKey()))));
+                }
+            }
+            for (Map.Entry<String, JsonElement> entry : toObj.entrySet()) {
+                JsonArray childPath = child(path, new JsonPrimitive(entry.getKey()));
+                JsonElement fromValue = fromObj.get(entry.getKey());
+                if (fromValue == null) {
+                    ops.add(op(SET, childPath, entry.getValue()));
+                } else {
+                    diff(childPath, fromValue, entry.getValue(), ops);
+                }
+            }
+        } else if (from.isJsonArray() && to.isJsonArray()) {
+            diffArrays(path, from.getAsJsonArray(), to.getAsJsonArray(), ops);
+        } else if (isString(from) && isString(to)) {
+            String fromStr = from.getAsString();
+            String toStr = to.getAsString();
+            int minLen = Math.min(fromStr.length(), toStr.length());
+            int prefix = 0;
+            while (prefix < minLen && fromStr.charAt(prefix) == toStr.charAt(prefix)) {
+                prefix++;
+            }
+            int suffix = 0;
+            while (suffix < minLen - prefix && fromStr.charAt(fromStr.length() - 1 - suffix) == toStr.charAt(toStr.length() - 1 - suffix)) {
+                suffix++;
+            }
+            ops.add(op(STR, path, new JsonPrimitive(prefix), new JsonPrimitive(suffix),
+                    new JsonPrimitive(toStr.substring(prefix, toStr.length() - suffix))));
+        } else {
+            ops.add(op(SET, path, to));
+        }
+    }
+
+    private static void diffArrays(JsonArray path, JsonArray from, JsonArray to, JsonArray ops) {
+        if (from.size() == to.size()) {
+            for (int i = 0; i < from.size(); i++) {
+                diff(child(path, new JsonPrimitive(i)), from.get(i), to.get(i), ops);
+            }
+            return;
+        }
+        int minLen = Math.min(from.size(), to.size());
+        int prefix = 0;
+        while (prefix < minLen && from.get(prefix).equals(to.get(prefix))) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < minLen - prefix && from.get(from.size() - 1 - suffix).equals(to.get(to.size() - 1 - suffix))) {
+            suffix++;
+        }
+        JsonArray inserted = new JsonArray();
+        for (int i = prefix; i < to.size() - suffix; i++) {
+            inserted.add(to.get(i));
+        }
+        ops.add(op(ARR, path, new JsonPrimitive(prefix), new JsonPrimitive(from.size() - prefix - suffix), inserted));
+    }
+
+    /** applies operations to the tree. the tree is modified, returns new root */
+    static JsonElement patch(JsonElement root, JsonArray ops) {
+        for (JsonElement opElement : ops) {
+            JsonArray op = opElement.getAsJsonArray();
+            String type = op.get(0).getAsString();
+            JsonArray path = op.get(1).getAsJsonArray();
+            switch (type) {
+                case SET:
+                    root = replace(root, path, op.get(2));
+                    break;
+                case DEL:
+                    getParent(root, path).getAsJsonObject().remove(path.get(path.size() - 1).getAsString());
+                    break;
+                case STR: {
+                    String str = get(root, path).getAsString();
+                    int prefix = op.get(2).getAsInt();
+                    int suffix = op.get(3).getAsInt();
+                    String value = str.substring(0, prefix) + op.get(4).getAsString() + str.substring(str.length() - suffix);
+                    root = replace(root, path, new JsonPrimitive(value));
+                    break;
+                }
+                case ARR: {
+                    JsonArray array = get(root, path).getAsJsonArray();
+                    int start = op.get(2).getAsInt();
+                    int removed = op.get(3).getAsInt();
+                    JsonArray res = new JsonArray();
+                    for (int i = 0; i < start; i++) {
+                        res.add(array.get(i));
+                    }
+                    res.addAll(op.get(4).getAsJsonArray());
+                    for (int i = start + removed; i < array.size(); i++) {
+                        res.add(array.get(i));
+                    }
+                    root = replace(root, path, res);
+                    break;
+                }
+                default:
+                    throw new IllegalArgumentException("Unknown delta operation: " + type);
+            }
+        }
+        return root;
+    }
+
+    private static JsonElement replace(JsonElement root, JsonArray path, JsonElement value) {
+        if (path.size() == 0) {
+            return value;
+        }
+        JsonElement parent = getParent(root, path);
+        JsonElement key = path.get(path.size() - 1);
+        if (parent.isJsonObject()) {
+            parent.getAsJsonObject().add(key.getAsString(), value);
+        } else {
+            parent.getAsJsonArray().set(key.getAsInt(), value);
+        }
+        return root;
+    }
+
+    private static JsonElement getParent(JsonElement root, JsonArray path) {
+        return get(root, path, path.size() - 1);
+    }
+
+    private static JsonElement get(JsonElement root, JsonArray path) {
+        return get(root, path, path.size());
+    }
+
+    private static JsonElement get(JsonElement root, JsonArray path, int depth) {
+        JsonElement res = root;
+        for (int i = 0; i < depth; i++) {
+            res = res.isJsonObject() ? res.getAsJsonObject().get(path.get(i).getAsString()) : res.getAsJsonArray().get(path.get(i).getAsInt());
+        }
+        return res;
+    }
+
+    private static boolean isString(JsonElement e) {
+        return e.isJsonPrimitive() && e.getAsJsonPrimitive().isString();
+    }
+
+    private static JsonArray child(JsonArray path, JsonPrimitive key) {
+        JsonArray res = new JsonArray();
+        res.addAll(path);
+        res.add(key);
+        return res;
+    }
+
+    private static JsonArray op(String type, JsonArray path, JsonElement... args) {
+        JsonArray res = new JsonArray();
+        res.add(type);
+        res.add(path);
+        for (JsonElement arg : args) {
+            res.add(arg);
+        }
+        return res;
+    }
+}
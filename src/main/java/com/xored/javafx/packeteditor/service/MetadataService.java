@@ -13,7 +13,12 @@ import com.xored.javafx.packeteditor.scapy.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 /** provides protocol metadata based on hand-crafted protocol definition file or Scapy definitions */
@@ -23,16 +28,26 @@ public class MetadataService implements IMetadataService {
     @Inject
     ScapyServerClient scapy;
 
+    @Inject
+    ConfigurationService configurationService;
+
     Map<String, ProtocolMetadata> protocols = new HashMap<>();
-    Map<String, List<String>> payload_classes_cache = new HashMap<>();
+    volatile PayloadClassGraph payloadGraph = PayloadClassGraph.EMPTY;
     Map<String, FeParameterMeta> feParametersMeta = new HashMap<>();
     Map<String, InstructionExpressionMeta> feInstructionMetas = new HashMap<>();
     Map<String, FEInstructionParameterMeta> feInstructionParameterMetas = new LinkedTreeMap<>();
     List<InstructionsTemplate> feTemplates = new ArrayList<>();
     
+    /** max get_payload_classes requests in flight during prefetch. scapy server handles them one by one */
+    static final int PREFETCH_WINDOW = 8;
+
+    /** incremented on each connect, so a prefetch for the previous server stops */
+    private final AtomicInteger prefetchGeneration = new AtomicInteger();
+
     @Subscribe
     public void handleScapyConnectedEvent(ScapyClientConnectedEvent event) {
         loadDefinitions();
+        loadPayloadGraph();
     }
 
     public Map<String, ProtocolMetadata> getProtocols() {
@@ -63,7 +78,7 @@ public class MetadataService implements IMetadataService {
         try {
             ScapyDefinitions definitions = null;
             if (scapy.isConnected()) {
-                definitions = scapy.get_definitions();
+                definitions = getDefinitions();
             }
 
             if (definitions.feInstructionParameters != null) {
@@ -109,6 +124,29 @@ public class MetadataService implements IMetadataService {
         }
     }
 
+    /** loads definitions from disk cache, requests them from scapy only if server version is changed */
+    private ScapyDefinitions getDefinitions() {
+        String versionHandler = scapy.getVersionHandler();
+        if (versionHandler == null) {
+            return scapy.get_definitions();
+        }
+        ScapyDefinitionsCache cache = getDefinitionsCache();
+        long start = System.currentTimeMillis();
+        ScapyDefinitions definitions = cache.load(versionHandler);
+        if (definitions != null) {
+            logger.info("Loaded scapy definitions from cache in {} ms", System.currentTimeMillis() - start);
+            return definitions;
+        }
+        definitions = scapy.get_definitions();
+        logger.info("Loaded scapy definitions from server in {} ms", System.currentTimeMillis() - start);
+        cache.save(versionHandler, definitions);
+        return definitions;
+    }
+
+    ScapyDefinitionsCache getDefinitionsCache() {
+        return new ScapyDefinitionsCache(new File(configurationService.getCacheLocation()));
+    }
+
     private InstructionsTemplate buildInstructionsTemplate(ScapyDefinitions.ScapyFETemplate templateData) {
         List<InstructionExpressionMeta> instructions = templateData.instructionIds.stream()
                 .map(feInstructionMetas::get)
@@ -192,13 +230,90 @@ public class MetadataService implements IMetadataService {
 
     @Override
     public List<String> getAllowedPayloadForProtocol(String protocolId) {
-        List<String> res = payload_classes_cache.getOrDefault(protocolId, null);
+        List<String> res = payloadGraph.getAllowedPayload(protocolId);
         if (res == null) {
-            // Too slow, so getting lazily with cache
+            // not prefetched yet
             res = scapy.get_payload_classes(protocolId);
-            payload_classes_cache.put(protocolId, res);
+            addPayloadClasses(Collections.singletonMap(protocolId, res));
         }
         return res;
     }
+
+    @Override
+    public boolean isAllowedPayload(String protocolId, String payloadId) {
+        if (!payloadGraph.contains(protocolId)) {
+            getAllowedPayloadForProtocol(protocolId);
+        }
+        return payloadGraph.isAllowedPayload(protocolId, payloadId);
+    }
+
+    public PayloadClassGraph getPayloadClassGraph() {
+        return payloadGraph;
+    }
+
+    private synchronized void addPayloadClasses(Map<String, List<String>> payloadClasses) {
+        payloadGraph = payloadGraph.merge(payloadClasses);
+    }
+
+    /** loads payload graph from disk cache or starts background prefetch of the whole graph */
+    private void loadPayloadGraph() {
+        int generation = prefetchGeneration.incrementAndGet();
+        payloadGraph = PayloadClassGraph.EMPTY;
+        String versionHandler = scapy.getVersionHandler();
+        if (!scapy.isConnected() || versionHandler == null) {
+            return;
+        }
+        PayloadClassGraph cached = getDefinitionsCache().load("payload_graph", versionHandler, PayloadClassGraph::read);
+        if (cached != null) {
+            addPayloadClasses(cached.toMap());
+        }
+        List<String> missing = protocols.keySet().stream()
+                .filter(id -> !payloadGraph.contains(id))
+                .sorted()
+                .collect(Collectors.toList());
+        if (missing.isEmpty()) {
+            logger.info("Loaded payload classes of {} protocols from cache", payloadGraph.size());
+            return;
+        }
+        Thread prefetch = new Thread(() -> prefetchPayloadClasses(generation, versionHandler, missing), "payload-classes-prefetch");
+        prefetch.setDaemon(true);
+        prefetch.start();
+    }
+
+    private void prefetchPayloadClasses(int generation, String versionHandler, List<String> protocolIds) {
+        long start = System.currentTimeMillis();
+        Semaphore window = new Semaphore(PREFETCH_WINDOW);
+        Map<String, List<String>> fetched = new ConcurrentHashMap<>();
+        List<CompletableFuture<List<String>>> requests = new ArrayList<>();
+        try {
+            for (String protocolId : protocolIds) {
+                window.acquire();
+                if (generation != prefetchGeneration.get()) {
+                    return;
+                }
+                CompletableFuture<List<String>> request = scapy.get_payload_classes_async(protocolId);
+                request.whenComplete((payloads, e) -> {
+                    window.release();
+                    if (e == null) {
+                        fetched.put(protocolId, payloads);
+                    } else {
+                        logger.debug("failed to prefetch payload classes of {}: {}", protocolId, e.getMessage());
+                    }
+                });
+                requests.add(request);
+            }
+            CompletableFuture.allOf(requests.toArray(new CompletableFuture<?>[0])).exceptionally(e -> null).join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        if (generation != prefetchGeneration.get()) {
+            return;
+        }
+        addPayloadClasses(fetched);
+        logger.info("Prefetched payload classes of {} protocols in {} ms", fetched.size(), System.currentTimeMillis() - start);
+        PayloadClassGraph graph = payloadGraph;
+        getDefinitionsCache().save("payload_graph", versionHandler, graph::write);
+    }
 }
 
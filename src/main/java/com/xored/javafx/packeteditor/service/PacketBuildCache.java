@@ -0,0 +1,132 @@
+package com.xored.javafx.packeteditor.service;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.hash.Hashing;
+import com.google.gson.*;
+import com.xored.javafx.packeteditor.scapy.FieldValue;
+import com.xored.javafx.packeteditor.scapy.PacketData;
+import com.xored.javafx.packeteditor.scapy.ReconstructField;
+import com.xored.javafx.packeteditor.scapy.ReconstructProtocol;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded cache of build_pkt results, keyed by a hash of the canonical packet structure and VM instructions.
+ * Packets with random values or python expressions are not cached, since the result may differ for each build.
+ */
+public class PacketBuildCache {
+    public static final int DEFAULT_MAX_SIZE = 256;
+    public static final int DEFAULT_MAX_AGE_SEC = 600;
+
+    final Gson gson = new Gson();
+
+    private final Cache<String, String> cache;
+
+    public PacketBuildCache() {
+        this(DEFAULT_MAX_SIZE, DEFAULT_MAX_AGE_SEC, TimeUnit.SECONDS);
+    }
+
+    public PacketBuildCache(long maxSize, long maxAge, TimeUnit maxAgeUnit) {
+        cache = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(maxAge, maxAgeUnit)
+                .recordStats()
+                .build();
+    }
+
+    /** returns cache key for the packet structure or null if the build result can not be cached */
+    public String getKey(List<ReconstructProtocol> pktStructure, JsonElement extra_options) {
+        if (!isCacheable(pktStructure)) {
+            return null;
+        }
+        String canonical = canonicalize(gson.toJsonTree(pktStructure)) + "\n" + canonicalize(extra_options);
+        return Hashing.sha256().hashString(canonical, StandardCharsets.UTF_8).toString();
+    }
+
+    /** returns a copy of the cached packet or null */
+    public PacketData get(String key) {
+        if (key == null) {
+            return null;
+        }
+        String packetJson = cache.getIfPresent(key);
+        return packetJson != null ? gson.fromJson(packetJson, PacketData.class) : null;
+    }
+
+    public void put(String key, PacketData packet) {
+        if (key != null && packet != null) {
+            // stored serialized, since PacketData is mutable
+            cache.put(key, gson.toJson(packet));
+        }
+    }
+
+    public void clear() {
+        cache.invalidateAll();
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    public long getHitCount() {
+        return cache.stats().hitCount();
+    }
+
+    public long getMissCount() {
+        return cache.stats().missCount();
+    }
+
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    private static boolean isCacheable(List<ReconstructProtocol> pktStructure) {
+        for (ReconstructProtocol protocol : pktStructure) {
+            if (protocol.fields == null) {
+                continue;
+            }
+            for (ReconstructField field : protocol.fields) {
+                FieldValue.ObjectType vtype = FieldValue.getObjectValueType(field.value);
+                if (FieldValue.ObjectType.RANDOM.equals(vtype) || FieldValue.ObjectType.EXPRESSION.equals(vtype)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /** serializes JSON with sorted object keys, so equal structures have equal keys */
+    static String canonicalize(JsonElement element) {
+        if (element == null || element.isJsonNull()) {
+            return "null";
+        }
+        if (element.isJsonObject()) {
+            Map<String, JsonElement> sorted = new TreeMap<>();
+            element.getAsJsonObject().entrySet().forEach(e -> sorted.put(e.getKey(), e.getValue()));
+            StringBuilder sb = new StringBuilder("{");
+            sorted.forEach((k, v) -> {
+                if (sb.length() > 1) {
+                    sb.append(',');
+                }
+                sb.append(new JsonPrimitive(k).toString()).append(':').append(canonicalize(v));
+            });
+            return sb.append('}').toString();
+        }
+        if (element.isJsonArray()) {
+            StringBuilder sb = new StringBuilder("[");
+            for (JsonElement item : element.getAsJsonArray()) {
+                if (sb.length() > 1) {
+                    sb.append(',');
+                }
+                sb.append(canonicalize(item));
+            }
+            return sb.append(']').toString();
+        }
+        return element.toString();
+    }
+}
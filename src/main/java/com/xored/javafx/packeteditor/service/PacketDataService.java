@@ -4,14 +4,20 @@ import com.google.common.eventbus.Subscribe;
 import com.google.gson.JsonElement;
 import com.google.inject.Inject;
 import com.xored.javafx.packeteditor.events.ScapyClientConnectedEvent;
+import com.xored.javafx.packeteditor.metatdata.FieldMetadata;
+import com.xored.javafx.packeteditor.metatdata.ProtocolMetadata;
 import com.xored.javafx.packeteditor.scapy.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.IntPredicate;
 import java.util.stream.Collectors;
 
 import static com.xored.javafx.packeteditor.scapy.ScapyUtils.createReconstructPktPayload;
@@ -21,24 +27,65 @@ public class PacketDataService {
     
     @Inject
     ScapyServerClient scapy;
+
+    @Inject
+    IMetadataService metadataService;
     
     private boolean initialized = false;
 
+    private final LocalDissector localDissector = new LocalDissector();
+    private volatile boolean localDissectionEnabled = true;
+
+    private final PacketBuildCache buildCache = new PacketBuildCache();
+
+    private final InstructionParameterValuesCache parameterValuesCache = new InstructionParameterValuesCache();
+
     @Subscribe
     public void handleScapyConnectedEvent(ScapyClientConnectedEvent event) {
         initialized = true;
+        // server might be different after reconnect
+        buildCache.clear();
+        parameterValuesCache.clear();
+        localDissector.clearUnboundPorts();
     }
     
     public PacketData buildPacket(List<ReconstructProtocol> pktStructure) {
-        return scapy.build_pkt(pktStructure);
+        String key = buildCache.getKey(pktStructure, null);
+        PacketData cached = getCachedPacket(key);
+        if (cached != null) {
+            return cached;
+        }
+        PacketData pkt = scapy.build_pkt(pktStructure);
+        buildCache.put(key, pkt);
+        return pkt;
     }
     
     public PacketData buildPacket(List<ReconstructProtocol> pktStructure, JsonElement extra_options) {
+        String key = buildCache.getKey(pktStructure, extra_options);
+        PacketData cached = getCachedPacket(key);
+        if (cached != null) {
+            return cached;
+        }
+        PacketData pkt;
         try {
-            return scapy.build_pkt_ex(pktStructure, extra_options);
+            pkt = scapy.build_pkt_ex(pktStructure, extra_options);
         } catch (MethodNotFoundException e) {
-            return buildPacket(pktStructure);
+            pkt = scapy.build_pkt(pktStructure);
         }
+        buildCache.put(key, pkt);
+        return pkt;
+    }
+
+    private PacketData getCachedPacket(String key) {
+        PacketData cached = buildCache.get(key);
+        if (key != null) {
+            logger.debug("build cache {}: hits={} misses={}", cached != null ? "hit" : "miss", buildCache.getHitCount(), buildCache.getMissCount());
+        }
+        return cached;
+    }
+
+    public PacketBuildCache getBuildCache() {
+        return buildCache;
     }
     
     public PacketData reconstructPacket(PacketData currentPkt, List<ReconstructProtocol> modify) {
@@ -49,8 +96,134 @@ public class PacketDataService {
         return reconstructPacket(currentPkt, createReconstructPktPayload(path, newValue));
     }
 
+    /** dissects common L2-L4 packets locally, other packets are sent to reconstruct_pkt */
     public PacketData reconstructPacketFromBinary(byte[] bytes) {
-        return scapy.reconstruct_pkt(bytes);
+        PacketData pkt = dissectLocally(bytes);
+        return pkt != null ? pkt : learnUnboundPorts(scapy.reconstruct_pkt(bytes));
+    }
+
+    /**
+     * patches a fixed-width field of pkt without scapy_server, see LocalFieldEncoder.
+     * returns null if the field is not supported or the packet structure would change
+     * @param autoChecksum tells if checksum of the protocol with this index is calculated automatically
+     */
+    public PacketData encodeFieldLocally(PacketData pkt, int protocolIndex, ReconstructField newValue, IntPredicate autoChecksum) {
+        if (!localDissectionEnabled) {
+            return null;
+        }
+        byte[] bytes = LocalFieldEncoder.encode(pkt, protocolIndex, newValue.id, newValue.value, autoChecksum);
+        PacketData res = bytes != null ? dissectLocally(bytes) : null;
+        if (res == null || !sameStructure(pkt, res)) {
+            return null;
+        }
+        res.field_engine = pkt.field_engine;
+        res.vm_instructions_expressions = pkt.vm_instructions_expressions;
+        return res;
+    }
+
+    private static boolean sameStructure(PacketData pkt1, PacketData pkt2) {
+        List<ProtocolData> p1 = pkt1.getProtocols();
+        List<ProtocolData> p2 = pkt2.getProtocols();
+        if (p1.size() != p2.size()) {
+            return false;
+        }
+        for (int i = 0; i < p1.size(); i++) {
+            if (!p1.get(i).id.equals(p2.get(i).id)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void setLocalDissectionEnabled(boolean enabled) {
+        localDissectionEnabled = enabled;
+    }
+
+    /**
+     * returns null if the packet is not covered by LocalDissector
+     * or its fields do not match definitions of the connected scapy server
+     */
+    PacketData dissectLocally(byte[] bytes) {
+        if (!localDissectionEnabled) {
+            return null;
+        }
+        PacketData pkt = localDissector.dissect(bytes);
+        if (pkt == null) {
+            return null;
+        }
+        Map<String, ProtocolMetadata> protocols = metadataService.getProtocols();
+        for (ProtocolData protocol : pkt.getProtocols()) {
+            ProtocolMetadata meta = protocols.get(protocol.id);
+            if (meta == null || !hasFields(meta, protocol)) {
+                logger.debug("{} does not match scapy definitions, using reconstruct_pkt", protocol.id);
+                return null;
+            }
+        }
+        return pkt;
+    }
+
+    /** lets LocalDissector handle next packets of the flow if scapy_server found no application protocol */
+    private PacketData learnUnboundPorts(PacketData pkt) {
+        if (pkt != null && pkt.getProtocols() != null) {
+            localDissector.learnUnboundPorts(pkt);
+        }
+        return pkt;
+    }
+
+    /** true if metadata contains all protocol fields in the same order */
+    private static boolean hasFields(ProtocolMetadata meta, ProtocolData protocol) {
+        Iterator<String> metaIds = meta.getFields().stream().map(FieldMetadata::getId).iterator();
+        for (FieldData field : protocol.getFields()) {
+            boolean found = false;
+            while (!found && metaIds.hasNext()) {
+                found = metaIds.next().equals(field.getId());
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** non-blocking buildPacket. falls back to build_pkt if server does not support build_pkt_ex */
+    public CompletableFuture<PacketData> buildPacketAsync(List<ReconstructProtocol> pktStructure, JsonElement extra_options) {
+        String key = buildCache.getKey(pktStructure, extra_options);
+        PacketData cached = getCachedPacket(key);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        return scapy.build_pkt_ex_async(pktStructure, extra_options)
+                .handle((pkt, e) -> {
+                    if (e == null) {
+                        return CompletableFuture.completedFuture(pkt);
+                    }
+                    Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                    if (cause instanceof MethodNotFoundException) {
+                        return scapy.build_pkt_async(pktStructure);
+                    }
+                    CompletableFuture<PacketData> failed = new CompletableFuture<>();
+                    failed.completeExceptionally(cause);
+                    return failed;
+                })
+                .thenCompose(res -> res)
+                .thenApply(pkt -> {
+                    buildCache.put(key, pkt);
+                    return pkt;
+                });
+    }
+
+    /** non-blocking reconstructPacket */
+    public CompletableFuture<PacketData> reconstructPacketAsync(PacketData currentPkt, List<ReconstructProtocol> modify) {
+        return scapy.reconstruct_pkt_async(currentPkt.getPacketBytes(), modify);
+    }
+
+    /** non-blocking reconstructPacketFromBinary */
+    public CompletableFuture<PacketData> reconstructPacketFromBinaryAsync(byte[] bytes) {
+        PacketData pkt = dissectLocally(bytes);
+        if (pkt != null) {
+            return CompletableFuture.completedFuture(pkt);
+        }
+        return scapy.reconstruct_pkt_async(bytes).thenApply(this::learnUnboundPorts);
     }
 
     public FieldData getRandomFieldValue(String protocolId, String fieldId) {
@@ -92,14 +265,6 @@ public class PacketDataService {
         }
     }
 
-    public byte[] write_pcap_packet(byte[] binaryData) {
-        return scapy.write_pcap_packet(binaryData);
-    }
-
-    public PacketData read_pcap_packet(byte[] binaryData) {
-        return scapy.read_pcap_packet(binaryData);
-    }
-
     public void closeConnection() {
         scapy.closeConnection();
     }
@@ -108,8 +273,43 @@ public class PacketDataService {
         return initialized;
     }
 
+    /** returns cached values or waits for them. values are cached until the packet structure or the instructions change */
     public Map<String, String> loadInstructionParameterValues(List<ReconstructProtocol> pktStructure, JsonElement vmInstructionsModel, String parameterId) {
-        ScapyData values =  scapy.loadInstructionParameterValues(pktStructure, vmInstructionsModel, parameterId);
+        String key = parameterValuesCache.getKey(parameterValuesCache.getStructureKey(pktStructure, vmInstructionsModel), parameterId);
+        CompletableFuture<Map<String, String>> values = parameterValuesCache.get(key, () -> CompletableFuture.completedFuture(
+                toMap(scapy.loadInstructionParameterValues(pktStructure, vmInstructionsModel, parameterId))));
+        try {
+            return values.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /** loads values of the parameters in the background, so value lists are opened without a server round trip */
+    public void prefetchInstructionParameterValues(List<ReconstructProtocol> pktStructure, JsonElement vmInstructionsModel, List<String> parameterIds) {
+        if (!initialized) {
+            return;
+        }
+        String structureKey = parameterValuesCache.getStructureKey(pktStructure, vmInstructionsModel);
+        for (String parameterId : parameterIds) {
+            parameterValuesCache.get(parameterValuesCache.getKey(structureKey, parameterId),
+                    () -> scapy.loadInstructionParameterValuesAsync(pktStructure, vmInstructionsModel, parameterId).thenApply(this::toMap))
+                    .whenComplete((values, e) -> {
+                        if (e != null) {
+                            logger.debug("failed to prefetch values of {}: {}", parameterId, e.getMessage());
+                        }
+                    });
+        }
+    }
+
+    public InstructionParameterValuesCache getParameterValuesCache() {
+        return parameterValuesCache;
+    }
+
+    private Map<String, String> toMap(ScapyData values) {
         return values.map == null ? Collections.emptyMap() : values.map;
     }
 }
@@ -0,0 +1,131 @@
+package com.xored.javafx.packeteditor.service;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.xored.javafx.packeteditor.scapy.PacketData;
+import com.xored.javafx.packeteditor.scapy.PcapReader;
+import com.xored.javafx.packeteditor.scapy.ProtocolData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.function.IntConsumer;
+
+/**
+ * LRU cache of dissected capture packet summaries.
+ * Packets are dissected with reconstruct_pkt on request only, the most recently requested first.
+ * Requests, which were not started before newer ones pushed them out, are forgotten.
+ * Not thread safe, all methods and callbacks are run in the caller thread (callbackExecutor)
+ */
+public class PacketSummaryCache {
+    static Logger logger = LoggerFactory.getLogger(PacketSummaryCache.class);
+
+    public static final int MAX_CACHED = 1024;
+    static final int MAX_IN_FLIGHT = 8;
+    static final int MAX_WANTED = 128;
+
+    private final PcapReader reader;
+    private final PacketDataService packetDataService;
+    private final Executor callbackExecutor;
+    private final IntConsumer onLoaded;
+
+    private final Cache<Integer, String> topProtocols = CacheBuilder.newBuilder().maximumSize(MAX_CACHED).build();
+    /** requested packet indexes, the most recent last */
+    private final LinkedHashSet<Integer> wanted = new LinkedHashSet<>();
+    private final Set<Integer> inFlight = new HashSet<>();
+    private boolean closed = false;
+
+    /**
+     * @param callbackExecutor executor of the thread, which uses the cache
+     * @param onLoaded is called with packet index when its summary is loaded
+     */
+    public PacketSummaryCache(PcapReader reader, PacketDataService packetDataService, Executor callbackExecutor, IntConsumer onLoaded) {
+        this.reader = reader;
+        this.packetDataService = packetDataService;
+        this.callbackExecutor = callbackExecutor;
+        this.onLoaded = onLoaded;
+    }
+
+    /** returns top protocol of the packet or null, if it is not dissected yet. in this case dissection is scheduled */
+    public String getTopProtocol(int index) {
+        String res = topProtocols.getIfPresent(index);
+        if (res == null && !inFlight.contains(index)) {
+            wanted.remove(index);
+            wanted.add(index);
+            if (wanted.size() > MAX_WANTED) {
+                Iterator<Integer> oldest = wanted.iterator();
+                oldest.next();
+                oldest.remove();
+            }
+            dispatch();
+        }
+        return res;
+    }
+
+    /** stores summary of packet dissected elsewhere */
+    public void put(int index, PacketData packet) {
+        topProtocols.put(index, getTopProtocol(packet));
+    }
+
+    public long size() {
+        return topProtocols.size();
+    }
+
+    /** drops pending requests, results of in-flight requests are ignored */
+    public void close() {
+        closed = true;
+        wanted.clear();
+    }
+
+    private void dispatch() {
+        while (!closed && inFlight.size() < MAX_IN_FLIGHT && !wanted.isEmpty()) {
+            Iterator<Integer> it = wanted.iterator();
+            Integer index = null;
+            while (it.hasNext()) {
+                index = it.next();
+            }
+            wanted.remove(index);
+            load(index);
+        }
+    }
+
+    private void load(int index) {
+        byte[] bytes;
+        try {
+            bytes = reader.readPacketData(index);
+        } catch (IOException e) {
+            logger.error("Unable to read packet {}: {}", index, e);
+            topProtocols.put(index, "");
+            return;
+        }
+        inFlight.add(index);
+        packetDataService.reconstructPacketFromBinaryAsync(bytes).whenComplete((packet, error) -> callbackExecutor.execute(() -> {
+            inFlight.remove(index);
+            if (closed) {
+                return;
+            }
+            if (error != null) {
+                logger.debug("Unable to dissect packet {}: {}", index, error);
+                topProtocols.put(index, "");
+            } else {
+                put(index, packet);
+            }
+            onLoaded.accept(index);
+            dispatch();
+        }));
+    }
+
+    /** returns the last protocol, which is not a payload */
+    static String getTopProtocol(PacketData packet) {
+        List<ProtocolData> protocols = packet.getProtocols();
+        for (int i = protocols.size() - 1; i >= 0; i--) {
+            String id = protocols.get(i).id;
+            if (!"Raw".equals(id) && !"Padding".equals(id)) {
+                return id;
+            }
+        }
+        return protocols.isEmpty() ? "" : protocols.get(protocols.size() - 1).id;
+    }
+}
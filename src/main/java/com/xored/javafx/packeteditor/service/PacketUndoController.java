@@ -1,39 +1,97 @@
 package com.xored.javafx.packeteditor.service;
 
+import com.google.gson.JsonElement;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Stack;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.function.Consumer;
+import java.util.function.Function;
 
 /**
- * Manages application undo records
+ * Manages application undo records.
+ * Records are kept as JSON deltas with periodic keyframes.
+ * Recent records also keep the original state object, so undo and redo of them do not decode JSON.
+ * Hot states and decoded top states are counted in the memory budget. When it is exceeded, the oldest hot states are released first,
+ * then the top states, then the oldest records are dropped.
+ * Hot states must not be modified after they are passed to beforeContentReplace
  */
 public class PacketUndoController<T> {
+    public static final long DEFAULT_MEMORY_BUDGET = 32 * 1024 * 1024;
+    public static final int DEFAULT_KEYFRAME_INTERVAL = 16;
+    public static final int DEFAULT_HOT_RECORDS = 32;
+
     private Logger logger = LoggerFactory.getLogger(PacketUndoController.class);
 
-    Stack<T> undoRecords = new Stack<>();
-    Stack<T> redoRecords = new Stack<>();
-    Stack<T> undoingFrom = null;
-    Stack<T> undoingTo = null;
+    UndoHistory undoRecords = new UndoHistory(DEFAULT_KEYFRAME_INTERVAL);
+    UndoHistory redoRecords = new UndoHistory(DEFAULT_KEYFRAME_INTERVAL);
+    UndoHistory undoingFrom = null;
+    UndoHistory undoingTo = null;
     Consumer<T> undoLoad;
+    final Function<T, JsonElement> encoder;
+    final Function<JsonElement, T> decoder;
+    long memoryBudget = DEFAULT_MEMORY_BUDGET;
+    /** recent records, which keep their states in memory. oldest first */
+    Deque<UndoHistory.Record> hotRecords = new ArrayDeque<>();
+    int hotRecordsLimit = DEFAULT_HOT_RECORDS;
 
-    public PacketUndoController(Consumer<T> undoLoad) {
+    public PacketUndoController(Consumer<T> undoLoad, Function<T, JsonElement> encoder, Function<JsonElement, T> decoder) {
         this.undoLoad = undoLoad;
-
+        this.encoder = encoder;
+        this.decoder = decoder;
     }
     /** sets a callback to reload undo data */
     public void setUndoLoad(Consumer<T> undoLoad) { this.undoLoad = undoLoad; }
 
-    private void doUndo(Stack<T> from, Stack<T> to) {
-        if (from.empty()) {
+    /** sets approximate max size of undo and redo records in bytes */
+    public void setMemoryBudget(long memoryBudget) {
+        this.memoryBudget = memoryBudget;
+        enforceMemoryBudget();
+    }
+
+    /** sets how often records are stored completely instead of delta */
+    public void setKeyframeInterval(int keyframeInterval) {
+        undoRecords.setKeyframeInterval(keyframeInterval);
+        redoRecords.setKeyframeInterval(keyframeInterval);
+    }
+
+    /** sets how many recent records keep their states in memory, as long as they fit the memory budget */
+    public void setHotRecordsLimit(int hotRecordsLimit) {
+        this.hotRecordsLimit = hotRecordsLimit;
+        trimHotRecords();
+    }
+
+    /** approximate size of undo and redo records and hot states in bytes */
+    public long getMemoryUsage() {
+        return undoRecords.getMemoryUsage() + redoRecords.getMemoryUsage() + getHotMemoryUsage();
+    }
+
+    private long getHotMemoryUsage() {
+        long res = 0;
+        for (UndoHistory.Record record : hotRecords) {
+            if (record.hotState != null) {
+                res += record.hotStateSize;
+            }
+        }
+        return res;
+    }
+
+    public int getUndoCount() { return undoRecords.size(); }
+
+    public int getRedoCount() { return redoRecords.size(); }
+
+    private void doUndo(UndoHistory from, UndoHistory to) {
+        if (from.isEmpty()) {
             logger.debug("Nothing to undo/redo");
             return;
         }
         try {
             undoingFrom = from;
             undoingTo = to;
-            undoLoad.accept(from.pop());
+            @SuppressWarnings("unchecked")
+            T hotState = (T) from.popHot();
+            undoLoad.accept(hotState != null ? hotState : decoder.apply(from.pop()));
         } catch (Exception e) {
             logger.error("undo/redo failed", e);
         } finally {
@@ -46,11 +104,41 @@ public class PacketUndoController<T> {
     public void beforeContentReplace(T currentState) {
         if (undoingFrom == null) {
             // new user change
-            undoRecords.push(currentState);
+            hotRecords.add(undoRecords.push(encoder.apply(currentState), currentState));
             redoRecords.clear();
         } else if (undoingFrom != null) {
             // undoing or redoing
-            undoingTo.push(currentState);
+            hotRecords.add(undoingTo.push(encoder.apply(currentState), currentState));
+        }
+        trimHotRecords();
+        enforceMemoryBudget();
+    }
+
+    private void trimHotRecords() {
+        // records, which were popped or dropped, have no hot state
+        hotRecords.removeIf(record -> record.hotState == null);
+        while (hotRecords.size() > hotRecordsLimit) {
+            hotRecords.poll().hotState = null;
+        }
+    }
+
+    /** releases hot states and top states, then drops the oldest undo records and the farthest redo records. the latest record is always kept */
+    private void enforceMemoryBudget() {
+        trimHotRecords();
+        while (getMemoryUsage() > memoryBudget && !hotRecords.isEmpty()) {
+            hotRecords.poll().hotState = null;
+        }
+        if (getMemoryUsage() > memoryBudget) {
+            undoRecords.releaseTop();
+            redoRecords.releaseTop();
+        }
+        while (getMemoryUsage() > memoryBudget && undoRecords.size() + redoRecords.size() > 1) {
+            if (undoRecords.size() > 1 || redoRecords.isEmpty()) {
+                undoRecords.removeOldest();
+            } else {
+                redoRecords.removeOldest();
+            }
+            logger.debug("undo history is over budget, oldest record dropped");
         }
     }
 
@@ -63,8 +151,8 @@ public class PacketUndoController<T> {
     }
 
     public void clearHistory() {
+        hotRecords.clear();
         undoRecords.clear();
         redoRecords.clear();
     }
 }
-
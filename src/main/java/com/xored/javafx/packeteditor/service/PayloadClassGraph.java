@@ -0,0 +1,115 @@
+package com.xored.javafx.packeteditor.service;
+
+import com.xored.javafx.packeteditor.scapy.ScapyDefinitionsCache;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Immutable protocol -> allowed payload protocols graph.
+ * Protocols are stored by index, lookups do not allocate and take constant time.
+ */
+public class PayloadClassGraph {
+    public static final PayloadClassGraph EMPTY = new PayloadClassGraph(Collections.emptyMap());
+
+    private final String[] ids;
+    private final Map<String, Integer> indexById;
+    /** payload lists by protocol index, null for protocols without known payloads */
+    private final List<List<String>> payloads;
+    /** allowed payload indexes by protocol index */
+    private final BitSet[] payloadSets;
+
+    private PayloadClassGraph(Map<String, List<String>> graph) {
+        indexById = new HashMap<>();
+        List<String> idList = new ArrayList<>();
+        graph.forEach((protocolId, payloadIds) -> {
+            addId(idList, protocolId);
+            payloadIds.forEach(payloadId -> addId(idList, payloadId));
+        });
+        ids = idList.toArray(new String[idList.size()]);
+        payloads = new ArrayList<>(Collections.nCopies(ids.length, (List<String>) null));
+        payloadSets = new BitSet[ids.length];
+        graph.forEach((protocolId, payloadIds) -> {
+            int idx = indexById.get(protocolId);
+            BitSet set = new BitSet(ids.length);
+            payloadIds.forEach(payloadId -> set.set(indexById.get(payloadId)));
+            payloads.set(idx, Collections.unmodifiableList(new ArrayList<>(payloadIds)));
+            payloadSets[idx] = set;
+        });
+    }
+
+    private void addId(List<String> idList, String id) {
+        if (!indexById.containsKey(id)) {
+            indexById.put(id, idList.size());
+            idList.add(id);
+        }
+    }
+
+    public static PayloadClassGraph of(Map<String, List<String>> graph) {
+        return new PayloadClassGraph(graph);
+    }
+
+    /** returns allowed payloads or null if payloads of the protocol are not known */
+    public List<String> getAllowedPayload(String protocolId) {
+        Integer idx = indexById.get(protocolId);
+        return idx != null ? payloads.get(idx) : null;
+    }
+
+    public boolean contains(String protocolId) {
+        return getAllowedPayload(protocolId) != null;
+    }
+
+    public boolean isAllowedPayload(String protocolId, String payloadId) {
+        Integer idx = indexById.get(protocolId);
+        Integer payloadIdx = indexById.get(payloadId);
+        return idx != null && payloadIdx != null && payloadSets[idx] != null && payloadSets[idx].get(payloadIdx);
+    }
+
+    /** number of protocols with known payloads */
+    public int size() {
+        int res = 0;
+        for (List<String> p : payloads) {
+            if (p != null) {
+                res++;
+            }
+        }
+        return res;
+    }
+
+    /** returns graph with all protocols of the other graph added */
+    public PayloadClassGraph merge(Map<String, List<String>> other) {
+        Map<String, List<String>> graph = toMap();
+        graph.putAll(other);
+        return new PayloadClassGraph(graph);
+    }
+
+    public Map<String, List<String>> toMap() {
+        Map<String, List<String>> res = new LinkedHashMap<>();
+        for (int i = 0; i < ids.length; i++) {
+            if (payloads.get(i) != null) {
+                res.put(ids[i], payloads.get(i));
+            }
+        }
+        return res;
+    }
+
+    public void write(DataOutputStream out) throws IOException {
+        Map<String, List<String>> graph = toMap();
+        out.writeInt(graph.size());
+        for (Map.Entry<String, List<String>> entry : graph.entrySet()) {
+            ScapyDefinitionsCache.writeString(out, entry.getKey());
+            ScapyDefinitionsCache.writeStrings(out, entry.getValue());
+        }
+    }
+
+    public static PayloadClassGraph read(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        Map<String, List<String>> graph = new LinkedHashMap<>();
+        for (int i = 0; i < size; i++) {
+            graph.put(ScapyDefinitionsCache.readString(in), ScapyDefinitionsCache.readStrings(in));
+        }
+        return new PayloadClassGraph(graph);
+    }
+}
@@ -0,0 +1,196 @@
+package com.xored.javafx.packeteditor.service;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stack of JSON states stored as deltas between consecutive states.
+ * Every keyframeInterval-th record is stored completely, so restoring a state applies a bounded number of deltas.
+ * States are written to JSON text only when they are stored completely, sizes of other states are estimated from the tree.
+ * The decoded top state is counted in the memory usage while it is kept.
+ */
+class UndoHistory {
+    /** approximate per-record overhead in bytes */
+    static final int RECORD_OVERHEAD = 64;
+
+    static class Record {
+        final boolean keyframe;
+        /** complete state for keyframes, delta from the previous record otherwise */
+        final String data;
+        /** approximate JSON size of the complete state in chars */
+        final long stateSize;
+        /** decoded state kept in memory for recent records, null if the state should be decoded from data */
+        Object hotState;
+        /** approximate size of the hot state, estimated by its JSON size */
+        long hotStateSize;
+
+        Record(boolean keyframe, String data, long stateSize) {
+            this.keyframe = keyframe;
+            this.data = data;
+            this.stateSize = stateSize;
+        }
+
+        long getMemoryUsage() {
+            return RECORD_OVERHEAD + 2L * data.length();
+        }
+    }
+
+    private final Gson gson = new GsonBuilder().serializeNulls().create();
+    private final JsonParser parser = new JsonParser();
+
+    /** oldest record first */
+    private final List<Record> records = new ArrayList<>();
+    /** decoded top state, null if not known */
+    private JsonElement top;
+    private long memoryUsage;
+    private int keyframeInterval;
+
+    UndoHistory(int keyframeInterval) {
+        this.keyframeInterval = keyframeInterval;
+    }
+
+    void setKeyframeInterval(int keyframeInterval) {
+        this.keyframeInterval = keyframeInterval;
+    }
+
+    /** pushes state. hotState is returned by popHot instead of decoding the record */
+    Record push(JsonElement state, Object hotState) {
+        long stateSize = estimateSize(state);
+        Record record = null;
+        if (!records.isEmpty() && getRecordsSinceKeyframe() + 1 < keyframeInterval) {
+            String delta = gson.toJson(JsonDelta.diff(peek(), state));
+            if (delta.length() < stateSize) {
+                record = new Record(false, delta, stateSize);
+            }
+        }
+        if (record == null) {
+            record = new Record(true, gson.toJson(state), stateSize);
+        }
+        record.hotState = hotState;
+        record.hotStateSize = hotState != null ? RECORD_OVERHEAD + 2L * stateSize : 0;
+        records.add(record);
+        memoryUsage += record.getMemoryUsage();
+        top = state;
+        return record;
+    }
+
+    /** pops the top record, if it has a hot state. returns the hot state or null */
+    Object popHot() {
+        if (records.isEmpty() || records.get(records.size() - 1).hotState == null) {
+            return null;
+        }
+        Record record = records.remove(records.size() - 1);
+        memoryUsage -= record.getMemoryUsage();
+        top = null;
+        Object res = record.hotState;
+        record.hotState = null;
+        return res;
+    }
+
+    JsonElement pop() {
+        JsonElement res = peek();
+        Record record = records.remove(records.size() - 1);
+        record.hotState = null;
+        memoryUsage -= record.getMemoryUsage();
+        top = null;
+        return res;
+    }
+
+    JsonElement peek() {
+        if (top == null && !records.isEmpty()) {
+            top = restore(records.size() - 1);
+        }
+        return top;
+    }
+
+    /** drops the oldest record. the next record becomes a keyframe */
+    void removeOldest() {
+        if (records.size() > 1 && !records.get(1).keyframe) {
+            Record keyframe = new Record(true, gson.toJson(restore(1)), records.get(1).stateSize);
+            memoryUsage += keyframe.getMemoryUsage() - records.get(1).getMemoryUsage();
+            records.set(1, keyframe);
+        }
+        Record removed = records.remove(0);
+        removed.hotState = null;
+        memoryUsage -= removed.getMemoryUsage();
+        if (records.isEmpty()) {
+            top = null;
+        }
+    }
+
+    boolean isEmpty() {
+        return records.isEmpty();
+    }
+
+    int size() {
+        return records.size();
+    }
+
+    void clear() {
+        records.forEach(record -> record.hotState = null);
+        records.clear();
+        top = null;
+        memoryUsage = 0;
+    }
+
+    /** approximate size of stored records and the decoded top state in bytes */
+    long getMemoryUsage() {
+        return memoryUsage + (top != null ? RECORD_OVERHEAD + 2L * records.get(records.size() - 1).stateSize : 0);
+    }
+
+    /** drops the decoded top state. it is decoded again on demand */
+    void releaseTop() {
+        top = null;
+    }
+
+    private int getRecordsSinceKeyframe() {
+        int res = 0;
+        for (int i = records.size() - 1; i >= 0 && !records.get(i).keyframe; i--) {
+            res++;
+        }
+        return res;
+    }
+
+    /** length of compact JSON text of the tree, not counting escapes */
+    static long estimateSize(JsonElement e) {
+        if (e.isJsonObject()) {
+            long res = 1;
+            for (Map.Entry<String, JsonElement> entry : e.getAsJsonObject().entrySet()) {
+                // "key":value,
+                res += entry.getKey().length() + 4 + estimateSize(entry.getValue());
+            }
+            return Math.max(res, 2);
+        }
+        if (e.isJsonArray()) {
+            long res = 1;
+            for (JsonElement item : e.getAsJsonArray()) {
+                res += 1 + estimateSize(item);
+            }
+            return Math.max(res, 2);
+        }
+        if (e.isJsonNull()) {
+            return 4;
+        }
+        JsonPrimitive primitive = e.getAsJsonPrimitive();
+        return primitive.getAsString().length() + (primitive.isString() ? 2 : 0);
+    }
+
+    private JsonElement restore(int idx) {
+        int keyframeIdx = idx;
+        while (!records.get(keyframeIdx).keyframe) {
+            keyframeIdx--;
+        }
+        JsonElement state = parser.parse(records.get(keyframeIdx).data);
+        for (int i = keyframeIdx + 1; i <= idx; i++) {
+            state = JsonDelta.patch(state, parser.parse(records.get(i).data).getAsJsonArray());
+        }
+        return state;
+    }
+}
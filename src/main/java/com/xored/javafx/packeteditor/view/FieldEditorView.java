@@ -8,6 +8,7 @@ import com.xored.javafx.packeteditor.controllers.FieldEditorController;
 import com.xored.javafx.packeteditor.controls.ProtocolField;
 import com.xored.javafx.packeteditor.data.PacketEditorModel;
 import com.xored.javafx.packeteditor.data.combined.CombinedField;
+import com.xored.javafx.packeteditor.data.combined.CombinedModelChanges;
 import com.xored.javafx.packeteditor.data.combined.CombinedProtocol;
 import com.xored.javafx.packeteditor.data.user.UserProtocol;
 import com.xored.javafx.packeteditor.metatdata.BitFlagMetadata;
@@ -32,10 +33,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.ResourceBundle;
-import java.util.Set;
+import java.util.*;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
@@ -69,6 +67,11 @@ public class FieldEditorView {
 
     private List<TitledPane> protocolTitledPanes = new ArrayList<>();
 
+    /** nodes of the current view, used to patch it instead of a full rebuild */
+    private Map<CombinedProtocol, TitledPane> layerPanes = new IdentityHashMap<>();
+    private Map<CombinedField, List<Node>> fieldRows = new IdentityHashMap<>();
+    private VBox protocolsPaneVbox;
+
     // For even/odd background, this is NOT any real field index
     static protected int oddIndex = 0;
 
@@ -161,16 +164,22 @@ public class FieldEditorView {
     
     protected List<Node> buildLayerRows(CombinedProtocol protocol) {
         List<Node> rows = new ArrayList<>();
-        protocol.getFields().stream().forEach(field -> {
-            rows.add(buildFieldRow(field));
-            FieldType type = field.getType();
-            if(BITMASK.equals(type)) {
-                rows.addAll(createBitFlagRows(field));
-            }
-            if(TCP_OPTIONS.equals(type) && field.getScapyFieldData() != null) {
-                rows.addAll(createTCPOptionRows(field));
-            }
-        });
+        protocol.getFields().stream().forEach(field -> rows.addAll(buildFieldRows(field)));
+        return rows;
+    }
+
+    /** builds field row with bit flag or option sub-rows */
+    private List<Node> buildFieldRows(CombinedField field) {
+        List<Node> rows = new ArrayList<>();
+        rows.add(buildFieldRow(field));
+        FieldType type = field.getType();
+        if(BITMASK.equals(type)) {
+            rows.addAll(createBitFlagRows(field));
+        }
+        if(TCP_OPTIONS.equals(type) && field.getScapyFieldData() != null) {
+            rows.addAll(createTCPOptionRows(field));
+        }
+        fieldRows.put(field, rows);
         return rows;
     }
     
@@ -297,6 +306,8 @@ public class FieldEditorView {
 
     public void rebuild(boolean rebuld_breadcrumb) {
         try {
+            layerPanes.clear();
+            fieldRows.clear();
             protocolTitledPanes = getModel().getCombinedProtocolModel().getProtocolStack().stream()
                     .map(this::buildLayer)
                     .collect(Collectors.toList());
@@ -307,7 +318,7 @@ public class FieldEditorView {
                 bottomPane.getChildren().add(buildAppendProtocolPane());
             }
             //protocolTitledPanes.add(buildAppendProtocolPane());
-            VBox protocolsPaneVbox = new VBox();
+            protocolsPaneVbox = new VBox();
             protocolsPaneVbox.getChildren().setAll(protocolTitledPanes);
             rootPane.getChildren().setAll(protocolsPaneVbox);
         } catch(Exception e) {
@@ -315,6 +326,65 @@ public class FieldEditorView {
         }
     }
 
+    /**
+     * updates only changed layers and field rows of the current view.
+     * returns false if the view can not be patched and has to be rebuilt.
+     * empty changes are rebuilt too, since the edited row still shows its editor, e.g. if the server normalized the value back
+     */
+    public boolean patch(CombinedModelChanges changes) {
+        if (changes.isEmpty() || changes.isStructureChanged() || protocolsPaneVbox == null || !rootPane.getChildren().contains(protocolsPaneVbox)) {
+            return false;
+        }
+        if (!changes.getChangedProtocols().stream().allMatch(layerPanes::containsKey)
+                || !changes.getChangedFields().stream().allMatch(fieldRows::containsKey)) {
+            return false;
+        }
+        try {
+            Set<CombinedProtocol> rebuiltLayers = new HashSet<>(changes.getChangedProtocols());
+            changes.getChangedFields().stream()
+                    .filter(field -> !rebuiltLayers.contains(field.getProtocol()))
+                    .filter(field -> !patchFieldRows(field))
+                    .forEach(field -> rebuiltLayers.add(field.getProtocol()));
+            rebuiltLayers.forEach(this::rebuildLayer);
+            // packet size is shown there
+            buildProtocolStructureLayer();
+            return true;
+        } catch(Exception e) {
+            logger.error("Error occurred during patching view. Error {}", e);
+            return false;
+        }
+    }
+
+    private void rebuildLayer(CombinedProtocol protocol) {
+        TitledPane oldPane = layerPanes.get(protocol);
+        protocol.getFields().forEach(fieldRows::remove);
+        TitledPane newPane = buildLayer(protocol);
+        protocolsPaneVbox.getChildren().set(protocolsPaneVbox.getChildren().indexOf(oldPane), newPane);
+        protocolTitledPanes.set(protocolTitledPanes.indexOf(oldPane), newPane);
+    }
+
+    /** replaces rows of the field in its layer grid. returns false if number of rows was changed */
+    private boolean patchFieldRows(CombinedField field) {
+        List<Node> oldRows = fieldRows.get(field);
+        GridPane grid = (GridPane) oldRows.get(0).getParent();
+        // keep even/odd background of the replaced row
+        oddIndex = oldRows.get(0).getStyleClass().contains("field-row-odd") ? 1 : 0;
+        List<Node> newRows = buildFieldRows(field);
+        if (newRows.size() != oldRows.size()) {
+            return false;
+        }
+        for (int i = 0; i < oldRows.size(); i++) {
+            Node oldRow = oldRows.get(i);
+            Node newRow = newRows.get(i);
+            GridPane.setConstraints(newRow, 0, GridPane.getRowIndex(oldRow));
+            grid.getChildren().set(grid.getChildren().indexOf(oldRow), newRow);
+            if (selected_row == oldRow && newRow instanceof HBox) {
+                setSelectedRow((HBox) newRow);
+            }
+        }
+        return true;
+    }
+
     private TitledPane buildLayer(CombinedProtocol protocol) {
         LayerContext layerContext = new LayerContext() {
             @Override
@@ -351,7 +421,9 @@ public class FieldEditorView {
             }
         };
         
-        return buildLayer(layerContext);
+        TitledPane layerPane = buildLayer(layerContext);
+        layerPanes.put(protocol, layerPane);
+        return layerPane;
     }
 
     public TitledPane buildAppendProtocolPane() {
@@ -8,6 +8,8 @@ import com.xored.javafx.packeteditor.data.combined.CombinedField;
 import com.xored.javafx.packeteditor.data.combined.CombinedProtocol;
 import com.xored.javafx.packeteditor.metatdata.FeParameterMeta;
 import com.xored.javafx.packeteditor.metatdata.InstructionExpressionMeta;
+import com.xored.javafx.packeteditor.service.FieldEngineCostAnalyzer;
+import com.xored.javafx.packeteditor.service.FieldEngineSplitPreview;
 import javafx.application.Platform;
 import javafx.event.ActionEvent;
 import javafx.event.Event;
@@ -38,6 +40,9 @@ public class FieldEngineView extends FieldEditorView {
     private VBox bottomPane;
     private ScrollPane scrollPane;
 
+    static final int MAX_SPLIT_CORES = 64;
+    private int splitPreviewCores = 2;
+
     public void rebuild() {
         try {
             List<Node> layers = new ArrayList<>();
@@ -84,6 +89,23 @@ public class FieldEngineView extends FieldEditorView {
         feParameterField.init(cacheSize);
         
         grid.add(feParameterField, 1,1);
+
+        FieldEngineCostAnalyzer.Report cost = FieldEngineCostAnalyzer.analyze(
+                getModel().getUserModel().getFeInstructions(), getModel().getUserModel().getFePrarameters());
+        grid.add(new Label("Estimated cost:"), 0, 2);
+        grid.add(new Text(cost.getSummary()), 1, 2);
+
+        Spinner<Integer> splitCores = new Spinner<>(1, MAX_SPLIT_CORES, splitPreviewCores);
+        Text splitPreview = new Text();
+        Runnable updateSplitPreview = () -> splitPreview.setText(FieldEngineSplitPreview.preview(
+                getModel().getUserModel().getFeInstructions(), getModel().getUserModel().getFePrarameters(), splitPreviewCores).getSummary());
+        splitCores.valueProperty().addListener((observable, oldValue, newValue) -> {
+            splitPreviewCores = newValue;
+            updateSplitPreview.run();
+        });
+        updateSplitPreview.run();
+        grid.add(new Label("Split by cores:"), 0, 3);
+        grid.add(new VBox(5, splitCores, splitPreview), 1, 3);
         
         pktStructureLayer.setContent(grid);
 
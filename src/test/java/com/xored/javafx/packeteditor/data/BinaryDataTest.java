@@ -0,0 +1,48 @@
+package com.xored.javafx.packeteditor.data;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.xored.javafx.packeteditor.data.BinaryDataEvent.Type.*;
+import static org.junit.Assert.assertEquals;
+
+public class BinaryDataTest {
+
+    @Test
+    public void should_report_changed_range_only() {
+        BinaryData data = new BinaryData();
+        List<String> events = new ArrayList<>();
+        data.addListener(e -> events.add(e.toString()));
+
+        data.setBytes(new byte[]{1, 2, 3, 4, 5, 6});
+        data.setByte(2, (byte) 9);
+        data.setBytes(new byte[]{1, 2, 9, 7, 8, 6});
+        data.setBytes(new byte[]{1, 2});
+
+        assertEquals(4, events.size());
+        assertEquals(RELOAD + "[0, 6]", events.get(0));
+        assertEquals(SET_BYTES + "[2, 1]", events.get(1));
+        assertEquals(REPLACE + "[3, 2]", events.get(2));
+        assertEquals(RELOAD + "[0, 2]", events.get(3));
+    }
+
+    @Test
+    public void should_report_old_and_new_selection() {
+        BinaryData data = new BinaryData();
+        data.setBytes(new byte[64]);
+        data.setSelected(10, 4);
+        List<BinaryDataEvent> events = new ArrayList<>();
+        data.addListener(events::add);
+
+        data.setSelected(40, 2);
+        data.setBytes(new byte[64]);
+
+        assertEquals(SELECTION + "[10, 32]", events.get(0).toString());
+        // same data is still reported as a replacement
+        assertEquals(REPLACE + "[64, 0]", events.get(1).toString());
+        assertEquals(SELECTION + "[40, 2]", events.get(2).toString());
+        assertEquals(0, data.getSelLength());
+    }
+}
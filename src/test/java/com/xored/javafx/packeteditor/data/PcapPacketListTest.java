@@ -0,0 +1,50 @@
+package com.xored.javafx.packeteditor.data;
+
+import com.xored.javafx.packeteditor.scapy.PcapReader;
+import javafx.collections.ListChangeListener;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PcapPacketListTest {
+
+    @Test
+    public void should_show_indexed_packets() throws Exception {
+        try (PcapReader reader = PcapReader.open(new File(getClass().getResource("/http.pcap").toURI()))) {
+            PcapPacketList list = new PcapPacketList(reader);
+            List<Integer> added = new ArrayList<>();
+            list.addListener((ListChangeListener<PcapReader.PacketRecord>) change -> {
+                while (change.next()) {
+                    added.add(change.getAddedSize());
+                }
+            });
+            assertEquals(0, list.size());
+
+            list.updateSize(10);
+            assertEquals(10, list.size());
+            PcapReader.PacketRecord record = list.get(9);
+            assertEquals(9, record.index);
+            assertEquals(reader.getPacket(9).offset, record.offset);
+
+            // size never shrinks
+            list.updateSize(5);
+            list.updateSize(reader.getPacketCount());
+            assertEquals(43, list.size());
+            assertEquals(62, list.get(0).capturedLength);
+            assertEquals(42, list.get(42).index);
+            assertEquals(2, added.size());
+            assertEquals(33, (int) added.get(1));
+
+            try {
+                list.get(43);
+                fail("index is out of the list");
+            } catch (IndexOutOfBoundsException e) {
+                // expected
+            }
+        }
+    }
+}
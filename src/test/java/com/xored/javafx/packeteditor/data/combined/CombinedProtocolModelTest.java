@@ -0,0 +1,124 @@
+package com.xored.javafx.packeteditor.data.combined;
+
+import com.google.gson.Gson;
+import com.xored.javafx.packeteditor.data.user.Document;
+import com.xored.javafx.packeteditor.data.user.UserProtocol;
+import com.xored.javafx.packeteditor.metatdata.*;
+import com.xored.javafx.packeteditor.scapy.PacketData;
+import com.xored.javafx.packeteditor.scapy.ProtocolData;
+import com.xored.javafx.packeteditor.service.IMetadataService;
+import com.xored.javafx.packeteditor.service.InstructionsTemplate;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class CombinedProtocolModelTest {
+    Gson gson = new Gson();
+
+    IMetadataService metadataService = new IMetadataService() {
+        Map<String, ProtocolMetadata> protocols = new HashMap<>();
+        {
+            protocols.put("Ether", protocol("Ether", "dst", "src", "type"));
+            protocols.put("IP", protocol("IP", "ttl", "proto", "src", "dst"));
+        }
+
+        ProtocolMetadata protocol(String id, String... fieldIds) {
+            List<FieldMetadata> fields = new ArrayList<>();
+            for (String fieldId : fieldIds) {
+                fields.add(new FieldMetadata(fieldId, fieldId, FieldMetadata.FieldType.STRING, null, null, false));
+            }
+            return new ProtocolMetadata(id, id, fields, null, null);
+        }
+
+        @Override public Map<String, ProtocolMetadata> getProtocols() { return protocols; }
+        @Override public Map<String, FeParameterMeta> getFeParameters() { return Collections.emptyMap(); }
+        @Override public Map<String, InstructionExpressionMeta> getFeInstructions() { return Collections.emptyMap(); }
+        @Override public ProtocolMetadata getProtocolMetadata(ProtocolData protocol) { return protocols.get(protocol.getId()); }
+        @Override public ProtocolMetadata getProtocolMetadataById(String protocolId) { return protocols.get(protocolId); }
+        @Override public List<String> getAllowedPayloadForProtocol(String protocolId) { return Collections.emptyList(); }
+        @Override public boolean isAllowedPayload(String protocolId, String payloadId) { return false; }
+        @Override public Map<String, FEInstructionParameterMeta> getFeInstructionParameters() { return Collections.emptyMap(); }
+        @Override public List<InstructionsTemplate> getFeInstructionsTemplates() { return Collections.emptyList(); }
+    };
+
+    private List<ProtocolData> packet(int ttl, int ipOffset) {
+        String json = "{\"data\":["
+                + "{\"id\":\"Ether\",\"offset\":0,\"fields\":["
+                + "{\"id\":\"dst\",\"value\":\"ff:ff:ff:ff:ff:ff\",\"offset\":0,\"length\":6},"
+                + "{\"id\":\"src\",\"value\":\"00:00:00:00:00:00\",\"offset\":6,\"length\":6},"
+                + "{\"id\":\"type\",\"value\":2048,\"offset\":12,\"length\":2}]},"
+                + "{\"id\":\"IP\",\"offset\":" + ipOffset + ",\"fields\":["
+                + "{\"id\":\"ttl\",\"value\":" + ttl + ",\"offset\":8,\"length\":1},"
+                + "{\"id\":\"proto\",\"value\":0,\"offset\":9,\"length\":1},"
+                + "{\"id\":\"src\",\"value\":\"127.0.0.1\",\"offset\":12,\"length\":4},"
+                + "{\"id\":\"dst\",\"value\":\"127.0.0.1\",\"offset\":16,\"length\":4}]}]}";
+        return gson.fromJson(json, PacketData.class).getProtocols();
+    }
+
+    @Test
+    public void should_report_only_changed_fields() {
+        CombinedProtocolModel model = CombinedProtocolModel.update(null, metadataService, null, packet(64, 14), true);
+        assertTrue(model.getChanges().isStructureChanged());
+        CombinedField ttl = model.getProtocolStack().get(1).getFields().get(0);
+
+        CombinedProtocolModel updated = CombinedProtocolModel.update(model, metadataService, null, packet(32, 14), true);
+        CombinedModelChanges changes = updated.getChanges();
+        assertFalse(changes.isStructureChanged());
+        assertTrue(changes.getChangedProtocols().isEmpty());
+        assertEquals(Collections.singletonList(ttl), changes.getChangedFields());
+        assertSame(ttl, updated.getProtocolStack().get(1).getFields().get(0));
+        assertEquals(32, ttl.getValue().getAsInt());
+
+        assertTrue(CombinedProtocolModel.update(updated, metadataService, null, packet(32, 14), true).getChanges().isEmpty());
+    }
+
+    @Test
+    public void should_mark_all_fields_on_protocol_offset_change() {
+        CombinedProtocolModel model = CombinedProtocolModel.update(null, metadataService, null, packet(64, 14), true);
+        CombinedModelChanges changes = CombinedProtocolModel.update(model, metadataService, null, packet(64, 18), true).getChanges();
+        assertEquals(4, changes.getChangedFields().size());
+    }
+
+    @Test
+    public void should_merge_consecutive_changes() {
+        CombinedProtocolModel model = CombinedProtocolModel.update(null, metadataService, null, packet(64, 14), true);
+        CombinedField ttl = model.getProtocolStack().get(1).getFields().get(0);
+        CombinedProtocolModel first = CombinedProtocolModel.update(model, metadataService, null, packet(32, 14), true);
+        CombinedProtocolModel updated = CombinedProtocolModel.update(first, metadataService, null, packet(16, 14), true);
+        CombinedModelChanges merged = CombinedModelChanges.merge(first.getChanges(), updated.getChanges());
+        assertEquals(Collections.singletonList(ttl), merged.getChangedFields());
+
+        CombinedModelChanges offsets = CombinedProtocolModel.update(updated, metadataService, null, packet(16, 18), true).getChanges();
+        assertEquals(4, CombinedModelChanges.merge(merged, offsets).getChangedFields().size());
+        assertTrue(CombinedModelChanges.merge(merged, CombinedModelChanges.full()).isStructureChanged());
+    }
+
+    @Test
+    public void should_rebuild_on_structure_change() {
+        CombinedProtocolModel model = CombinedProtocolModel.update(null, metadataService, null, packet(64, 14), true);
+        List<ProtocolData> etherOnly = packet(64, 14).subList(0, 1);
+        CombinedProtocolModel updated = CombinedProtocolModel.update(model, metadataService, null, etherOnly, true);
+        assertTrue(updated.getChanges().isStructureChanged());
+        assertNotSame(model.getProtocolStack().get(0), updated.getProtocolStack().get(0));
+    }
+
+    @Test
+    public void should_report_replaced_user_field() {
+        Document document = new Document();
+        document.addProtocol(metadataService.getProtocolMetadataById("Ether"));
+        document.addProtocol(metadataService.getProtocolMetadataById("IP"));
+        UserProtocol ip = document.getProtocolStack().get(1);
+        ip.getField("ttl").setValue("64");
+        CombinedProtocolModel model = CombinedProtocolModel.update(null, metadataService, document, packet(64, 14), false);
+        CombinedField ttl = model.getProtocolStack().get(1).getFields().get(0);
+
+        // same value in a new object, e.g. restored by undo
+        ip.addField(ip.getField("ttl").copy());
+        CombinedModelChanges changes = CombinedProtocolModel.update(model, metadataService, document, packet(64, 14), false).getChanges();
+        assertTrue(changes.getChangedProtocols().isEmpty());
+        assertEquals(Collections.singletonList(ttl), changes.getChangedFields());
+        assertSame(ip.getField("ttl"), ttl.userField);
+    }
+}
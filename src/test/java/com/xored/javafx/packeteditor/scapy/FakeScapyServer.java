@@ -0,0 +1,286 @@
+package com.xored.javafx.packeteditor.scapy;
+
+import com.google.gson.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.zeromq.ZMQ;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * In-process stand-in for scapy_server. Serves JSON-RPC over a ZMQ ROUTER socket,
+ * so both the sync REQ socket and the pipelined DEALER channel of ScapyServerClient can use it.
+ * Responses are recorded results per method or recorded request/result exchanges, see loadRecorded.
+ * By default it serves the recordings of src/test/resources/scapy_server.
+ * reconstruct_pkt is answered with LocalDissector, if there is no recorded exchange for the request.
+ * Each response can be delayed by a fixed latency plus a random jitter, requests are handled concurrently like by a real network.
+ */
+public class FakeScapyServer implements Closeable {
+    static Logger logger = LoggerFactory.getLogger(FakeScapyServer.class);
+
+    public static final String VERSION = "1.01";
+    public static final String VERSION_HANDLER = "fake-scapy-server";
+
+    static final int METHOD_NOT_FOUND = -32601;
+    static final int SERVER_ERROR = -32000;
+
+    /** classpath folder of the default recordings */
+    static final String RECORDED_RESOURCES = "/scapy_server/";
+    static final String[] RECORDED_METHODS = {"get_definitions", "get_tree", "get_payload_classes", "build_pkt", "build_pkt_ex", "reconstruct_pkt"};
+    static final String RESULT_SUFFIX = ".json";
+    static final String EXCHANGES_SUFFIX = ".requests.json";
+
+    private final Gson gson = new Gson();
+    private final Map<String, Function<JsonArray, JsonElement>> handlers = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> requestCounts = new ConcurrentHashMap<>();
+    private final LocalDissector dissector = new LocalDissector();
+    private final Random random = new Random(0);
+
+    private volatile long latencyMs = 0;
+    private volatile long jitterMs = 0;
+
+    private ZMQ.Context context;
+    private Thread ioThread;
+    private volatile boolean running;
+    private String url;
+
+    /** response waiting for its delay */
+    private static class DelayedResponse {
+        final long due;
+        final byte[] identity;
+        final String json;
+
+        DelayedResponse(long due, byte[] identity, String json) {
+            this.due = due;
+            this.identity = identity;
+            this.json = json;
+        }
+    }
+
+    public FakeScapyServer() {
+        respond("get_version", params -> {
+            JsonObject res = new JsonObject();
+            res.addProperty("version", VERSION);
+            res.addProperty("built_by", "fake");
+            return res;
+        });
+        respond("get_version_handler", params -> new JsonPrimitive(VERSION_HANDLER));
+        respond("reconstruct_pkt", params -> {
+            PacketData pkt = dissector.dissect(Base64.getDecoder().decode(params.get(1).getAsString()));
+            if (pkt == null) {
+                throw new ScapyException("Packet is not supported by the fake server");
+            }
+            return gson.toJsonTree(pkt);
+        });
+        for (String method : RECORDED_METHODS) {
+            loadRecordedResource(method + RESULT_SUFFIX);
+            loadRecordedResource(method + EXCHANGES_SUFFIX);
+        }
+    }
+
+    private void loadRecordedResource(String name) {
+        InputStream in = FakeScapyServer.class.getResourceAsStream(RECORDED_RESOURCES + name);
+        if (in == null) {
+            return;
+        }
+        try (Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+            loadRecorded(name, new JsonParser().parse(reader));
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to load recorded " + name, e);
+        }
+    }
+
+    /** sets recorded result of the method */
+    public FakeScapyServer respond(String method, JsonElement result) {
+        return respond(method, params -> result);
+    }
+
+    /** sets handler of the method. handler gets request params and returns result, ScapyException is returned as a JSON-RPC error */
+    public FakeScapyServer respond(String method, Function<JsonArray, JsonElement> handler) {
+        handlers.put(method, handler);
+        return this;
+    }
+
+    /**
+     * sets recorded exchanges of the method. each exchange is an object with request "params" without the version handler and its "result".
+     * requests without a recorded exchange go to the previous handler of the method, if any
+     */
+    public FakeScapyServer respondRecorded(String method, JsonArray exchanges) {
+        Function<JsonArray, JsonElement> fallback = handlers.get(method);
+        return respond(method, params -> {
+            JsonArray args = new JsonArray();
+            for (int i = 1; i < params.size(); i++) {
+                args.add(params.get(i));
+            }
+            for (JsonElement exchange : exchanges) {
+                if (args.equals(exchange.getAsJsonObject().get("params"))) {
+                    return exchange.getAsJsonObject().get("result");
+                }
+            }
+            if (fallback != null) {
+                return fallback.apply(params);
+            }
+            throw new ScapyException("No recorded response of " + method + " for " + args);
+        });
+    }
+
+    /** loads recorded results from &lt;method&gt;.json files and recorded exchanges from &lt;method&gt;.requests.json files of the directory */
+    public FakeScapyServer loadRecorded(File dir) throws IOException {
+        File[] files = dir.listFiles((d, name) -> name.endsWith(RESULT_SUFFIX));
+        if (files == null) {
+            throw new IOException("Not a directory: " + dir);
+        }
+        for (File file : files) {
+            loadRecorded(file.getName(), new JsonParser().parse(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8)));
+        }
+        return this;
+    }
+
+    private void loadRecorded(String name, JsonElement content) {
+        if (name.endsWith(EXCHANGES_SUFFIX)) {
+            respondRecorded(name.substring(0, name.length() - EXCHANGES_SUFFIX.length()), content.getAsJsonArray());
+        } else {
+            respond(name.substring(0, name.length() - RESULT_SUFFIX.length()), content);
+        }
+    }
+
+    /** every response is delayed by latency plus uniformly distributed [0, jitter) */
+    public FakeScapyServer setLatency(long latencyMs, long jitterMs) {
+        this.latencyMs = latencyMs;
+        this.jitterMs = jitterMs;
+        return this;
+    }
+
+    public int getRequestCount(String method) {
+        AtomicInteger count = requestCounts.get(method);
+        return count != null ? count.get() : 0;
+    }
+
+    /** starts the server on a random local port. see getUrl */
+    public FakeScapyServer start() {
+        context = ZMQ.context(1);
+        ZMQ.Socket router = context.socket(ZMQ.ROUTER);
+        router.setLinger(0);
+        int port = router.bindToRandomPort("tcp://127.0.0.1");
+        url = "tcp://127.0.0.1:" + port;
+        running = true;
+        ioThread = new Thread(() -> ioLoop(router), "fake-scapy-server");
+        ioThread.setDaemon(true);
+        ioThread.start();
+        logger.info("fake scapy_server is listening at {}", url);
+        return this;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        if (ioThread != null) {
+            try {
+                ioThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            ioThread = null;
+        }
+        if (context != null) {
+            context.term();
+            context = null;
+        }
+    }
+
+    private void ioLoop(ZMQ.Socket router) {
+        PriorityQueue<DelayedResponse> delayed = new PriorityQueue<>(Comparator.comparingLong(r -> r.due));
+        ZMQ.Poller poller = new ZMQ.Poller(1);
+        poller.register(router, ZMQ.Poller.POLLIN);
+        try {
+            while (running) {
+                long timeout = delayed.isEmpty() ? 10 : Math.max(0, Math.min(10, delayed.peek().due - System.currentTimeMillis()));
+                poller.poll(timeout);
+                if (poller.pollin(0)) {
+                    byte[] identity;
+                    while ((identity = router.recv(ZMQ.DONTWAIT)) != null) {
+                        byte[] frame = new byte[0];
+                        while (router.hasReceiveMore()) {
+                            frame = router.recv(0);
+                        }
+                        String response = handle(new String(frame, StandardCharsets.UTF_8));
+                        delayed.add(new DelayedResponse(System.currentTimeMillis() + nextDelay(), identity, response));
+                    }
+                }
+                long now = System.currentTimeMillis();
+                while (!delayed.isEmpty() && delayed.peek().due <= now) {
+                    DelayedResponse response = delayed.poll();
+                    router.sendMore(response.identity);
+                    router.sendMore(new byte[0]);
+                    router.send(response.json.getBytes(StandardCharsets.UTF_8), 0);
+                }
+            }
+        } catch (Exception e) {
+            if (running) {
+                logger.error("fake scapy_server failed: {}", e);
+            }
+        } finally {
+            router.close();
+        }
+    }
+
+    private long nextDelay() {
+        return latencyMs + (jitterMs > 0 ? (long) (random.nextDouble() * jitterMs) : 0);
+    }
+
+    String handle(String requestJson) {
+        JsonElement request;
+        try {
+            request = new JsonParser().parse(requestJson);
+        } catch (JsonParseException e) {
+            return gson.toJson(error(JsonNull.INSTANCE, -32700, "Parse error"));
+        }
+        if (request.isJsonArray()) {
+            JsonArray res = new JsonArray();
+            request.getAsJsonArray().forEach(item -> res.add(handleRequest(item.getAsJsonObject())));
+            return gson.toJson(res);
+        }
+        return gson.toJson(handleRequest(request.getAsJsonObject()));
+    }
+
+    private JsonObject handleRequest(JsonObject request) {
+        JsonElement id = request.has("id") ? request.get("id") : JsonNull.INSTANCE;
+        String method = request.get("method").getAsString();
+        requestCounts.computeIfAbsent(method, m -> new AtomicInteger()).incrementAndGet();
+        Function<JsonArray, JsonElement> handler = handlers.get(method);
+        if (handler == null) {
+            return error(id, METHOD_NOT_FOUND, "Method not found");
+        }
+        JsonElement params = request.get("params");
+        try {
+            JsonObject res = new JsonObject();
+            res.addProperty("jsonrpc", "2.0");
+            res.add("id", id);
+            res.add("result", handler.apply(params instanceof JsonArray ? params.getAsJsonArray() : new JsonArray()));
+            return res;
+        } catch (Exception e) {
+            return error(id, SERVER_ERROR, e.getMessage());
+        }
+    }
+
+    private static JsonObject error(JsonElement id, int code, String message) {
+        JsonObject error = new JsonObject();
+        error.addProperty("code", code);
+        error.addProperty("message", message);
+        JsonObject res = new JsonObject();
+        res.addProperty("jsonrpc", "2.0");
+        res.add("id", id);
+        res.add("error", error);
+        return res;
+    }
+}
@@ -0,0 +1,110 @@
+package com.xored.javafx.packeteditor.scapy;
+
+import com.google.common.eventbus.EventBus;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class FakeScapyServerTest {
+    FakeScapyServer server;
+    ScapyServerClient scapy;
+
+    @Before
+    public void init() {
+        server = new FakeScapyServer().start();
+        scapy = new ScapyServerClient();
+        scapy.eventBus = new EventBus();
+        scapy.connect(server.getUrl(), 2000);
+    }
+
+    @After
+    public void cleanup() {
+        scapy.closeConnection();
+        server.close();
+    }
+
+    private byte[] readPacket() throws Exception {
+        try (PcapReader reader = PcapReader.open(new File(getClass().getResource("/http.pcap").toURI()))) {
+            return reader.readPacketData(0);
+        }
+    }
+
+    @Test
+    public void should_serve_client() throws Exception {
+        assertTrue(scapy.isConnected());
+        assertEquals(FakeScapyServer.VERSION_HANDLER, scapy.getVersionHandler());
+
+        PacketData pkt = scapy.reconstruct_pkt(readPacket());
+        assertEquals(Arrays.asList("Ether", "IP", "TCP"), pkt.getProtocols().stream().map(ProtocolData::getId).collect(Collectors.toList()));
+
+        JsonArray payloadClasses = new JsonArray();
+        payloadClasses.add("IP");
+        server.respond("get_payload_classes", payloadClasses);
+        assertEquals(Arrays.asList("IP"), scapy.get_payload_classes("Ether"));
+        assertEquals(1, server.getRequestCount("get_payload_classes"));
+    }
+
+    @Test
+    public void should_serve_recorded_responses() {
+        ScapyDefinitions definitions = scapy.get_definitions();
+        assertTrue(definitions.protocols.stream().anyMatch(protocol -> "TCP".equals(protocol.id)));
+        assertEquals(2, definitions.feInstructions.size());
+
+        PacketData pkt = scapy.build_pkt(Arrays.asList(
+                ReconstructProtocol.pass("Ether"),
+                ReconstructProtocol.pass("IP"),
+                ReconstructProtocol.modify("TCP", Arrays.asList(ReconstructField.setValue("sport", 888)))
+        ));
+        assertEquals(888, pkt.getProtocols().get(2).getFieldById("sport").getIntValue());
+
+        JsonObject model = new JsonObject();
+        JsonObject fieldEngine = new JsonObject();
+        fieldEngine.add("instructions", new JsonArray());
+        fieldEngine.add("global_parameters", new JsonObject());
+        model.add("field_engine", fieldEngine);
+        pkt = scapy.build_pkt_ex(Arrays.asList(ReconstructProtocol.pass("Ether"), ReconstructProtocol.pass("IP"), ReconstructProtocol.pass("TCP")), model);
+        assertEquals(3, pkt.getProtocols().size());
+        assertNull(pkt.getFieldEngineError());
+    }
+
+    @Test(expected = ScapyException.class)
+    public void should_reject_request_not_recorded() {
+        scapy.build_pkt(Arrays.asList(ReconstructProtocol.pass("Dot1Q")));
+    }
+
+    @Test(expected = MethodNotFoundException.class)
+    public void should_reject_unknown_method() {
+        scapy.loadInstructionParameterValues(Arrays.asList(ReconstructProtocol.pass("Ether")), new JsonObject(), "name");
+    }
+
+    @Test
+    public void should_delay_responses_concurrently() throws Exception {
+        byte[] bytes = readPacket();
+        int delayMs = 100;
+        int count = 5;
+        server.setLatency(delayMs, 20);
+        long start = System.nanoTime();
+        List<CompletableFuture<PacketData>> requests = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            requests.add(scapy.reconstruct_pkt_async(bytes));
+        }
+        for (CompletableFuture<PacketData> request : requests) {
+            assertNotNull(request.get(2, TimeUnit.SECONDS));
+        }
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        // serial handling takes at least count * delayMs
+        assertTrue("elapsed " + elapsedMs, elapsedMs >= delayMs && elapsedMs < count * delayMs);
+    }
+}
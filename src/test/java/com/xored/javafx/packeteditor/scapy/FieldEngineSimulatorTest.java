@@ -0,0 +1,88 @@
+package com.xored.javafx.packeteditor.scapy;
+
+import com.google.gson.JsonParser;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class FieldEngineSimulatorTest {
+    // Ether/IP/TCP, IP header at 14
+    byte[] template;
+
+    @Before
+    public void init() throws Exception {
+        try (PcapReader reader = PcapReader.open(new File(getClass().getResource("/http.pcap").toURI()))) {
+            template = reader.readPacketData(0);
+        }
+    }
+
+    private FieldEngineSimulator simulator(String instructions) {
+        return new FieldEngineSimulator(template, new JsonParser().parse("{\"instructions\":[" + instructions + "],\"split_by_var\":\"\"}"), 1);
+    }
+
+    private static boolean isValidIPChecksum(byte[] b) {
+        int sum = 0;
+        for (int i = 14; i < 34; i += 2) {
+            sum += LocalDissector.u16(b, i);
+        }
+        while ((sum >> 16) != 0) {
+            sum = (sum & 0xffff) + (sum >> 16);
+        }
+        return sum == 0xffff;
+    }
+
+    @Test
+    public void should_increment_and_wrap() {
+        // 10.0.0.1 .. 10.0.0.3
+        List<byte[]> packets = simulator(
+                "{\"type\":\"flow_var\",\"name\":\"src\",\"size\":4,\"op\":\"inc\",\"init_value\":167772162,\"min_value\":167772161,\"max_value\":167772163,\"step\":1},"
+                + "{\"type\":\"write_flow_var\",\"name\":\"src\",\"pkt_offset\":26,\"add_value\":0,\"is_big_endian\":true},"
+                + "{\"type\":\"fix_checksum_ipv4\",\"pkt_offset\":14}").generate(4);
+        String[] expected = {"10.0.0.2", "10.0.0.3", "10.0.0.1", "10.0.0.2"};
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], LocalDissector.ipv4(packets.get(i), 26));
+            assertTrue(isValidIPChecksum(packets.get(i)));
+            assertEquals(template.length, packets.get(i).length);
+        }
+    }
+
+    @Test
+    public void should_decrement_with_step_and_trim() {
+        List<byte[]> packets = simulator(
+                "{\"type\":\"flow_var\",\"name\":\"size\",\"size\":2,\"op\":\"dec\",\"init_value\":60,\"min_value\":54,\"max_value\":62,\"step\":4},"
+                + "{\"type\":\"trim_pkt_size\",\"name\":\"size\"},"
+                + "{\"type\":\"write_flow_var\",\"name\":\"size\",\"pkt_offset\":16,\"add_value\":-14,\"is_big_endian\":true}").generate(4);
+        int[] expected = {60, 56, 61, 57};
+        for (int i = 0; i < expected.length; i++) {
+            byte[] pkt = packets.get(i);
+            assertEquals(Math.min(expected[i], template.length), pkt.length);
+            assertEquals(expected[i] - 14, LocalDissector.u16(pkt, 16));
+        }
+    }
+
+    @Test
+    public void should_generate_reproducible_random_values() {
+        FieldEngineSimulator simulator = simulator(
+                "{\"type\":\"flow_var\",\"name\":\"port\",\"size\":2,\"op\":\"random\",\"min_value\":1000,\"max_value\":1009},"
+                + "{\"type\":\"write_flow_var\",\"name\":\"port\",\"pkt_offset\":34}");
+        List<byte[]> packets = simulator.generate(100);
+        for (byte[] pkt : packets) {
+            int port = LocalDissector.u16(pkt, 34);
+            assertTrue(port >= 1000 && port <= 1009);
+        }
+        assertArrayEquals(packets.get(99), simulator.generate(100).get(99));
+
+        int[] count = {0};
+        simulator.generate(1000000, (index, packet, length) -> count[0]++);
+        assertEquals(1000000, count[0]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void should_reject_unsupported_instructions() {
+        simulator("{\"type\":\"tuple_flow_var\",\"name\":\"tuple\"}");
+    }
+}
@@ -0,0 +1,147 @@
+package com.xored.javafx.packeteditor.scapy;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class LocalDissectorTest {
+    LocalDissector dissector = new LocalDissector();
+
+    private byte[] readPacket(String resource, int index) throws Exception {
+        try (PcapReader reader = PcapReader.open(new File(getClass().getResource("/" + resource).toURI()))) {
+            return reader.readPacketData(index);
+        }
+    }
+
+    /** Ether / IP / UDP packet from 192.168.0.1 to 224.0.0.2 */
+    private static byte[] udpPacket(int sport, int dport, byte[] payload) {
+        ByteBuffer buf = ByteBuffer.allocate(42 + payload.length);
+        buf.put(new byte[] {1, 0, 0x5e, 0, 0, 2, 0, 0, 0x0c, 7, (byte) 0xac, 1}).putShort((short) 0x0800);
+        buf.put((byte) 0x45).put((byte) 0).putShort((short) (28 + payload.length)).putShort((short) 0).putShort((short) 0)
+                .put((byte) 1).put((byte) 17).putShort((short) 0)
+                .put(new byte[] {(byte) 192, (byte) 168, 0, 1}).put(new byte[] {(byte) 224, 0, 0, 2});
+        buf.putShort((short) sport).putShort((short) dport).putShort((short) (8 + payload.length)).putShort((short) 0);
+        buf.put(payload);
+        return buf.array();
+    }
+
+    /** HSRP v0 hello, group 1, virtual IP 192.168.0.254 */
+    private static final byte[] HSRP_HELLO = {0, 0, 16, 3, 10, 120, 1, 0, 'c', 'i', 's', 'c', 'o', 0, 0, 0,
+            (byte) 192, (byte) 168, 0, (byte) 254};
+
+    /** reconstruct_pkt result with the given protocol above UDP */
+    private static PacketData serverResult(int sport, int dport, String payloadId) {
+        PacketData pkt = new LocalDissector().dissect(udpPacket(sport, dport, new byte[0]));
+        ProtocolData payload = new ProtocolData();
+        payload.id = payloadId;
+        payload.offset = 42;
+        payload.fields = new ArrayList<>();
+        pkt.data.add(payload);
+        return pkt;
+    }
+
+    private static List<String> ids(PacketData pkt) {
+        return pkt.getProtocols().stream().map(ProtocolData::getId).collect(Collectors.toList());
+    }
+
+    @Test
+    public void should_dissect_tcp_syn() throws Exception {
+        PacketData pkt = dissector.dissect(readPacket("http.pcap", 0));
+        assertEquals(Arrays.asList("Ether", "IP", "TCP"), ids(pkt));
+
+        ProtocolData ip = pkt.getProtocols().get(1);
+        assertEquals(14, ip.offset.intValue());
+        assertEquals("145.254.160.237", ip.getFieldById("src").getStringValue());
+        assertEquals("DF", ip.getFieldById("flags").getHumanValue());
+        assertEquals("tcp", ip.getFieldById("proto").getHumanValue());
+
+        ProtocolData tcp = pkt.getProtocols().get(2);
+        assertEquals(34, tcp.offset.intValue());
+        assertEquals(80, tcp.getFieldById("dport").getIntValue());
+        assertEquals("S", tcp.getFieldById("flags").getHumanValue());
+        FieldData options = tcp.getFieldById("options");
+        assertEquals("[('MSS', 1460), ('NOP', None), ('NOP', None), ('SAckOK', '')]", options.getValueExpr());
+        assertEquals(20, options.getOffset());
+        assertEquals(8, options.getLength());
+        assertEquals(4, TCPOptionsData.fromFieldData(options).size());
+    }
+
+    @Test
+    public void should_dissect_nested_vlans() throws Exception {
+        PacketData pkt = dissector.dissect(readPacket("dot1q_nested.pcap", 0));
+        assertEquals(Arrays.asList("Ether", "Dot1Q", "Dot1Q", "Dot1Q", "IP", "ICMP"), ids(pkt));
+        ProtocolData vlan = pkt.getProtocols().get(3);
+        assertEquals(22, vlan.offset.intValue());
+        assertEquals(3, vlan.getFieldById("vlan").getIntValue());
+        assertEquals(2, vlan.getFieldById("prio").getIntValue());
+        assertEquals("echo-request", pkt.getProtocols().get(5).getFieldById("type").getHumanValue());
+    }
+
+    @Test
+    public void should_add_padding() throws Exception {
+        byte[] arp = readPacket("ARP.pcap", 0);
+        PacketData pkt = dissector.dissect(Arrays.copyOf(arp, 60));
+        assertEquals(Arrays.asList("Ether", "ARP", "Padding"), ids(pkt));
+        assertEquals("who-has", pkt.getProtocols().get(1).getFieldById("op").getHumanValue());
+        ProtocolData padding = pkt.getProtocols().get(2);
+        assertEquals(42, padding.offset.intValue());
+        assertArrayEquals(new byte[18], padding.getFieldById("load").getBytes());
+        assertArrayEquals(Arrays.copyOf(arp, 60), pkt.getPacketBytes());
+    }
+
+    @Test
+    public void should_reject_application_payload() throws Exception {
+        // NTP over UDP 123
+        assertNull(dissector.dissect(readPacket("NTPv4.pcap", 0)));
+        // HTTP request
+        assertNull(dissector.dissect(readPacket("http.pcap", 3)));
+    }
+
+    @Test
+    public void should_send_unknown_ports_to_server() {
+        byte[] hsrp = udpPacket(1985, 1985, HSRP_HELLO);
+        assertNull(dissector.dissect(hsrp));
+        dissector.learnUnboundPorts(serverResult(1985, 1985, "HSRP"));
+        assertNull(dissector.dissect(hsrp));
+        // Raw between these ports does not make HSRP between them Raw
+        dissector.learnUnboundPorts(serverResult(1985, 5000, "Raw"));
+        dissector.learnUnboundPorts(serverResult(5000, 1985, "Raw"));
+        assertNull(dissector.dissect(hsrp));
+
+        // payload-less datagrams do not depend on bindings
+        assertEquals(Arrays.asList("Ether", "IP", "UDP"), ids(dissector.dissect(udpPacket(1985, 1985, new byte[0]))));
+    }
+
+    @Test
+    public void should_dissect_learned_raw_ports() {
+        byte[] data = udpPacket(40000, 40001, HSRP_HELLO);
+        assertNull(dissector.dissect(data));
+        dissector.learnUnboundPorts(serverResult(40000, 40001, "Raw"));
+        PacketData pkt = dissector.dissect(data);
+        assertEquals(Arrays.asList("Ether", "IP", "UDP", "Raw"), ids(pkt));
+        assertArrayEquals(HSRP_HELLO, pkt.getProtocols().get(3).getFieldById("load").getBytes());
+        assertNull(dissector.dissect(udpPacket(40001, 40000, HSRP_HELLO)));
+
+        dissector.clearUnboundPorts();
+        assertNull(dissector.dissect(data));
+    }
+
+    @Test
+    public void should_format_ipv6() {
+        byte[] addr = new byte[16];
+        addr[0] = 0x20;
+        addr[1] = 0x01;
+        addr[15] = 1;
+        assertEquals("2001::1", LocalDissector.ipv6(addr, 0));
+        addr[5] = 1;
+        assertEquals("2001:0:1::1", LocalDissector.ipv6(addr, 0));
+        assertEquals("::", LocalDissector.ipv6(new byte[16], 0));
+    }
+}
@@ -0,0 +1,85 @@
+package com.xored.javafx.packeteditor.scapy;
+
+import com.google.gson.JsonPrimitive;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+public class LocalFieldEncoderTest {
+    PacketData pkt;
+
+    @Before
+    public void init() throws Exception {
+        try (PcapReader reader = PcapReader.open(new File(getClass().getResource("/http.pcap").toURI()))) {
+            // Ether/IP/TCP SYN
+            pkt = new LocalDissector().dissect(reader.readPacketData(0));
+        }
+        assertTrue(isValidIPChecksum(pkt.getPacketBytes()));
+        assertTrue(isValidTCPChecksum(pkt.getPacketBytes()));
+    }
+
+    /** ones' complement sum of 16-bit words */
+    private static int sum(byte[] b, int off, int len, int initial) {
+        long sum = initial;
+        for (int i = 0; i < len; i += 2) {
+            sum += ((b[off + i] & 0xff) << 8) | (i + 1 < len ? b[off + i + 1] & 0xff : 0);
+        }
+        while ((sum >> 16) != 0) {
+            sum = (sum & 0xffff) + (sum >> 16);
+        }
+        return (int) sum;
+    }
+
+    private static boolean isValidIPChecksum(byte[] b) {
+        return sum(b, 14, 20, 0) == 0xffff;
+    }
+
+    private static boolean isValidTCPChecksum(byte[] b) {
+        int tcpLen = b.length - 34;
+        int pseudo = sum(b, 26, 8, 6 + tcpLen);
+        return sum(b, 34, tcpLen, pseudo) == 0xffff;
+    }
+
+    private byte[] encode(int protocolIndex, String fieldId, String value) {
+        return LocalFieldEncoder.encode(pkt, protocolIndex, fieldId, new JsonPrimitive(value), idx -> true);
+    }
+
+    @Test
+    public void should_update_header_checksum() {
+        byte[] res = encode(1, "ttl", "0x40");
+        assertEquals(64, res[22]);
+        assertTrue(isValidIPChecksum(res));
+        assertTrue(isValidTCPChecksum(res));
+    }
+
+    @Test
+    public void should_update_pseudo_header_checksum() {
+        byte[] res = encode(1, "src", "10.0.0.1");
+        assertEquals("10.0.0.1", LocalDissector.ipv4(res, 26));
+        assertTrue(isValidIPChecksum(res));
+        assertTrue(isValidTCPChecksum(res));
+
+        res = encode(2, "sport", "65535");
+        assertTrue(isValidTCPChecksum(res));
+    }
+
+    @Test
+    public void should_keep_user_checksums() {
+        byte[] res = LocalFieldEncoder.encode(pkt, 1, "ttl", new JsonPrimitive("1"), idx -> false);
+        assertEquals(1, res[22]);
+        assertFalse(isValidIPChecksum(res));
+    }
+
+    @Test
+    public void should_reject_unsupported_values() {
+        // changes dissection
+        assertNull(encode(1, "proto", "17"));
+        // enum names are parsed by scapy
+        assertNull(encode(2, "dport", "http"));
+        assertNull(encode(1, "ttl", "256"));
+        assertNull(encode(0, "dst", "00:11:22:33:44"));
+    }
+}
@@ -0,0 +1,127 @@
+package com.xored.javafx.packeteditor.scapy;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class PcapReaderTest {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private File resource(String name) throws URISyntaxException {
+        return new File(getClass().getResource("/" + name).toURI());
+    }
+
+    @Test
+    public void should_index_pcap_lazily() throws Exception {
+        try (PcapReader reader = PcapReader.open(resource("http.pcap"))) {
+            PcapReader.PacketRecord first = reader.getPacket(0);
+            assertEquals(1, reader.getIndexedCount());
+            assertEquals(62, first.capturedLength);
+            assertEquals(PcapReader.LINKTYPE_ETHERNET, first.linkType);
+            assertEquals(1084443427L * 1000000000L + 311224000L, first.timestampNanos);
+            assertEquals(43, reader.getPacketCount());
+            assertNull(reader.getPacket(43));
+        }
+        try (PcapReader reader = PcapReader.open(resource("payload_64k.pcap"))) {
+            assertEquals(64054, reader.readPacketData(0).length);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void should_reject_bad_file() throws Exception {
+        PcapReader.open(resource("http.bad-pcap"));
+    }
+
+    @Test
+    public void should_read_pcapng() throws Exception {
+        byte[] packet = {1, 2, 3, 4, 5};
+        ByteBuffer buf = ByteBuffer.allocate(256).order(ByteOrder.LITTLE_ENDIAN);
+        // section header
+        buf.putInt(0x0A0D0D0A).putInt(28).putInt(0x1A2B3C4D).putShort((short) 1).putShort((short) 0).putLong(-1).putInt(28);
+        // interface with nanosecond resolution
+        buf.putInt(1).putInt(28).putShort((short) 1).putShort((short) 0).putInt(65535)
+                .putShort((short) 9).putShort((short) 1).put(new byte[]{9, 0, 0, 0}).putInt(28);
+        // enhanced packet, data is padded to 4 bytes
+        long ts = 1500000000123456789L;
+        buf.putInt(6).putInt(40).putInt(0).putInt((int) (ts >>> 32)).putInt((int) ts).putInt(packet.length).putInt(60)
+                .put(packet).put(new byte[3]).putInt(40);
+        File file = tmp.newFile("test.pcapng");
+        Files.write(file.toPath(), Arrays.copyOf(buf.array(), buf.position()));
+
+        try (PcapReader reader = PcapReader.open(file)) {
+            assertTrue(reader.isPcapNg());
+            assertEquals(1, reader.getPacketCount());
+            PcapReader.PacketRecord record = reader.getPacket(0);
+            assertEquals(60, record.originalLength);
+            assertEquals(ts, record.timestampNanos);
+            assertArrayEquals(packet, reader.readPacketData(record));
+        }
+    }
+
+    @Test
+    public void should_find_packets_between_checkpoints() throws Exception {
+        int count = PcapReader.CHECKPOINT_INTERVAL * 2 + 100;
+        File file = tmp.newFile("many.pcap");
+        try (PcapWriter writer = PcapWriter.create(file)) {
+            for (int i = 0; i < count; i++) {
+                byte[] data = new byte[20 + i % 50];
+                data[0] = (byte) i;
+                writer.writePacket(data, i * 1000L);
+            }
+        }
+        try (PcapReader reader = PcapReader.open(file)) {
+            assertEquals(count, reader.getPacketCount());
+            for (int i : new int[] {count - 1, 0, PcapReader.CHECKPOINT_INTERVAL + 7, PcapReader.CHECKPOINT_INTERVAL - 1, 5, 6, 7}) {
+                PcapReader.PacketRecord record = reader.getPacket(i);
+                assertEquals(i, record.index);
+                assertEquals(20 + i % 50, record.capturedLength);
+                assertEquals(i * 1000L, record.timestampNanos);
+                assertEquals((byte) i, reader.readPacketData(record)[0]);
+            }
+        }
+    }
+
+    @Test
+    public void should_read_pcapng_sections() throws Exception {
+        ByteBuffer buf = ByteBuffer.allocate(512);
+        for (ByteOrder order : new ByteOrder[] {ByteOrder.LITTLE_ENDIAN, ByteOrder.BIG_ENDIAN}) {
+            buf.order(order);
+            buf.putInt(0x0A0D0D0A).putInt(28).putInt(0x1A2B3C4D).putShort((short) 1).putShort((short) 0).putLong(-1).putInt(28);
+            // interface without options, link type differs between sections
+            int linkType = order == ByteOrder.BIG_ENDIAN ? 101 : 1;
+            buf.putInt(1).putInt(20).putShort((short) linkType).putShort((short) 0).putInt(65535).putInt(20);
+            buf.putInt(6).putInt(36).putInt(0).putInt(0).putInt(1000000).putInt(4).putInt(4).putInt(linkType).putInt(36);
+        }
+        File file = tmp.newFile("sections.pcapng");
+        Files.write(file.toPath(), Arrays.copyOf(buf.array(), buf.position()));
+
+        try (PcapReader reader = PcapReader.open(file)) {
+            assertEquals(2, reader.getPacketCount());
+            PcapReader.PacketRecord second = reader.getPacket(1);
+            assertEquals(101, second.linkType);
+            assertEquals(1000000000L, second.timestampNanos);
+            assertEquals(1, reader.getPacket(0).linkType);
+        }
+    }
+
+    @Test
+    public void should_stop_at_truncated_record() throws Exception {
+        byte[] pcap = Files.readAllBytes(resource("http.pcap").toPath());
+        File file = tmp.newFile("truncated.pcap");
+        Files.write(file.toPath(), Arrays.copyOf(pcap, 24 + 16 + 62 + 20));
+        try (PcapReader reader = PcapReader.open(file)) {
+            assertEquals(1, reader.getPacketCount());
+        }
+    }
+}
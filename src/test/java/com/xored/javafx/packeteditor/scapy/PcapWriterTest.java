@@ -0,0 +1,130 @@
+package com.xored.javafx.packeteditor.scapy;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class PcapWriterTest {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void should_write_and_append_packets() throws Exception {
+        File file = tmp.newFile("out.pcap");
+        byte[] small = {1, 2, 3};
+        byte[] large = new byte[70000];
+        Arrays.fill(large, (byte) 7);
+
+        try (PcapWriter writer = PcapWriter.create(file)) {
+            writer.writePacket(small, 1500000000123456000L);
+            writer.writePacket(large, 1500000001000000000L);
+        }
+        try (PcapWriter writer = PcapWriter.append(file)) {
+            for (int i = 0; i < 5000; i++) {
+                writer.writePacket(small, i * 1000L);
+            }
+            assertEquals(5000, writer.getPacketCount());
+        }
+
+        try (PcapReader reader = PcapReader.open(file)) {
+            assertEquals(5002, reader.getPacketCount());
+            PcapReader.PacketRecord first = reader.getPacket(0);
+            assertEquals(1500000000123456000L, first.timestampNanos);
+            assertEquals(PcapReader.LINKTYPE_ETHERNET, first.linkType);
+            assertArrayEquals(small, reader.readPacketData(first));
+            assertArrayEquals(large, reader.readPacketData(1));
+            assertArrayEquals(small, reader.readPacketData(5001));
+            assertEquals(4999000L, reader.getPacket(5001).timestampNanos);
+        }
+    }
+
+    @Test
+    public void should_write_part_of_reused_buffer() throws Exception {
+        File file = tmp.newFile("variants.pcap");
+        byte[] buffer = new byte[8000];
+        try (PcapWriter writer = PcapWriter.create(file)) {
+            for (int length : new int[]{60, 5000, 61}) {
+                Arrays.fill(buffer, (byte) length);
+                writer.writePacket(buffer, 2, length, length * 1000L);
+            }
+        }
+        try (PcapReader reader = PcapReader.open(file)) {
+            assertEquals(3, reader.getPacketCount());
+            byte[] expected = new byte[5000];
+            Arrays.fill(expected, (byte) 5000);
+            assertArrayEquals(expected, reader.readPacketData(1));
+            assertEquals(61, reader.readPacketData(2).length);
+            assertEquals(61000L, reader.getPacket(2).timestampNanos);
+        }
+    }
+
+    @Test
+    public void should_replace_file_open_in_reader() throws Exception {
+        File file = tmp.newFile("open.pcap");
+        Files.copy(new File(getClass().getResource("/http.pcap").toURI()).toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        try (PcapReader reader = PcapReader.open(file)) {
+            byte[] first = reader.readPacketData(0);
+            try (PcapWriter writer = PcapWriter.create(file)) {
+                writer.writePacket(new byte[] {1, 2, 3}, 0);
+            }
+            // the reader keeps the replaced file
+            assertArrayEquals(first, reader.readPacketData(0));
+            assertEquals(43, reader.getPacketCount());
+        }
+        try (PcapReader reader = PcapReader.open(file)) {
+            assertEquals(1, reader.getPacketCount());
+        }
+        assertArrayEquals(new String[] {"open.pcap"}, tmp.getRoot().list());
+    }
+
+    @Test
+    public void should_cut_off_partial_record_before_append() throws Exception {
+        File file = tmp.newFile("partial.pcap");
+        try (PcapWriter writer = PcapWriter.create(file)) {
+            writer.writePacket(new byte[] {1, 2, 3}, 0);
+            writer.writePacket(new byte[100], 0);
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 10);
+        }
+        try (PcapWriter writer = PcapWriter.append(file)) {
+            writer.writePacket(new byte[] {4, 5}, 0);
+        }
+        try (PcapReader reader = PcapReader.open(file)) {
+            assertEquals(2, reader.getPacketCount());
+            assertArrayEquals(new byte[] {1, 2, 3}, reader.readPacketData(0));
+            assertArrayEquals(new byte[] {4, 5}, reader.readPacketData(1));
+        }
+    }
+
+    @Test
+    public void should_reject_append_with_other_link_type() throws Exception {
+        File file = tmp.newFile("raw.pcap");
+        try (PcapWriter writer = PcapWriter.create(file, 101)) {
+            writer.writePacket(new byte[] {1, 2, 3}, 0);
+        }
+        long length = file.length();
+        try {
+            PcapWriter.append(file).close();
+            fail("link type is not checked");
+        } catch (IOException e) {
+            // expected
+        }
+        assertEquals(length, file.length());
+        try (PcapWriter writer = PcapWriter.append(file, 101)) {
+            writer.writePacket(new byte[] {4}, 0);
+        }
+        try (PcapReader reader = PcapReader.open(file)) {
+            assertEquals(2, reader.getPacketCount());
+        }
+    }
+}
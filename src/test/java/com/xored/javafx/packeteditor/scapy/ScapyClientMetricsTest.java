@@ -0,0 +1,73 @@
+package com.xored.javafx.packeteditor.scapy;
+
+import com.google.common.eventbus.EventBus;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import org.junit.Test;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ScapyClientMetricsTest {
+
+    @Test
+    public void should_estimate_percentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long v = 1; v <= 100000; v++) {
+            histogram.record(v);
+        }
+        assertEquals(100000, histogram.getTotalCount());
+        assertEquals(50000, histogram.getValueAtPercentile(50), 50000 / LatencyHistogram.SUB_BUCKETS);
+        assertEquals(99000, histogram.getValueAtPercentile(99), 99000 / LatencyHistogram.SUB_BUCKETS);
+        assertEquals(100000, histogram.getValueAtPercentile(100));
+        for (long v : new long[] {0, 63, 64, 65, 1000, 123456789}) {
+            assertTrue(LatencyHistogram.highestEquivalentValue(LatencyHistogram.indexOf(v)) >= v);
+        }
+    }
+
+    @Test
+    public void should_record_calls() throws Exception {
+        try (FakeScapyServer server = new FakeScapyServer().start()) {
+            ScapyServerClient scapy = new ScapyServerClient();
+            scapy.eventBus = new EventBus();
+            scapy.connect(server.getUrl(), 2000);
+            try {
+                server.setLatency(20, 0);
+                scapy.loadInstructionParameterValues(Arrays.asList(ReconstructProtocol.pass("Ether")), new JsonObject(), "name");
+                fail("load_instruction_parameter_values is not served");
+            } catch (MethodNotFoundException e) {
+                // expected
+            }
+            JsonArray payloadClasses = new JsonArray();
+            payloadClasses.add("IP");
+            server.respond("get_payload_classes", payloadClasses);
+            scapy.get_payload_classes_async("Ether").get(2, TimeUnit.SECONDS);
+            server.respond("get_template", new JsonPrimitive("AAAA"));
+            assertEquals(Arrays.asList("AAAA", "AAAA"), scapy.getTemplates(Arrays.asList(new JsonObject(), new JsonObject())));
+            scapy.closeConnection();
+
+            ScapyClientMetrics metrics = scapy.getMetrics();
+            ScapyClientMetrics.MethodMetrics values = metrics.getMethodMetrics("load_instruction_parameter_values");
+            assertEquals(1, values.getCalls());
+            assertEquals(1, values.getErrors());
+            assertTrue(values.getRequestBytes() > 0 && values.getResponseBytes() > 0);
+            assertTrue(values.getWireMillis() >= 20);
+            assertTrue(values.getP50Millis() >= 20);
+
+            ScapyClientMetrics.MethodMetrics payloads = metrics.getMethodMetrics("get_payload_classes");
+            assertEquals(1, payloads.getCalls());
+            assertEquals(0, payloads.getErrors());
+            assertEquals(1, metrics.getMethodMetrics(ScapyClientMetrics.BATCH).getCalls());
+            assertTrue(metrics.getReport().contains("get_version_handler"));
+
+            Object jmxMetrics = ManagementFactory.getPlatformMBeanServer()
+                    .getAttribute(new ObjectName(ScapyClientMetrics.OBJECT_NAME), "MethodMetrics");
+            assertEquals(metrics.getMethodMetrics().size(), ((Object[]) jmxMetrics).length);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.xored.javafx.packeteditor.scapy;
+
+import com.google.gson.Gson;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+public class ScapyDefinitionsCacheTest {
+    Gson gson = new Gson();
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    String definitionsJson = "{\"protocols\":[{\"id\":\"Ether\",\"name\":\"Ethernet\",\"fields\":["
+            + "{\"id\":\"dst\",\"name\":\"Destination\",\"type\":\"MACField\",\"regex\":\".*\"},"
+            + "{\"id\":\"type\",\"name\":\"Type\",\"type\":\"XShortEnumField\",\"auto\":false,\"min\":0,\"max\":65535,"
+            + "\"values_dict\":{\"IPv4\":2048,\"ARP\":2054}}],\"fieldEngineAwareFields\":[\"src\",\"dst\"]},"
+            + "{\"id\":\"TCP\",\"name\":\"TCP\",\"fields\":[{\"id\":\"flags\",\"name\":\"Flags\",\"type\":\"FlagsField\","
+            + "\"bits\":[{\"name\":\"SYN\",\"mask\":2,\"values\":[{\"name\":\"Not Set\",\"value\":0},{\"name\":\"Set\",\"value\":2.5}]}]}]}],"
+            + "\"feInstructionParameters\":[{\"type\":\"ENUM\",\"id\":\"op\",\"name\":\"Operation\",\"defaultValue\":\"inc\","
+            + "\"dict\":{\"inc\":\"inc\",\"dec\":\"dec\"},\"required\":true,\"editable\":false}],"
+            + "\"feInstructions\":[{\"id\":\"STLVmFlowVar\",\"help\":\"aGVscA==\",\"parameters\":[\"op\"]}],"
+            + "\"feTemplates\":[{\"id\":\"t1\",\"name\":\"Template\",\"instructionIds\":[\"STLVmFlowVar\"]}]}";
+
+    @Test
+    public void should_restore_saved_definitions() {
+        ScapyDefinitionsCache cache = new ScapyDefinitionsCache(tmp.getRoot());
+        ScapyDefinitions defs = gson.fromJson(definitionsJson, ScapyDefinitions.class);
+        cache.save("handler1", defs);
+
+        ScapyDefinitions restored = cache.load("handler1");
+        assertNotNull(restored);
+        assertEquals(gson.toJson(defs), gson.toJson(restored));
+        assertNull(restored.feParameters);
+        assertNull(cache.load("handler2"));
+    }
+
+    @Test
+    public void should_ignore_corrupted_cache() throws Exception {
+        ScapyDefinitionsCache cache = new ScapyDefinitionsCache(tmp.getRoot());
+        cache.save("handler1", gson.fromJson(definitionsJson, ScapyDefinitions.class));
+        File file = cache.getCacheFile("definitions", "handler1");
+        byte[] content = Files.readAllBytes(file.toPath());
+        Files.write(file.toPath(), java.util.Arrays.copyOf(content, content.length / 2));
+
+        assertNull(cache.load("handler1"));
+    }
+}
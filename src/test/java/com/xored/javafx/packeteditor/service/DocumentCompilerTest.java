@@ -0,0 +1,112 @@
+package com.xored.javafx.packeteditor.service;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.xored.javafx.packeteditor.metatdata.*;
+import com.xored.javafx.packeteditor.scapy.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class DocumentCompilerTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    FakeScapyServer server;
+    byte[] packet;
+
+    IMetadataService metadataService = new IMetadataService() {
+        Map<String, ProtocolMetadata> protocols = new HashMap<>();
+        {
+            protocols.put("Ether", protocol("Ether", "dst", "src", "type"));
+            protocols.put("IP", protocol("IP", "ttl", "proto", "src", "dst"));
+            protocols.put("TCP", protocol("TCP", "sport", "dport"));
+        }
+
+        ProtocolMetadata protocol(String id, String... fieldIds) {
+            List<FieldMetadata> fields = new ArrayList<>();
+            for (String fieldId : fieldIds) {
+                fields.add(new FieldMetadata(fieldId, fieldId, FieldMetadata.FieldType.STRING, null, null, false));
+            }
+            return new ProtocolMetadata(id, id, fields, null, null);
+        }
+
+        @Override public Map<String, ProtocolMetadata> getProtocols() { return protocols; }
+        @Override public Map<String, FeParameterMeta> getFeParameters() { return Collections.emptyMap(); }
+        @Override public Map<String, InstructionExpressionMeta> getFeInstructions() { return Collections.emptyMap(); }
+        @Override public ProtocolMetadata getProtocolMetadata(ProtocolData protocol) { return protocols.get(protocol.getId()); }
+        @Override public ProtocolMetadata getProtocolMetadataById(String protocolId) { return protocols.get(protocolId); }
+        @Override public List<String> getAllowedPayloadForProtocol(String protocolId) { return Collections.emptyList(); }
+        @Override public boolean isAllowedPayload(String protocolId, String payloadId) { return false; }
+        @Override public Map<String, FEInstructionParameterMeta> getFeInstructionParameters() { return Collections.emptyMap(); }
+        @Override public List<InstructionsTemplate> getFeInstructionsTemplates() { return Collections.emptyList(); }
+    };
+
+    @Before
+    public void init() throws Exception {
+        try (PcapReader reader = PcapReader.open(new File(getClass().getResource("/http.pcap").toURI()))) {
+            packet = reader.readPacketData(0);
+        }
+        server = new FakeScapyServer().start();
+        server.respond("build_pkt_ex", params -> {
+            PacketData pkt = new LocalDissector().dissect(packet);
+            pkt.field_engine = new JsonParser().parse(
+                    "{\"instructions\":{\"instructions\":[{\"type\":\"flow_var\",\"name\":\"ip_src\"}],\"split_by_var\":\"\"},\"error\":null}"
+            ).getAsJsonObject();
+            return new Gson().toJsonTree(pkt);
+        });
+    }
+
+    @After
+    public void cleanup() {
+        server.close();
+    }
+
+    private File document(String name, String content) throws Exception {
+        File file = folder.newFile(name);
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    @Test
+    public void should_compile_documents_concurrently() throws Exception {
+        String trp = "{\"fileType\":\"trex-packet-editor\",\"version\":\"1.0.0\",\"packet\":["
+                + "{\"id\":\"Ether\",\"fields\":[]},"
+                + "{\"id\":\"IP\",\"fields\":[{\"id\":\"ttl\",\"value\":\"TTL\"}]},"
+                + "{\"id\":\"TCP\",\"fields\":[]}]}";
+        document("a.trp", trp.replace("TTL", "32"));
+        document("b.trp", trp.replace("TTL", "33"));
+        document("broken.trp", "{\"packet\":[{\"id\":\"Unknown\",\"fields\":[]}]}");
+        folder.newFile("notes.txt");
+        File outDir = folder.newFolder("out");
+
+        List<File> documents = DocumentCompiler.collectDocuments(Collections.singletonList(folder.getRoot()));
+        assertEquals(3, documents.size());
+
+        List<DocumentCompiler.Result> results;
+        try (DocumentCompiler compiler = DocumentCompiler.connect(2, server.getUrl().replace("tcp://", ""), metadataService)) {
+            results = compiler.compileAll(documents, outDir);
+        }
+        assertEquals(Arrays.asList(true, true, false), Arrays.asList(results.get(0).isSuccess(), results.get(1).isSuccess(), results.get(2).isSuccess()));
+        assertEquals(2, server.getRequestCount("build_pkt_ex"));
+
+        DocumentCompiler.Result a = results.get(0);
+        assertEquals(new File(outDir, "a.pcap"), a.pcap);
+        try (PcapReader reader = PcapReader.open(a.pcap)) {
+            assertArrayEquals(packet, reader.readPacketData(0));
+        }
+        JsonObject stream = new JsonParser().parse(new String(Files.readAllBytes(a.stream.toPath()), StandardCharsets.UTF_8)).getAsJsonObject();
+        assertEquals(Base64.getEncoder().encodeToString(packet), stream.getAsJsonObject("packet").get("binary").getAsString());
+        assertEquals("ip_src", stream.getAsJsonObject("vm").getAsJsonArray("instructions").get(0).getAsJsonObject().get("name").getAsString());
+    }
+}
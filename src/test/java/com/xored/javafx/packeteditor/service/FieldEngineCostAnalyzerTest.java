@@ -0,0 +1,63 @@
+package com.xored.javafx.packeteditor.service;
+
+import com.xored.javafx.packeteditor.data.FeParameter;
+import com.xored.javafx.packeteditor.data.InstructionExpression;
+import com.xored.javafx.packeteditor.metatdata.FeParameterMeta;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static com.xored.javafx.packeteditor.service.FieldEngineInstructions.instruction;
+import static org.junit.Assert.*;
+
+public class FieldEngineCostAnalyzerTest {
+
+    private static List<FeParameter> cacheSize(String value) {
+        return Collections.singletonList(new FeParameter(new FeParameterMeta("cache_size", "Cache size", "NUMBER", "0"), value));
+    }
+
+    private static final List<InstructionExpression> PROGRAM = Arrays.asList(
+            instruction("STLVmFlowVar", "name", "ip_src", "size", "4", "op", "inc", "min_value", "16.0.0.1", "max_value", "16.0.0.10", "step", "1"),
+            instruction("STLVmWrFlowVar", "fv_name", "ip_src", "pkt_offset", "IP.src"),
+            instruction("STLVmFlowVar", "name", "sport", "size", "2", "op", "dec", "min_value", "1000", "max_value", "1003", "step", "2"),
+            instruction("STLVmWrFlowVar", "fv_name", "sport", "pkt_offset", "TCP.sport"),
+            // not written, does not change packets
+            instruction("STLVmFlowVar", "name", "unused", "size", "1", "op", "random"),
+            instruction("STLVmFixIpv4", "offset", "IP"));
+
+    @Test
+    public void should_estimate_program_cost() {
+        FieldEngineCostAnalyzer.Report report = FieldEngineCostAnalyzer.analyze(PROGRAM, cacheSize(""));
+        // lcm of 10 addresses and 2 ports
+        assertEquals(BigInteger.valueOf(10), report.distinctPackets);
+        assertEquals(6, report.instructionsPerPacket);
+        assertEquals(1, report.checksumFixups);
+        assertEquals(4 + 2 + 2, report.bytesWritten);
+        assertFalse(report.isCacheCovering());
+        assertEquals(10, report.recommendedCacheSize);
+
+        FieldEngineCostAnalyzer.Report cached = FieldEngineCostAnalyzer.analyze(PROGRAM, cacheSize("10"));
+        assertTrue(cached.isCacheCovering());
+        assertTrue(cached.packetsPerSecond > report.packetsPerSecond);
+        assertFalse(FieldEngineCostAnalyzer.analyze(PROGRAM, cacheSize("9")).isCacheCovering());
+
+        long plain = FieldEngineCostAnalyzer.analyze(Collections.emptyList(), cacheSize("")).packetsPerSecond;
+        assertTrue(report.packetsPerSecond < plain);
+    }
+
+    @Test
+    public void should_multiply_random_variant_space() {
+        FieldEngineCostAnalyzer.Report report = FieldEngineCostAnalyzer.analyze(Arrays.asList(
+                instruction("STLVmFlowVar", "name", "sport", "size", "2", "op", "random"),
+                instruction("STLVmWrFlowVar", "fv_name", "sport"),
+                instruction("STLVmTupleGen", "name", "tuple", "ip_min", "10.0.0.1", "ip_max", "10.0.0.255", "port_min", "1025", "port_max", "65535"),
+                instruction("STLVmWrFlowVar", "fv_name", "tuple.ip")), cacheSize("1000"));
+        assertEquals(BigInteger.valueOf(65536L * 255 * 64511), report.distinctPackets);
+        assertFalse(report.isCacheCovering());
+        assertEquals(0, report.recommendedCacheSize);
+        assertEquals(6, report.bytesWritten);
+    }
+}
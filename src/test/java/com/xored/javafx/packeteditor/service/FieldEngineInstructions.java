@@ -0,0 +1,29 @@
+package com.xored.javafx.packeteditor.service;
+
+import com.google.gson.JsonPrimitive;
+import com.xored.javafx.packeteditor.data.FEInstructionParameter2;
+import com.xored.javafx.packeteditor.data.InstructionExpression;
+import com.xored.javafx.packeteditor.metatdata.FEInstructionParameterMeta;
+import com.xored.javafx.packeteditor.metatdata.InstructionExpressionMeta;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** field engine instructions for tests */
+final class FieldEngineInstructions {
+
+    private FieldEngineInstructions() {
+    }
+
+    /** instruction with parameters given as id, value pairs */
+    static InstructionExpression instruction(String id, String... params) {
+        List<FEInstructionParameterMeta> metas = new ArrayList<>();
+        List<FEInstructionParameter2> parameters = new ArrayList<>();
+        for (int i = 0; i < params.length; i += 2) {
+            FEInstructionParameterMeta meta = new FEInstructionParameterMeta("STRING", params[i], params[i], "", null, false, true);
+            metas.add(meta);
+            parameters.add(new FEInstructionParameter2(meta, new JsonPrimitive(params[i + 1])));
+        }
+        return new InstructionExpression(new InstructionExpressionMeta(id, "", metas), parameters);
+    }
+}
@@ -0,0 +1,75 @@
+package com.xored.javafx.packeteditor.service;
+
+import com.xored.javafx.packeteditor.data.InstructionExpression;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static com.xored.javafx.packeteditor.service.FieldEngineInstructions.instruction;
+import static org.junit.Assert.*;
+
+public class FieldEngineSplitPreviewTest {
+
+    private static List<InstructionExpression> flowVar(String... params) {
+        return Collections.singletonList(instruction("STLVmFlowVar", params));
+    }
+
+    private static List<BigInteger> values(long... values) {
+        List<BigInteger> res = new ArrayList<>();
+        for (long value : values) {
+            res.add(BigInteger.valueOf(value));
+        }
+        return res;
+    }
+
+    @Test
+    public void should_split_range_between_cores() {
+        // 16.0.0.1 - 16.0.0.100
+        FieldEngineSplitPreview.Preview preview = FieldEngineSplitPreview.preview(flowVar(
+                "name", "ip_src", "size", "4", "op", "inc", "min_value", "16.0.0.1", "max_value", "16.0.0.100", "step", "1"),
+                "ip_src", 4);
+        assertTrue(preview.getSummary(), preview.isValid());
+        assertEquals(4, preview.cores.size());
+        long first = 0x10000001L;
+        for (FieldEngineSplitPreview.CoreRange core : preview.cores) {
+            assertEquals(BigInteger.valueOf(25), core.count);
+            assertEquals(BigInteger.valueOf(first + 25 * core.core), core.min);
+        }
+        assertEquals(BigInteger.valueOf(first + 99), preview.cores.get(3).max);
+        assertEquals(values(first + 25, first + 26, first + 27, first + 28, first + 29), preview.cores.get(1).sequence);
+    }
+
+    @Test
+    public void should_wrap_decrementing_sequence_in_core_range() {
+        FieldEngineSplitPreview.Preview preview = FieldEngineSplitPreview.preview(flowVar(
+                "name", "port", "size", "2", "op", "dec", "min_value", "1000", "max_value", "1039", "step", "3"),
+                "port", 2);
+        assertTrue(preview.getSummary(), preview.isValid());
+        assertEquals(values(1019, 1016, 1013, 1010, 1007), preview.cores.get(0).sequence);
+        assertEquals(values(1039, 1036, 1033, 1030, 1027), preview.cores.get(1).sequence);
+    }
+
+    @Test
+    public void should_flag_bad_splits() {
+        List<InstructionExpression> small = flowVar("name", "v", "size", "1", "op", "inc", "min_value", "1", "max_value", "3");
+        FieldEngineSplitPreview.Preview idle = FieldEngineSplitPreview.preview(small, "v", 8);
+        assertEquals(Arrays.asList(false, false, false, true), Arrays.asList(
+                idle.cores.get(0).isIdle(), idle.cores.get(1).isIdle(), idle.cores.get(2).isIdle(), idle.cores.get(3).isIdle()));
+        assertEquals(1, idle.warnings.size());
+
+        FieldEngineSplitPreview.Preview unbalanced = FieldEngineSplitPreview.preview(
+                flowVar("name", "v", "size", "1", "op", "inc", "min_value", "0", "max_value", "10"), "v", 4);
+        assertFalse(unbalanced.isValid());
+
+        FieldEngineSplitPreview.Preview step = FieldEngineSplitPreview.preview(
+                flowVar("name", "v", "size", "2", "op", "inc", "min_value", "0", "max_value", "399", "step", "50"), "v", 4);
+        assertEquals(1, step.warnings.size());
+
+        assertFalse(FieldEngineSplitPreview.preview(small, "", 2).isValid());
+        assertFalse(FieldEngineSplitPreview.preview(small, "unknown", 2).isValid());
+    }
+}
@@ -0,0 +1,93 @@
+package com.xored.javafx.packeteditor.service;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import com.xored.javafx.packeteditor.scapy.ReconstructField;
+import com.xored.javafx.packeteditor.scapy.ReconstructProtocol;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class InstructionParameterValuesCacheTest {
+
+    InstructionParameterValuesCache cache = new InstructionParameterValuesCache();
+
+    private static List<ReconstructProtocol> packet(String ttl, String... ids) {
+        List<ReconstructProtocol> res = new ArrayList<>();
+        for (String id : ids) {
+            res.add(ReconstructProtocol.modify(id, "IP".equals(id)
+                    ? Collections.singletonList(ReconstructField.setHumanValue("ttl", ttl))
+                    : Collections.emptyList()));
+        }
+        return res;
+    }
+
+    private static JsonElement vm(String name, String step) {
+        return new JsonParser().parse("{\"field_engine\":{\"instructions\":[{\"id\":\"STLVmFlowVar\",\"parameters\":{\"name\":\"" + name
+                + "\",\"step\":\"" + step + "\"}}],\"global_parameters\":{}}}");
+    }
+
+    @Test
+    public void should_key_by_structure() {
+        String key = cache.getStructureKey(packet("64", "Ether", "IP"), vm("ip_src", "1"));
+        // field values do not change the structure
+        assertEquals(key, cache.getStructureKey(packet("32", "Ether", "IP"), vm("ip_src", "1")));
+        // nor does the order of parameters
+        assertEquals(key, cache.getStructureKey(packet("64", "Ether", "IP"), new JsonParser().parse(
+                "{\"field_engine\":{\"instructions\":[{\"id\":\"STLVmFlowVar\",\"parameters\":{\"step\":\"1\",\"name\":\"ip_src\"}}]}}")));
+
+        assertNotEquals(key, cache.getStructureKey(packet("64", "Ether", "IP", "TCP"), vm("ip_src", "1")));
+        assertNotEquals(key, cache.getStructureKey(packet("64", "Ether", "IP"), vm("ip_dst", "1")));
+        assertNotEquals(key, cache.getStructureKey(packet("64", "Ether", "IP"), vm("ip_src", "2")));
+        assertNotEquals(key, cache.getStructureKey(packet("64", "Ether", "IP"), new JsonParser().parse("{}")));
+        assertNotEquals(cache.getKey(key, "fv_name"), cache.getKey(key, "pkt_offset"));
+    }
+
+    @Test
+    public void should_request_values_again_after_rename() {
+        AtomicInteger requests = new AtomicInteger();
+        for (String name : new String[] {"ip_src", "ip_src", "ip_dst"}) {
+            String key = cache.getKey(cache.getStructureKey(packet("64", "Ether", "IP"), vm(name, "1")), "fv_name");
+            Map<String, String> values = cache.get(key, () -> {
+                requests.incrementAndGet();
+                return CompletableFuture.completedFuture(Collections.singletonMap(name, name));
+            }).join();
+            assertEquals(Collections.singletonMap(name, name), values);
+        }
+        assertEquals(2, requests.get());
+    }
+
+    @Test
+    public void should_request_values_once() {
+        AtomicInteger requests = new AtomicInteger();
+        CompletableFuture<Map<String, String>> response = new CompletableFuture<>();
+        CompletableFuture<Map<String, String>> prefetched = cache.get("k", () -> {
+            requests.incrementAndGet();
+            return response;
+        });
+        CompletableFuture<Map<String, String>> pending = cache.get("k", () -> {
+            requests.incrementAndGet();
+            return CompletableFuture.completedFuture(Collections.emptyMap());
+        });
+        assertFalse(pending.isDone());
+        response.complete(Collections.singletonMap("ip_src", "ip_src"));
+        assertEquals("ip_src", pending.join().get("ip_src"));
+        assertEquals("ip_src", prefetched.join().get("ip_src"));
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    public void should_retry_failed_requests() {
+        CompletableFuture<Map<String, String>> failed = cache.get("k", () -> {
+            throw new IllegalStateException("not connected");
+        });
+        assertTrue(failed.isCompletedExceptionally());
+        assertEquals(0, cache.size());
+        assertEquals(Collections.emptyMap(), cache.get("k", () -> CompletableFuture.completedFuture(Collections.emptyMap())).join());
+        assertEquals(1, cache.size());
+    }
+}
@@ -0,0 +1,76 @@
+package com.xored.javafx.packeteditor.service;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.xored.javafx.packeteditor.scapy.PacketData;
+import com.xored.javafx.packeteditor.scapy.ReconstructField;
+import com.xored.javafx.packeteditor.scapy.ReconstructProtocol;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class PacketBuildCacheTest {
+
+    private List<ReconstructProtocol> etherIp(String dst) {
+        return Arrays.asList(
+                ReconstructProtocol.modify("Ether", Arrays.asList(ReconstructField.setValue("dst", dst))),
+                ReconstructProtocol.pass("IP")
+        );
+    }
+
+    private PacketData packet(String binary) {
+        PacketData pkt = new PacketData();
+        pkt.binary = binary;
+        pkt.field_engine = new JsonObject();
+        return pkt;
+    }
+
+    @Test
+    public void should_return_copy_of_cached_packet() {
+        PacketBuildCache cache = new PacketBuildCache();
+        String key = cache.getKey(etherIp("de:ad:be:ef:de:ad"), null);
+        assertNull(cache.get(key));
+
+        cache.put(key, packet("AAEC"));
+        PacketData cached = cache.get(cache.getKey(etherIp("de:ad:be:ef:de:ad"), null));
+        assertEquals("AAEC", cached.binary);
+
+        cached.setFieldEngineError("modified");
+        assertFalse(cache.get(key).field_engine.has("error"));
+        assertEquals(2, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void should_ignore_key_order_of_vm_instructions() {
+        PacketBuildCache cache = new PacketBuildCache();
+        JsonParser parser = new JsonParser();
+        String key1 = cache.getKey(etherIp("de:ad:be:ef:de:ad"), parser.parse("{\"field_engine\":{\"a\":1,\"b\":[1,2]}}"));
+        String key2 = cache.getKey(etherIp("de:ad:be:ef:de:ad"), parser.parse("{\"field_engine\":{\"b\":[1,2],\"a\":1}}"));
+        String key3 = cache.getKey(etherIp("de:ad:be:ef:de:ae"), parser.parse("{\"field_engine\":{\"b\":[1,2],\"a\":1}}"));
+        assertEquals(key1, key2);
+        assertNotEquals(key1, key3);
+    }
+
+    @Test
+    public void should_not_cache_random_values() {
+        PacketBuildCache cache = new PacketBuildCache();
+        List<ReconstructProtocol> pkt = Arrays.asList(
+                ReconstructProtocol.modify("Ether", Arrays.asList(ReconstructField.randomizeValue("dst"))));
+        assertNull(cache.getKey(pkt, null));
+    }
+
+    @Test
+    public void should_evict_by_size() {
+        PacketBuildCache cache = new PacketBuildCache(2, 1, TimeUnit.HOURS);
+        for (String dst : Arrays.asList("00:00:00:00:00:01", "00:00:00:00:00:02", "00:00:00:00:00:03")) {
+            cache.put(cache.getKey(etherIp(dst), null), packet(""));
+        }
+        assertEquals(2, cache.size());
+        assertNull(cache.get(cache.getKey(etherIp("00:00:00:00:00:01"), null)));
+    }
+}
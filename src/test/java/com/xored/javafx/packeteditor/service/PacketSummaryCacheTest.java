@@ -0,0 +1,117 @@
+package com.xored.javafx.packeteditor.service;
+
+import com.xored.javafx.packeteditor.scapy.PacketData;
+import com.xored.javafx.packeteditor.scapy.PcapReader;
+import com.xored.javafx.packeteditor.scapy.ProtocolData;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.*;
+
+public class PacketSummaryCacheTest {
+
+    /** reconstruct requests in order, completed by tests */
+    Map<byte[], CompletableFuture<PacketData>> requests = new LinkedHashMap<>();
+    List<Integer> loaded = new ArrayList<>();
+
+    PacketDataService packetDataService = new PacketDataService() {
+        @Override
+        public CompletableFuture<PacketData> reconstructPacketFromBinaryAsync(byte[] bytes) {
+            CompletableFuture<PacketData> res = new CompletableFuture<>();
+            requests.put(bytes, res);
+            return res;
+        }
+    };
+
+    PcapReader reader;
+    PacketSummaryCache cache;
+
+    @Before
+    public void setUp() throws Exception {
+        reader = PcapReader.open(new File(getClass().getResource("/http.pcap").toURI()));
+        cache = new PacketSummaryCache(reader, packetDataService, Runnable::run, loaded::add);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        reader.close();
+    }
+
+    private static PacketData packet(String... ids) {
+        PacketData pkt = new PacketData();
+        for (String id : ids) {
+            ProtocolData protocol = new ProtocolData();
+            protocol.id = id;
+            protocol.fields = new ArrayList<>();
+            pkt.data.add(protocol);
+        }
+        return pkt;
+    }
+
+    private CompletableFuture<PacketData> request(int n) {
+        return new ArrayList<>(requests.values()).get(n);
+    }
+
+    @Test
+    public void should_bound_cached_summaries() {
+        for (int i = 0; i < PacketSummaryCache.MAX_CACHED * 2; i++) {
+            cache.put(i, packet("Ether", "IP"));
+        }
+        assertTrue(cache.size() <= PacketSummaryCache.MAX_CACHED);
+        assertEquals("IP", cache.getTopProtocol(PacketSummaryCache.MAX_CACHED * 2 - 1));
+        assertTrue(requests.isEmpty());
+    }
+
+    @Test
+    public void should_limit_requests_in_flight() throws Exception {
+        for (int i = 0; i < 20; i++) {
+            assertNull(cache.getTopProtocol(i));
+        }
+        assertEquals(PacketSummaryCache.MAX_IN_FLIGHT, requests.size());
+        // a request in flight is not repeated
+        cache.getTopProtocol(0);
+        assertEquals(PacketSummaryCache.MAX_IN_FLIGHT, requests.size());
+
+        request(0).complete(packet("Ether", "IP", "TCP", "Raw"));
+        assertEquals(PacketSummaryCache.MAX_IN_FLIGHT + 1, requests.size());
+        // the most recently requested packet is dissected next
+        byte[] next = new ArrayList<>(requests.keySet()).get(PacketSummaryCache.MAX_IN_FLIGHT);
+        assertArrayEquals(reader.readPacketData(19), next);
+    }
+
+    @Test
+    public void should_notify_about_loaded_summaries() {
+        assertNull(cache.getTopProtocol(3));
+        request(0).complete(packet("Ether", "IP", "TCP", "Raw"));
+        assertEquals(3, (int) loaded.get(0));
+        assertEquals("TCP", cache.getTopProtocol(3));
+
+        assertNull(cache.getTopProtocol(4));
+        request(1).completeExceptionally(new IllegalStateException("not connected"));
+        assertEquals(4, (int) loaded.get(1));
+        assertEquals("", cache.getTopProtocol(4));
+        assertEquals(2, requests.size());
+    }
+
+    @Test
+    public void should_drop_pending_requests_on_close() {
+        for (int i = 0; i < 20; i++) {
+            cache.getTopProtocol(i);
+        }
+        cache.close();
+        request(0).complete(packet("Ether", "IP"));
+        assertTrue(loaded.isEmpty());
+        assertEquals(PacketSummaryCache.MAX_IN_FLIGHT, requests.size());
+        assertEquals(0, cache.size());
+        cache.getTopProtocol(30);
+        assertEquals(PacketSummaryCache.MAX_IN_FLIGHT, requests.size());
+    }
+}
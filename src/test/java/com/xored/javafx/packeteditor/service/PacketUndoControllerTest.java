@@ -0,0 +1,162 @@
+package com.xored.javafx.packeteditor.service;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PacketUndoControllerTest {
+
+    List<String> loaded = new ArrayList<>();
+    String current;
+
+    PacketUndoController<String> undoController = new PacketUndoController<>(
+            state -> {
+                this.undoController.beforeContentReplace(current);
+                current = state;
+                loaded.add(state);
+            },
+            state -> new JsonParser().parse(state),
+            JsonElement::toString);
+
+    private String state(int ttl, int protocols) {
+        StringBuilder sb = new StringBuilder("{\"binary\":\"");
+        for (int i = 0; i < 1000; i++) {
+            sb.append(i == 500 ? Integer.toString(ttl) : "A");
+        }
+        sb.append("\",\"data\":[");
+        for (int i = 0; i < protocols; i++) {
+            sb.append(i > 0 ? "," : "").append("{\"id\":\"P").append(i).append("\",\"ttl\":").append(ttl).append("}");
+        }
+        return sb.append("],\"removed\":").append(ttl % 2 == 0 ? "null" : "{\"a\":1}").append("}").toString();
+    }
+
+    private void edit(String newState) {
+        undoController.beforeContentReplace(current);
+        current = newState;
+    }
+
+    @Test
+    public void should_restore_states_through_deltas_and_keyframes() {
+        undoController.setKeyframeInterval(4);
+        List<String> states = new ArrayList<>();
+        for (int i = 0; i < 11; i++) {
+            states.add(new JsonParser().parse(state(i, 1 + i % 3)).toString());
+        }
+        current = states.get(0);
+        for (int i = 1; i < states.size(); i++) {
+            edit(states.get(i));
+        }
+        for (int i = states.size() - 2; i >= 0; i--) {
+            undoController.undo();
+            assertEquals(states.get(i), current);
+        }
+        for (int i = 1; i < states.size(); i++) {
+            undoController.redo();
+            assertEquals(states.get(i), current);
+        }
+        // hot states are counted in the memory usage, release them to measure the stored records
+        undoController.setHotRecordsLimit(0);
+        assertTrue(undoController.getMemoryUsage() < 10 * 2 * states.get(0).length());
+    }
+
+    @Test
+    public void should_drop_oldest_records_over_budget() {
+        undoController.setKeyframeInterval(1);
+        current = state(0, 1);
+        for (int i = 1; i <= 20; i++) {
+            edit(state(i, 1));
+        }
+        assertEquals(20, undoController.getUndoCount());
+
+        undoController.setMemoryBudget(5 * 3000);
+        assertTrue(undoController.getMemoryUsage() <= 5 * 3000);
+        int kept = undoController.getUndoCount();
+        assertTrue(kept > 0 && kept < 20);
+
+        for (int i = 0; i < kept; i++) {
+            undoController.undo();
+        }
+        assertEquals(new JsonParser().parse(state(20 - kept, 1)).toString(), current);
+        undoController.undo();
+        assertEquals(kept, loaded.size());
+    }
+
+    @Test
+    public void should_restore_recent_records_without_decoding() {
+        List<String> decoded = new ArrayList<>();
+        PacketUndoController<String> controller = new PacketUndoController<>(
+                state -> current = state,
+                state -> new JsonParser().parse(state),
+                json -> {
+                    decoded.add(json.toString());
+                    return json.toString();
+                });
+        controller.setHotRecordsLimit(2);
+        for (int i = 0; i < 4; i++) {
+            controller.beforeContentReplace(state(i, 1));
+        }
+        controller.undo();
+        controller.undo();
+        assertEquals(state(2, 1), current);
+        assertTrue(decoded.isEmpty());
+        controller.undo();
+        assertEquals(1, decoded.size());
+        assertEquals(new JsonParser().parse(state(1, 1)).toString(), current);
+    }
+
+    @Test
+    public void should_count_hot_states_in_budget() {
+        // 200 KB states differ in one char, so records are small deltas, while each hot state is a full copy
+        StringBuilder payload = new StringBuilder();
+        for (int i = 0; i < 200 * 1024; i++) {
+            payload.append('A');
+        }
+        long budget = 4 * 1024 * 1024;
+        undoController.setMemoryBudget(budget);
+        current = "{\"payload\":\"" + payload + "\",\"ttl\":0}";
+        for (int i = 1; i <= 40; i++) {
+            edit("{\"payload\":\"" + payload + "\",\"ttl\":" + i + "}");
+            assertTrue(undoController.getMemoryUsage() <= budget);
+        }
+        assertEquals(40, undoController.getUndoCount());
+        for (int i = 39; i >= 0; i--) {
+            undoController.undo();
+            assertEquals("{\"payload\":\"" + payload + "\",\"ttl\":" + i + "}", current);
+        }
+    }
+
+    @Test
+    public void should_count_top_state_in_budget() {
+        StringBuilder payload = new StringBuilder();
+        for (int i = 0; i < 100 * 1024; i++) {
+            payload.append('A');
+        }
+        undoController.setHotRecordsLimit(0);
+        current = "{\"payload\":\"" + payload + "\",\"ttl\":0}";
+        for (int i = 1; i <= 10; i++) {
+            edit("{\"payload\":\"" + payload + "\",\"ttl\":" + i + "}");
+        }
+        // the keyframe and the decoded top state are full copies, other records are small deltas
+        long stateSize = 2L * current.length();
+        assertTrue(undoController.getMemoryUsage() > 2 * stateSize);
+
+        undoController.setMemoryBudget(stateSize * 3 / 2);
+        assertTrue(undoController.getMemoryUsage() <= stateSize * 3 / 2);
+        // the top state is released before records are dropped
+        assertEquals(10, undoController.getUndoCount());
+        undoController.undo();
+        assertEquals("{\"payload\":\"" + payload + "\",\"ttl\":9}", current);
+    }
+
+    @Test
+    public void should_estimate_json_size() {
+        JsonElement json = new JsonParser().parse(state(7, 3));
+        assertEquals(json.toString().length(), UndoHistory.estimateSize(json));
+    }
+}